@@ -0,0 +1,106 @@
+package com.example.demo;
+
+import com.example.demo.bot.BotManager;
+import com.example.demo.cluster.LoopbackRoomBus;
+import com.example.demo.cluster.RoomBus;
+import com.example.demo.history.RoomHistory;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.moderation.ModerationJournal;
+import com.example.demo.moderation.ModerationService;
+import com.example.demo.moderation.ReportQueue;
+import com.example.demo.outbound.OutboundQueueManager;
+import com.example.demo.persistence.ChatLogStore;
+import com.example.demo.persistence.Durability;
+import com.example.demo.outbound.OverflowPolicy;
+import com.example.demo.ratelimit.FloodGuard;
+import com.example.demo.room.RoomRegistry;
+import com.example.demo.session.ChatIdentityResolver;
+import com.example.demo.session.SessionLiveness;
+import com.example.demo.session.SessionResumeRegistry;
+import com.example.demo.timer.TimerWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import java.util.concurrent.TimeUnit;
+
+// Chi phí broadcastToRoom (encode + enqueue cho từng thành viên) theo kích thước phòng
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastFanOutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int roomSize;
+
+    private ChatHandler chatHandler;
+    private OutboundQueueManager outboundQueues;
+    private TimerWheel timer;
+    private RoomBus roomBus;
+    private NoopWebSocketSession sender;
+    private ChatMessage message;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RoomRegistry roomRegistry = new RoomRegistry(20);
+        ChatMetrics metrics = new ChatMetrics(new SimpleMeterRegistry());
+        ChatEventLog eventLog = new ChatEventLog(false, 0.01);
+        // Một node: publish không có node nào quan tâm nên không tốn gì
+        roomBus = new LoopbackRoomBus();
+        timer = new TimerWheel(100, 512);
+        ModerationJournal journal = new ModerationJournal(false, "build/jmh-moderation", 10000, Durability.NONE, 200);
+        ChatIdentityResolver identities = new ChatIdentityResolver(username -> {
+            throw new UsernameNotFoundException(username);
+        });
+        BotManager botManager = new BotManager(2000, 256, "0", "", "", metrics, eventLog,
+            new ModerationService(roomBus, timer, journal), new ReportQueue(journal), identities);
+        // Buffer lớn để benchmark không bị DROP_OLDEST làm sai lệch
+        outboundQueues = new OutboundQueueManager(10_000, Integer.MAX_VALUE, OverflowPolicy.DROP_OLDEST,
+            15, 32, 65536, metrics, eventLog);
+        FloodGuard floodGuard = new FloodGuard(65536, "0", "0", "0", "0", 20);
+        RoomHistory history = new RoomHistory(100, 262144, 67108864, 50);
+        // Tắt chat log để đo riêng fan-out; append khi tắt là no-op
+        ChatLogStore chatLogStore = new ChatLogStore(false, "build/jmh-chatlog", 16 << 20, Durability.NONE,
+            200, 168, 0, 1, 0, 1, history);
+        chatHandler = new ChatHandler(roomRegistry, botManager, outboundQueues, floodGuard, metrics, eventLog,
+            history, chatLogStore, new SessionResumeRegistry(120, 10000, timer),
+            new SessionLiveness(25000, 70000, timer, outboundQueues, eventLog), roomBus, identities);
+
+        for (int i = 0; i < roomSize; i++) {
+            NoopWebSocketSession session = new NoopWebSocketSession("s" + i);
+            outboundQueues.register(session);
+            roomRegistry.join(session, "bench");
+            if (i == 0) {
+                sender = session;
+            }
+        }
+        message = new ChatMessage("sv01", "Tin nhắn benchmark gửi tới cả phòng", "bench");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outboundQueues.shutdown();
+        timer.shutdown();
+        roomBus.shutdown();
+    }
+
+    @Benchmark
+    public void broadcast() throws Exception {
+        chatHandler.broadcastToRoom("bench", message, sender);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.demo.bot;
+
+import com.example.demo.ChatMessage;
+import com.example.demo.NoopWebSocketSession;
+import com.example.demo.cluster.LoopbackRoomBus;
+import com.example.demo.codec.ChatMessageCodec;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.moderation.ModerationJournal;
+import com.example.demo.moderation.ModerationService;
+import com.example.demo.moderation.ReportQueue;
+import com.example.demo.persistence.Durability;
+import com.example.demo.session.ChatIdentityResolver;
+import com.example.demo.timer.TimerWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parse + dispatch một tin nhắn qua BotManager.processMessage (đường đồng bộ)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotDispatchBenchmark {
+
+    // Số custom bot do admin tạo, để kiểm tra chi phí không tăng theo số bot
+    @Param({"0", "50"})
+    public int customBots;
+
+    private BotManager botManager;
+    private TimerWheel timer;
+    private ChatMessageCodec codec;
+    private NoopWebSocketSession session;
+
+    private String freeTextPayload;
+    private String commandPayload;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Không giới hạn spam để benchmark đo đường dispatch, không phải đường cảnh báo
+        timer = new TimerWheel(100, 512);
+        ModerationJournal journal = new ModerationJournal(false, "build/jmh-moderation", 10000, Durability.NONE, 200);
+        botManager = new BotManager(2000, 256, "0", "", "", new ChatMetrics(new SimpleMeterRegistry()),
+            new ChatEventLog(false, 0.01), new ModerationService(new LoopbackRoomBus(), timer, journal),
+            new ReportQueue(journal),
+            new ChatIdentityResolver(username -> { throw new UsernameNotFoundException(username); }));
+        for (int i = 0; i < customBots; i++) {
+            botManager.createCustomBot("bot" + i, "Bot benchmark " + i, "teacher01");
+        }
+        codec = new ChatMessageCodec();
+        session = new NoopWebSocketSession("bench");
+
+        freeTextPayload = "{\"nickname\":\"sv01\",\"message\":\"Mọi người ơi bài tập tuần này nộp khi nào vậy?\",\"room\":\"study\"}";
+        commandPayload = "{\"nickname\":\"sv01\",\"message\":\"/quiz score\",\"room\":\"study\"}";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        botManager.shutdown();
+        timer.shutdown();
+    }
+
+    @Benchmark
+    public List<ChatMessage> freeText() {
+        ChatMessage message = codec.decode(freeTextPayload);
+        return botManager.processMessage(message, session);
+    }
+
+    @Benchmark
+    public List<ChatMessage> command() {
+        ChatMessage message = codec.decode(commandPayload);
+        return botManager.processMessage(message, session);
+    }
+}
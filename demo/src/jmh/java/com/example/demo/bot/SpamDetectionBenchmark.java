@@ -0,0 +1,56 @@
+package com.example.demo.bot;
+
+import com.example.demo.ChatMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// SpamDetectionBot.processMessage khi nhiều thread cùng gọi
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SpamDetectionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedBot {
+        final SpamDetectionBot bot = new SpamDetectionBot();
+        final AtomicInteger threadIds = new AtomicInteger();
+    }
+
+    // Mỗi thread có nhóm user riêng, và một user chung để tạo tranh chấp trên cùng key
+    @State(Scope.Thread)
+    public static class ThreadMessages {
+        ChatMessage ownUser;
+        ChatMessage sharedUser;
+
+        @Setup
+        public void setup(SharedBot shared) {
+            int id = shared.threadIds.incrementAndGet();
+            ownUser = new ChatMessage("sv" + id, "xin chào", "general");
+            sharedUser = new ChatMessage("sv00", "xin chào", "general");
+        }
+    }
+
+    @Benchmark
+    public ChatMessage distinctUsers(SharedBot shared, ThreadMessages messages) {
+        return shared.bot.processMessage(messages.ownUser, null);
+    }
+
+    @Benchmark
+    public ChatMessage sameUser(SharedBot shared, ThreadMessages messages) {
+        return shared.bot.processMessage(messages.sharedUser, null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+// So sánh codec streaming với ObjectMapper databind (đường cũ)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageCodecBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChatMessageCodec codec = new ChatMessageCodec();
+
+    private String jsonPayload;
+    private String plainPayload;
+    private ChatMessage message;
+
+    @Setup
+    public void setup() {
+        message = new ChatMessage("sv01", "Xin chào cả lớp, hôm nay học WebSocket nhé! 😊", "study");
+        jsonPayload = "{\"nickname\":\"sv01\",\"message\":\"Xin chào cả lớp, hôm nay học WebSocket nhé! 😊\",\"room\":\"study\"}";
+        plainPayload = "Xin chào cả lớp, hôm nay học WebSocket nhé! 😊";
+    }
+
+    @Benchmark
+    public ChatMessage decodeDatabind() throws Exception {
+        return objectMapper.readValue(jsonPayload, ChatMessage.class);
+    }
+
+    @Benchmark
+    public ChatMessage decodeStreaming() {
+        return codec.decode(jsonPayload);
+    }
+
+    // Đường cũ: văn bản thường làm readValue ném exception rồi mới fallback
+    @Benchmark
+    public void decodePlainTextDatabind(Blackhole blackhole) {
+        try {
+            blackhole.consume(objectMapper.readValue(plainPayload, ChatMessage.class));
+        } catch (Exception e) {
+            blackhole.consume(plainPayload);
+        }
+    }
+
+    @Benchmark
+    public ChatMessage decodePlainTextStreaming() {
+        return codec.decode(plainPayload);
+    }
+
+    @Benchmark
+    public String encodeDatabind() throws Exception {
+        return objectMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public byte[] encodeDatabindBytes() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] encodeStreaming() throws Exception {
+        return codec.encode(message);
+    }
+}
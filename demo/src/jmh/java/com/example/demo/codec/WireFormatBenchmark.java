@@ -0,0 +1,128 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import com.example.demo.bot.HelpBot;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+// Băng thông và CPU của từng cách gửi một ChatMessage: JSON text (đường hiện tại), nhị phân,
+// và mỗi loại qua permessage-deflate. Deflater được reset mỗi lần (không dùng lại context của
+// tin trước) để không nén "ăn gian" trên chính tin nhắn lặp lại; thực tế context takeover còn
+// nén tốt hơn. Deflate chạy cho từng người nhận nên chi phí nén nhân theo fan-out,
+// còn chi phí encode chỉ trả một lần cho cả phòng.
+// Counter "wireBytes" = số byte payload đi ra mạng cho mỗi tin nhắn.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    // chat: tin nhắn ngắn thường gặp; help: câu trả lời nhiều KB của HelpBot
+    @Param({"chat", "help"})
+    public String payload;
+
+    private final ChatMessageCodec jsonCodec = new ChatMessageCodec();
+    private final ChatMessageBinaryCodec binaryCodec = new ChatMessageBinaryCodec();
+
+    private ChatMessage message;
+    private String jsonFrame;
+    private byte[] binaryFrame;
+    private Deflater deflater;
+    private byte[] deflateBuffer;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireBytes {
+        public long wireBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        if ("help".equals(payload)) {
+            message = new HelpBot().processMessage(new ChatMessage("sv01", "/help", "general"), null);
+        } else {
+            message = new ChatMessage("sv01", "Xin chào cả lớp, hôm nay học WebSocket nhé! 😊", "general");
+        }
+        message.setSeq(12_345L);
+        jsonFrame = new String(jsonCodec.encode(message), StandardCharsets.UTF_8);
+        binaryFrame = binaryCodec.encode(message);
+        // permessage-deflate: raw deflate, SYNC_FLUSH sau mỗi tin nhắn
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflateBuffer = new byte[64 * 1024];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deflater.end();
+    }
+
+    @Benchmark
+    public byte[] json(WireBytes counters) throws Exception {
+        byte[] frame = jsonCodec.encode(message);
+        counters.wireBytes += frame.length;
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] binary(WireBytes counters) {
+        byte[] frame = binaryCodec.encode(message);
+        counters.wireBytes += frame.length;
+        return frame;
+    }
+
+    @Benchmark
+    public int jsonDeflate(WireBytes counters) throws Exception {
+        int compressed = deflate(jsonCodec.encode(message));
+        counters.wireBytes += compressed;
+        return compressed;
+    }
+
+    @Benchmark
+    public int binaryDeflate(WireBytes counters) {
+        int compressed = deflate(binaryCodec.encode(message));
+        counters.wireBytes += compressed;
+        return compressed;
+    }
+
+    // Phía nhận: decode lại để so chi phí parse trên client
+    @Benchmark
+    public ChatMessage decodeJson() {
+        return jsonCodec.decode(jsonFrame);
+    }
+
+    @Benchmark
+    public ChatMessage decodeBinary() {
+        return binaryCodec.decode(ByteBuffer.wrap(binaryFrame));
+    }
+
+    // RFC 7692: nén rồi bỏ 4 byte đuôi 00 00 ff ff của SYNC_FLUSH
+    private int deflate(byte[] input) {
+        deflater.reset();
+        deflater.setInput(input);
+        int total = 0;
+        int n;
+        do {
+            n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            total += n;
+        } while (n == deflateBuffer.length);
+        return total - 4;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.demo.moderation;
+
+import com.example.demo.cluster.LoopbackRoomBus;
+import com.example.demo.persistence.Durability;
+import com.example.demo.timer.TimerWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+// statusOf (cổng kiểm duyệt) được gọi cho mọi tin nhắn, đo cả trường hợp có và không có trong danh sách
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModerationLookupBenchmark {
+
+    @Param({"10", "10000"})
+    public int restrictedUsers;
+
+    private ModerationService moderationService;
+    private TimerWheel timer;
+
+    @Setup
+    public void setup() {
+        timer = new TimerWheel(100, 512);
+        // Tắt journal để đo riêng đường tra cứu
+        moderationService = new ModerationService(new LoopbackRoomBus(), timer,
+            new ModerationJournal(false, "build/jmh-moderation", 10000, Durability.NONE, 200));
+        for (int i = 0; i < restrictedUsers; i++) {
+            moderationService.muteUser("muted" + i, 60, "benchmark", "admin");
+            moderationService.banUser("banned" + i, "benchmark", "admin");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        timer.shutdown();
+    }
+
+    @Benchmark
+    public ModerationStatus statusOfHit() {
+        return moderationService.statusOf("muted0");
+    }
+
+    @Benchmark
+    public ModerationStatus statusOfMiss() {
+        return moderationService.statusOf("sv01");
+    }
+
+    @Benchmark
+    public boolean isMutedHit() {
+        return moderationService.isMuted("muted0");
+    }
+
+    @Benchmark
+    public boolean isMutedMiss() {
+        return moderationService.isMuted("sv01");
+    }
+
+    @Benchmark
+    public boolean isBannedHit() {
+        return moderationService.isBanned("banned0");
+    }
+
+    @Benchmark
+    public boolean isBannedMiss() {
+        return moderationService.isBanned("sv01");
+    }
+}
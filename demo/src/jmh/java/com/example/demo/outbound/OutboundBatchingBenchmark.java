@@ -0,0 +1,134 @@
+package com.example.demo.outbound;
+
+import com.example.demo.NoopWebSocketSession;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Thời gian giao một loạt tin nhắn tới mọi session, gửi từng frame so với gửi theo lô.
+// sendMessage tốn writeCost token CPU cho mỗi frame, mô phỏng syscall + đóng frame.
+// windowMs = 0: chỉ gộp những gì dồn lại khi writer đang bận; > 0: chờ gom thêm trước khi gửi.
+// Counter "frames" = số lần sendMessage trên mỗi lần gọi benchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutboundBatchingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    @Param({"100"})
+    public int sessions;
+
+    @Param({"32"})
+    public int burst;
+
+    @Param({"200"})
+    public int writeCost;
+
+    @Param({"0", "5"})
+    public long windowMs;
+
+    private OutboundQueueManager outboundQueues;
+    private DeliverySession[] targets;
+    private TextMessage frame;
+    private long round;
+
+    // Session đếm frame và nhận biết frame ping đánh dấu cuối mỗi loạt
+    static final class DeliverySession extends NoopWebSocketSession {
+        private final int writeCost;
+        volatile long sentinels;
+
+        DeliverySession(String id, int writeCost) {
+            super(id);
+            this.writeCost = writeCost;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            Blackhole.consumeCPU(writeCost);
+            super.sendMessage(message);
+            if (message instanceof PingMessage) {
+                sentinels++;
+            }
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Frames {
+        public long frames;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ChatMetrics metrics = new ChatMetrics(new SimpleMeterRegistry());
+        ChatEventLog eventLog = new ChatEventLog(false, 0.01);
+        outboundQueues = new OutboundQueueManager(10_000, Integer.MAX_VALUE, OverflowPolicy.DROP_OLDEST,
+            windowMs, burst, 1 << 20, metrics, eventLog);
+        targets = new DeliverySession[sessions];
+        for (int i = 0; i < sessions; i++) {
+            targets[i] = new DeliverySession("s" + i, writeCost);
+            outboundQueues.register(targets[i], batched, false);
+        }
+        frame = new TextMessage("{\"nickname\":\"sv01\",\"message\":\"xin chào cả phòng\",\"room\":\"bench\",\"seq\":1}"
+            .getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outboundQueues.shutdown();
+    }
+
+    @Benchmark
+    public void deliverBurst(Frames counters) {
+        long before = totalSent();
+        for (int i = 0; i < burst; i++) {
+            for (DeliverySession target : targets) {
+                outboundQueues.send(target, frame);
+            }
+        }
+        // Ping không được gộp nên đến sau toàn bộ loạt tin nhắn
+        round++;
+        for (DeliverySession target : targets) {
+            outboundQueues.send(target, new PingMessage());
+        }
+        for (DeliverySession target : targets) {
+            while (target.sentinels < round) {
+                Thread.onSpinWait();
+            }
+        }
+        counters.frames += totalSent() - before - sessions;
+    }
+
+    private long totalSent() {
+        long total = 0;
+        for (DeliverySession target : targets) {
+            total += target.getSentCount();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histogram độ trễ (micro giây) kiểu log-linear: mỗi lũy thừa 2 chia 16 bucket, sai số ~6%
+// Ghi lock-free từ nhiều thread nhận, không cấp phát bộ nhớ khi record
+class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int LINEAR = 1 << SUB_BITS;
+    private static final int HALF = LINEAR / 2;
+    private static final int SIZE = LINEAR + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // thử lại cho đến khi max không nhỏ hơn value
+        }
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    // Giá trị tại phân vị p (0..1), trả về cận trên của bucket chứa phân vị đó
+    long percentile(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - (SUB_BITS - 1);
+        int sub = (int) (value >>> shift);
+        return LINEAR + (exponent - SUB_BITS) * HALF + (sub - HALF);
+    }
+
+    private static long upperBoundOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int exponent = (index - LINEAR) / HALF + SUB_BITS;
+        int sub = (index - LINEAR) % HALF + HALF;
+        int shift = exponent - (SUB_BITS - 1);
+        return ((long) (sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.ChatMessage;
+import com.example.demo.codec.ChatMessageBinaryCodec;
+import com.example.demo.codec.ChatMessageCodec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Một client WebSocket ảo: join phòng, gửi chat/ping/lệnh bot và đo độ trễ khi nhận lại tin nhắn
+class LoadClient implements WebSocket.Listener {
+
+    // Đánh dấu tin nhắn của load test: "lt@<id>:<nanoTime gửi> <padding>"
+    static final String MARKER = "lt@";
+
+    private static final ChatMessageCodec CODEC = new ChatMessageCodec();
+    private static final ChatMessageBinaryCodec BINARY_CODEC = new ChatMessageBinaryCodec();
+    private static final String[] QUIZ_ANSWERS = {"A", "B", "C", "D"};
+
+    private final int id;
+    private final String nickname;
+    private final String room;
+    private final LoadTestOptions options;
+    private final LoadStats stats;
+    private final String padding;
+
+    private volatile WebSocket webSocket;
+
+    // HttpClient WebSocket chỉ cho phép một lần gửi đang chờ; gửi tiếp khi chưa xong thì bỏ qua
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    // Ghép các phần của một frame bị chia nhỏ (chỉ thread nhận chạm vào)
+    private final StringBuilder partial = new StringBuilder();
+    private ByteBuffer partialBinary = ByteBuffer.allocate(0);
+
+    private volatile long pingSentAt;
+
+    LoadClient(int id, String room, LoadTestOptions options, LoadStats stats) {
+        this.id = id;
+        this.nickname = String.format("lt%05d", id);
+        this.room = room;
+        this.options = options;
+        this.stats = stats;
+        this.padding = "x".repeat(Math.max(0, options.payloadBytes));
+    }
+
+    CompletableFuture<WebSocket> connect(HttpClient httpClient, URI target) {
+        return httpClient.newWebSocketBuilder()
+                .buildAsync(target, this)
+                .thenApply(ws -> {
+                    webSocket = ws;
+                    return ws;
+                });
+    }
+
+    // Server tự cho vào "general"; join phòng được phân rồi rời "general" nếu cần
+    CompletableFuture<WebSocket> joinAssignedRoom() {
+        CompletableFuture<WebSocket> future = webSocket.sendText(json("/join " + room, "general"), true);
+        if (!room.equals("general")) {
+            future = future.thenCompose(ws -> ws.sendText(json("/leave general", room), true));
+        }
+        return future;
+    }
+
+    CompletableFuture<WebSocket> sendCommand(String command) {
+        return webSocket.sendText(json(command, room), true);
+    }
+
+    void sendChat() {
+        if (!sending.compareAndSet(false, true)) {
+            stats.sendSkipped.increment();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.nanoTime();
+        String text;
+        if (options.quizRatio > 0 && random.nextDouble() < options.quizRatio) {
+            text = "/quiz answer " + QUIZ_ANSWERS[random.nextInt(QUIZ_ANSWERS.length)];
+            if (stats.inWindow(now)) {
+                stats.botCommandsSent.increment();
+            }
+        } else {
+            text = MARKER + id + ":" + now + " " + padding;
+            if (stats.inWindow(now)) {
+                stats.recordChatSent(room);
+            }
+        }
+        send(json(text, room));
+    }
+
+    void sendPing() {
+        if (!sending.compareAndSet(false, true)) {
+            stats.sendSkipped.increment();
+            return;
+        }
+        long now = System.nanoTime();
+        pingSentAt = now;
+        if (stats.inWindow(now)) {
+            stats.pingsSent.increment();
+        }
+        send("ping");
+    }
+
+    void close() {
+        WebSocket ws = webSocket;
+        if (ws != null && !ws.isOutputClosed()) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "load test finished");
+        }
+    }
+
+    private void send(String text) {
+        webSocket.sendText(text, true).whenComplete((ws, error) -> {
+            sending.set(false);
+            if (error != null) {
+                stats.sendErrors.increment();
+            }
+        });
+    }
+
+    private String json(String message, String targetRoom) {
+        try {
+            return new String(CODEC.encode(new ChatMessage(nickname, message, targetRoom)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        if (!last || partial.length() > 0) {
+            partial.append(data);
+            if (last) {
+                handleFrame(partial.toString());
+                partial.setLength(0);
+            }
+        } else {
+            handleFrame(data.toString());
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    // ChatMessage nhị phân (--encoding=binary); frame bị chia nhỏ thì ghép lại trước khi decode
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        ByteBuffer frame = data;
+        if (!last || partialBinary.position() > 0) {
+            if (partialBinary.remaining() < data.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate((partialBinary.position() + data.remaining()) * 2);
+                partialBinary.flip();
+                grown.put(partialBinary);
+                partialBinary = grown;
+            }
+            partialBinary.put(data);
+            frame = null;
+            if (last) {
+                partialBinary.flip();
+                frame = partialBinary;
+            }
+        }
+        if (frame != null) {
+            int length = frame.remaining();
+            ChatMessage message = BINARY_CODEC.decode(frame);
+            handleFrame(message == null ? "" : message.getMessage(), length);
+            if (frame == partialBinary) {
+                partialBinary.clear();
+            }
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    private void handleFrame(String frame) {
+        handleFrame(frame, utf8Length(frame));
+    }
+
+    // Số byte UTF-8 của frame text mà không cần encode ra mảng
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void handleFrame(String frame, int wireBytes) {
+        long now = System.nanoTime();
+        if (stats.inWindow(now)) {
+            stats.framesReceived.increment();
+            stats.bytesReceived.add(wireBytes);
+        }
+        if ("pong".equals(frame)) {
+            long sentAt = pingSentAt;
+            if (stats.inWindow(sentAt)) {
+                stats.pongsReceived.increment();
+                stats.pingRoundTrip.record((now - sentAt) / 1_000);
+            }
+            return;
+        }
+
+        int marker = frame.indexOf(MARKER);
+        if (marker < 0) {
+            // Tin nhắn System hoặc trả lời của bot
+            stats.otherReceived.increment();
+            return;
+        }
+        // Frame theo lô ([{...},{...}]) chứa nhiều tin nhắn, mỗi tin một marker
+        while (marker >= 0) {
+            int start = frame.indexOf(':', marker) + 1;
+            int end = start;
+            while (end < frame.length() && Character.isDigit(frame.charAt(end))) {
+                end++;
+            }
+            long sentAt = Long.parseLong(frame, start, end, 10);
+            if (stats.inWindow(sentAt)) {
+                stats.delivered.increment();
+                stats.deliveryLatency.record((now - sentAt) / 1_000);
+            }
+            marker = frame.indexOf(MARKER, end);
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        if (statusCode != WebSocket.NORMAL_CLOSURE) {
+            stats.closedByServer.increment();
+        }
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        stats.errors.increment();
+    }
+
+    String getRoom() {
+        return room;
+    }
+
+    boolean isConnected() {
+        return webSocket != null;
+    }
+}
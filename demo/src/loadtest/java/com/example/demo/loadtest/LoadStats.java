@@ -0,0 +1,53 @@
+package com.example.demo.loadtest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bộ đếm dùng chung cho mọi client; chỉ tính các tin nhắn được gửi trong cửa sổ đo
+class LoadStats {
+
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    final LongAdder chatSent = new LongAdder();
+    final LongAdder botCommandsSent = new LongAdder();
+    final LongAdder pingsSent = new LongAdder();
+    final LongAdder sendSkipped = new LongAdder();
+    final LongAdder sendErrors = new LongAdder();
+
+    final LongAdder framesReceived = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder otherReceived = new LongAdder();
+    final LongAdder pongsReceived = new LongAdder();
+    final LongAdder closedByServer = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    // Số tin chat đã gửi theo phòng, để tính số lần giao dự kiến (tin x số thành viên)
+    final Map<String, LongAdder> chatSentByRoom = new ConcurrentHashMap<>();
+
+    final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    final LatencyHistogram pingRoundTrip = new LatencyHistogram();
+
+    void startWindow(long nanos) {
+        windowStart = nanos;
+    }
+
+    void endWindow(long nanos) {
+        windowEnd = nanos;
+    }
+
+    boolean inWindow(long nanos) {
+        return nanos >= windowStart && nanos < windowEnd;
+    }
+
+    double windowSeconds() {
+        return (windowEnd - windowStart) / 1_000_000_000.0;
+    }
+
+    void recordChatSent(String room) {
+        chatSent.increment();
+        chatSentByRoom.computeIfAbsent(room, r -> new LongAdder()).increment();
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.demo.loadtest;
+
+import com.example.demo.DemoApplication;
+import com.example.demo.cluster.RoomBus;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load test headless cho endpoint /chat
+// Chạy: ./gradlew loadTest -PloadArgs="--clients=2000 --rooms=general:50,study:30,random:20 --rate=0.5 --duration=60s"
+// Mặc định tự khởi động server nhúng (cổng ngẫu nhiên) trong cùng JVM nên chạy được offline.
+// --nodes=3: ba server nhúng nối với nhau qua TcpRoomBus trên localhost, client chia đều cho các node,
+// nên mỗi tin nhắn phải đi qua cluster mới tới được phần lớn thành viên của phòng
+public class LoadTest {
+
+    private final LoadTestOptions options;
+    private final List<URI> targets;
+    private final LoadStats stats = new LoadStats();
+    private final List<LoadClient> clients = new ArrayList<>();
+
+    LoadTest(LoadTestOptions options, List<URI> targets) {
+        this.options = options;
+        this.targets = targets;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        List<ConfigurableApplicationContext> servers = new ArrayList<>();
+        List<URI> targets = options.targets;
+        try {
+            if (targets.isEmpty()) {
+                servers = startEmbeddedCluster(options);
+                targets = new ArrayList<>();
+                for (ConfigurableApplicationContext server : servers) {
+                    int port = ((WebServerApplicationContext) server).getWebServer().getPort();
+                    targets.add(URI.create("ws://127.0.0.1:" + port + "/chat"));
+                }
+            }
+            new LoadTest(options, targets).run();
+        } finally {
+            servers.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    // Một node: cấu hình như cũ. Nhiều node: mỗi node một cổng cluster và thư mục chat log riêng,
+    // peers là toàn bộ các node; chờ mọi link cluster thông rồi mới cho client kết nối
+    private static List<ConfigurableApplicationContext> startEmbeddedCluster(LoadTestOptions options) throws Exception {
+        List<ConfigurableApplicationContext> servers = new ArrayList<>();
+        if (options.nodes <= 1) {
+            servers.add(startEmbeddedServer(options, Map.of()));
+            return servers;
+        }
+        List<Integer> clusterPorts = new ArrayList<>();
+        for (int i = 0; i < options.nodes; i++) {
+            try (ServerSocket probe = new ServerSocket(0)) {
+                clusterPorts.add(probe.getLocalPort());
+            }
+        }
+        String peers = String.join(",", clusterPorts.stream().map(port -> "127.0.0.1:" + port).toList());
+        String secret = UUID.randomUUID().toString();
+        for (int i = 0; i < options.nodes; i++) {
+            Map<String, String> node = new LinkedHashMap<>();
+            node.put("chat.cluster.mode", "TCP");
+            node.put("chat.cluster.node-id", "node-" + i);
+            node.put("chat.cluster.port", String.valueOf(clusterPorts.get(i)));
+            node.put("chat.cluster.peers", peers);
+            node.put("chat.cluster.secret", secret);
+            node.put("chat.store.dir", "build/loadtest-chatlog/node-" + i);
+            node.put("chat.moderation.journal.dir", "build/loadtest-moderation/node-" + i);
+            servers.add(startEmbeddedServer(options, node));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (ConfigurableApplicationContext server : servers) {
+            RoomBus bus = server.getBean(RoomBus.class);
+            while (bus.peerCount() < options.nodes - 1) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Cluster links not established: " + bus.nodeId()
+                            + " has " + bus.peerCount() + "/" + (options.nodes - 1) + " peers");
+                }
+                Thread.sleep(50);
+            }
+        }
+        return servers;
+    }
+
+    // Mọi client đến từ 127.0.0.1 và mỗi client gửi nhanh hơn giới hạn của người dùng thật, nên tắt
+    // giới hạn flood theo IP lẫn theo session và giới hạn spam theo user, để số đo là của đường
+    // broadcast chứ không phải số frame bị chặn; có thể ghi đè bằng --chat.xxx=... trên dòng lệnh
+    private static ConfigurableApplicationContext startEmbeddedServer(LoadTestOptions options, Map<String, String> node) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("server.address", "127.0.0.1");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.put("chat.flood.ip-message-rate", "0");
+        properties.put("chat.flood.ip-byte-rate", "0");
+        properties.put("chat.flood.session-message-rate", "0");
+        properties.put("chat.flood.session-byte-rate", "0");
+        properties.put("chat.spam.limit", "0");
+        properties.putAll(node);
+        for (String arg : options.serverArgs) {
+            int eq = arg.indexOf('=');
+            properties.put(arg.substring(2, eq < 0 ? arg.length() : eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+
+        List<String> args = new ArrayList<>();
+        properties.forEach((key, value) -> args.add("--" + key + "=" + value));
+        return SpringApplication.run(DemoApplication.class, args.toArray(new String[0]));
+    }
+
+    void run() throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        long connectStart = System.nanoTime();
+        connectAll(httpClient);
+        double connectSeconds = (System.nanoTime() - connectStart) / 1_000_000_000.0;
+
+        List<LoadClient> connected = clients.stream().filter(LoadClient::isConnected).toList();
+        joinRooms(connected);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "load-sender");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        schedule(scheduler, connected);
+
+        Thread.sleep(options.warmup.toMillis());
+        stats.startWindow(System.nanoTime());
+        Thread.sleep(options.duration.toMillis());
+        stats.endWindow(System.nanoTime());
+
+        // Dừng gửi, chờ thêm một chút để các tin gửi trong cửa sổ đo kịp tới nơi
+        scheduler.shutdownNow();
+        Thread.sleep(1000);
+        connected.forEach(LoadClient::close);
+
+        printReport(connected, connectSeconds);
+    }
+
+    // Mở kết nối song song, tối đa connectConcurrency kết nối đang chờ handshake
+    private void connectAll(HttpClient httpClient) throws InterruptedException {
+        Semaphore inFlight = new Semaphore(options.connectConcurrency);
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (int i = 0; i < options.clients; i++) {
+            LoadClient client = new LoadClient(i, options.roomFor(i), options, stats);
+            clients.add(client);
+            inFlight.acquire();
+            URI target = targets.get(i % targets.size());
+            pending.add(client.connect(httpClient, URI.create(target + options.handshakeQuery()))
+                    .whenComplete((ws, error) -> inFlight.release()));
+        }
+        awaitQuietly(pending);
+    }
+
+    private void joinRooms(List<LoadClient> connected) {
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (LoadClient client : connected) {
+            pending.add(client.joinAssignedRoom());
+        }
+        awaitQuietly(pending);
+
+        // Mở một game quiz ở mỗi phòng để lệnh "/quiz answer" có bot xử lý thật
+        if (options.quizRatio > 0) {
+            List<CompletableFuture<?>> quizStarts = new ArrayList<>();
+            Map<String, LoadClient> firstByRoom = new LinkedHashMap<>();
+            connected.forEach(client -> firstByRoom.putIfAbsent(client.getRoom(), client));
+            firstByRoom.values().forEach(client -> quizStarts.add(client.sendCommand("/quiz start")));
+            awaitQuietly(quizStarts);
+        }
+    }
+
+    // Rải thời điểm bắt đầu ngẫu nhiên để các client không gửi cùng lúc
+    private void schedule(ScheduledExecutorService scheduler, List<LoadClient> connected) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (options.messageRate > 0) {
+            long periodMicros = (long) (1_000_000 / options.messageRate);
+            for (LoadClient client : connected) {
+                scheduler.scheduleAtFixedRate(client::sendChat,
+                        random.nextLong(periodMicros), periodMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (!options.pingInterval.isZero()) {
+            long periodMillis = options.pingInterval.toMillis();
+            for (LoadClient client : connected) {
+                scheduler.scheduleAtFixedRate(client::sendPing,
+                        random.nextLong(periodMillis), periodMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<?>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Kết nối lỗi được tính trong báo cáo, không dừng cả load test
+        }
+    }
+
+    private void printReport(List<LoadClient> connected, double connectSeconds) {
+        double seconds = stats.windowSeconds();
+
+        // Số thành viên mỗi phòng theo phân phối đã cấu hình
+        Map<String, AtomicInteger> roomSizes = new LinkedHashMap<>();
+        connected.forEach(client -> roomSizes.computeIfAbsent(client.getRoom(), r -> new AtomicInteger()).incrementAndGet());
+
+        // Mỗi tin chat được giao cho mọi thành viên của phòng, kể cả người gửi
+        long expected = 0;
+        for (Map.Entry<String, LongAdder> entry : stats.chatSentByRoom.entrySet()) {
+            AtomicInteger size = roomSizes.get(entry.getKey());
+            expected += entry.getValue().sum() * (size == null ? 0 : size.get());
+        }
+        long chatSent = stats.chatSent.sum();
+        long delivered = stats.delivered.sum();
+
+        System.out.println();
+        System.out.println("=== Load test " + (targets.size() == 1 ? targets.get(0) : targets) + " ===");
+        System.out.printf("Clients:      %d/%d connected in %.1fs, %d closed by server, %d errors%n",
+                connected.size(), options.clients, connectSeconds, stats.closedByServer.sum(), stats.errors.sum());
+        System.out.println("Rooms:        " + roomSizes);
+        System.out.printf("Window:       %.1fs (warmup %ds)%n", seconds, options.warmup.toSeconds());
+        System.out.printf("Sent:         %d chat (%.0f/s), %d bot commands, %d pings, %d skipped (send pending), %d send errors%n",
+                chatSent, chatSent / seconds, stats.botCommandsSent.sum(), stats.pingsSent.sum(),
+                stats.sendSkipped.sum(), stats.sendErrors.sum());
+        System.out.printf("Delivered:    %d (%.0f/s), %.2f%% of expected %d, avg fan-out %.1f%n",
+                delivered, delivered / seconds, expected == 0 ? 0.0 : 100.0 * delivered / expected,
+                expected, chatSent == 0 ? 0.0 : (double) delivered / chatSent);
+        System.out.printf("Other frames: %d (System/bot responses)%n", stats.otherReceived.sum());
+        long frames = stats.framesReceived.sum();
+        System.out.printf("Frames:       %d received (%.0f/s), %.2f chat messages/frame%s%n",
+                frames, frames / seconds, frames == 0 ? 0.0 : (double) delivered / frames,
+                options.batch ? " (batched)" : "");
+        long bytes = stats.bytesReceived.sum();
+        System.out.printf("Bandwidth:    %.1f KiB/s received, %.0f bytes/chat message (%s, before compression)%n",
+                bytes / 1024.0 / seconds, delivered == 0 ? 0.0 : (double) bytes / delivered,
+                options.binary ? "binary" : "json");
+        printLatency("Latency (ms):", stats.deliveryLatency);
+        printLatency("Ping RTT (ms):", stats.pingRoundTrip);
+    }
+
+    private static void printLatency(String label, LatencyHistogram histogram) {
+        System.out.printf("%-14s p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f (n=%d)%n", label,
+                histogram.percentile(0.50) / 1000.0, histogram.percentile(0.90) / 1000.0,
+                histogram.percentile(0.99) / 1000.0, histogram.percentile(0.999) / 1000.0,
+                histogram.max() / 1000.0, histogram.count());
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.demo.loadtest;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Tham số của load test, đọc từ dòng lệnh dạng --key=value
+// Tham số bắt đầu bằng --chat. / --server. / --spring. / --logging. được chuyển thẳng cho server nhúng
+class LoadTestOptions {
+
+    private static final List<String> SERVER_PREFIXES = List.of("--chat.", "--server.", "--spring.", "--logging.");
+
+    // Số client WebSocket mở đồng thời
+    int clients = 1000;
+
+    // Tỉ lệ client theo phòng, ví dụ general:50,study:30,random:20
+    Map<String, Integer> rooms = new LinkedHashMap<>(Map.of("general", 1));
+
+    // Số tin nhắn chat mỗi client gửi mỗi giây (có thể < 1)
+    double messageRate = 1.0;
+
+    // Chu kỳ gửi "ping" của mỗi client; 0 = tắt heartbeat
+    Duration pingInterval = Duration.ofSeconds(20);
+
+    // Tỉ lệ tin nhắn là lệnh bot "/quiz answer <X>" thay vì chat thường
+    double quizRatio = 0.02;
+
+    // Độ dài phần nội dung thêm vào mỗi tin nhắn (byte)
+    int payloadBytes = 64;
+
+    Duration warmup = Duration.ofSeconds(5);
+    Duration duration = Duration.ofSeconds(30);
+
+    // Xin server gửi theo lô (?batch=1): nhiều tin nhắn trong một frame mảng JSON
+    boolean batch;
+
+    // Xin ChatMessage dạng nhị phân (?encoding=binary) thay cho JSON text
+    boolean binary;
+
+    // Số kết nối được mở song song khi khởi động
+    int connectConcurrency = 200;
+
+    // Số node server nhúng nối với nhau bằng TcpRoomBus; client chia đều vòng tròn cho các node
+    int nodes = 1;
+
+    // Server ngoài (ws://host:port/chat, nhiều node cách nhau bằng dấu phẩy); rỗng = tự khởi động server nhúng
+    List<URI> targets = new ArrayList<>();
+
+    // Cấu hình thêm cho server nhúng
+    final List<String> serverArgs = new ArrayList<>();
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            if (SERVER_PREFIXES.stream().anyMatch(arg::startsWith)) {
+                options.serverArgs.add(arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Tham số không hợp lệ: " + arg);
+            }
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1).trim();
+            switch (key) {
+                case "clients" -> options.clients = Integer.parseInt(value);
+                case "rooms" -> options.rooms = parseRooms(value);
+                case "rate" -> options.messageRate = Double.parseDouble(value);
+                case "ping-interval" -> options.pingInterval = parseDuration(value);
+                case "quiz-ratio" -> options.quizRatio = Double.parseDouble(value);
+                case "payload-bytes" -> options.payloadBytes = Integer.parseInt(value);
+                case "warmup" -> options.warmup = parseDuration(value);
+                case "duration" -> options.duration = parseDuration(value);
+                case "batch" -> options.batch = Boolean.parseBoolean(value);
+                case "encoding" -> options.binary = "binary".equals(value);
+                case "connect-concurrency" -> options.connectConcurrency = Integer.parseInt(value);
+                case "nodes" -> options.nodes = Integer.parseInt(value);
+                case "target" -> options.targets = parseTargets(value);
+                default -> throw new IllegalArgumentException("Tham số không hỗ trợ: --" + key);
+            }
+        }
+        return options;
+    }
+
+    // Query string gửi khi handshake theo các tùy chọn của client
+    String handshakeQuery() {
+        List<String> params = new ArrayList<>();
+        if (batch) {
+            params.add("batch=1");
+        }
+        if (binary) {
+            params.add("encoding=binary");
+        }
+        return params.isEmpty() ? "" : "?" + String.join("&", params);
+    }
+
+    // Phòng của client thứ index, chia theo trọng số một cách tất định
+    String roomFor(int index) {
+        int totalWeight = rooms.values().stream().mapToInt(Integer::intValue).sum();
+        int slot = index % totalWeight;
+        for (Map.Entry<String, Integer> entry : rooms.entrySet()) {
+            slot -= entry.getValue();
+            if (slot < 0) {
+                return entry.getKey();
+            }
+        }
+        return rooms.keySet().iterator().next();
+    }
+
+    private static List<URI> parseTargets(String value) {
+        List<URI> result = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                result.add(URI.create(part.trim()));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> parseRooms(String value) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (weight > 0) {
+                result.put(pair[0].trim(), weight);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("Cần ít nhất một phòng: " + value);
+        }
+        return result;
+    }
+
+    // Cú pháp: "500ms", "30s", "2m"
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+}
@@ -1,41 +1,165 @@
 package com.example.demo;
 
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.springframework.web.socket.CloseStatus;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.example.demo.bot.BotManager;
+import com.example.demo.cluster.RoomBus;
+import com.example.demo.codec.ChatMessageBinaryCodec;
+import com.example.demo.codec.ChatMessageCodec;
+import com.example.demo.history.RoomHistory;
+import com.example.demo.history.RoomLog;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import com.example.demo.moderation.ModerationEntry;
+import com.example.demo.moderation.ModerationStatus;
+import com.example.demo.persistence.ChatLogStore;
+import com.example.demo.outbound.OutboundFrame;
+import com.example.demo.outbound.OutboundQueueManager;
+import com.example.demo.ratelimit.FloodGuard;
+import com.example.demo.room.RoomRegistry;
+import com.example.demo.session.ChatIdentity;
+import com.example.demo.session.ChatIdentityResolver;
+import com.example.demo.session.SessionLiveness;
+import com.example.demo.session.SessionResumeRegistry;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.HashSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class ChatHandler extends TextWebSocketHandler {
 
-    // Map lưu trữ các phòng chat: key = tên phòng, value = Set các session
-    private final Map<String, Set<WebSocketSession>> rooms = new ConcurrentHashMap<>();
-    
-    // Map lưu trữ session và phòng hiện tại của họ
-    private final Map<WebSocketSession, String> sessionRooms = new ConcurrentHashMap<>();
+    // Quản lý phòng chat và index session -> phòng
+    private final RoomRegistry roomRegistry;
     
     // Map lưu trữ session và nickname của họ
     private final Map<WebSocketSession, String> sessionNicknames = new ConcurrentHashMap<>();
     
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Codec JSON streaming cho ChatMessage
+    private final ChatMessageCodec codec = new ChatMessageCodec();
+    private final ChatMessageBinaryCodec binaryCodec = new ChatMessageBinaryCodec();
     
     // Bot Manager để xử lý các bot
-    private final BotManager botManager = new BotManager();
+    private final BotManager botManager;
+    
+    // Hàng đợi gửi riêng cho từng session
+    private final OutboundQueueManager outboundQueues;
+    
+    // Chặn flood trước khi parse JSON
+    private final FloodGuard floodGuard;
+    
+    // Đếm tin nhắn vào/ra và đo thời gian broadcast
+    private final ChatMetrics metrics;
+    
+    // Log sự kiện bất đồng bộ thay cho System.out
+    private final ChatEventLog eventLog;
+    
+    // Lịch sử gần đây của từng phòng để replay khi join/reconnect
+    private final RoomHistory history;
+    
+    // Chat log bền vững trên đĩa (ghi bất đồng bộ)
+    private final ChatLogStore chatLogStore;
+    
+    // Trạng thái session vừa rớt mạng, chờ client kết nối lại bằng resume token
+    private final SessionResumeRegistry resumeRegistry;
+    
+    // Heartbeat phía server: ping session im lặng, ngắt session half-open
+    private final SessionLiveness liveness;
+    
+    // Chuyển tin nhắn sang các node khác đang có thành viên trong cùng phòng
+    private final RoomBus roomBus;
+    
+    // Định danh không gian seq: node + lần khởi động. Reconnect sang node khác hoặc sau restart
+    // thì seq bắt đầu lại theo cách khác, client thấy epoch đổi sẽ bỏ seq cũ thay vì lọc nhầm tin mới
+    private final String seqEpoch;
+    
+    // Attribute lưu resume token của session
+    private static final String RESUME_TOKEN_ATTR = "chat.resumeToken";
+    
+    // Tiền tố thêm vào nickname của khách khi trùng tên một tài khoản
+    private static final String GUEST_PREFIX = "Khách-";
+    
+    // Số lần đọc trước chat log khi replay, trước khi chịu đọc đĩa trong khóa của phòng
+    private static final int MAX_REPLAY_PREFETCHES = 3;
+    
+    private final ChatIdentityResolver identities;
+    
+    public ChatHandler(RoomRegistry roomRegistry, BotManager botManager,
+                       OutboundQueueManager outboundQueues, FloodGuard floodGuard,
+                       ChatMetrics metrics, ChatEventLog eventLog, RoomHistory history,
+                       ChatLogStore chatLogStore, SessionResumeRegistry resumeRegistry,
+                       SessionLiveness liveness, RoomBus roomBus, ChatIdentityResolver identities) {
+        this.roomRegistry = roomRegistry;
+        this.botManager = botManager;
+        this.outboundQueues = outboundQueues;
+        this.floodGuard = floodGuard;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.history = history;
+        this.chatLogStore = chatLogStore;
+        this.resumeRegistry = resumeRegistry;
+        this.liveness = liveness;
+        this.roomBus = roomBus;
+        this.identities = identities;
+        this.seqEpoch = roomBus.nodeId() + "-" + Long.toString(System.currentTimeMillis(), 36);
+        roomBus.subscribe(new RoomBus.Listener() {
+            @Override
+            public void onRemoteMessage(String roomName, byte[] payload, boolean persist) {
+                deliverRemote(roomName, payload, persist);
+            }
+
+            @Override
+            public int localMembers(String roomName) {
+                return roomRegistry.members(roomName).length;
+            }
+        });
+        botManager.getModerationService().addListener(this::onModerationChange);
+    }
+
+    // Chạy trên thread timer wheel khi mute hết hạn (cùng version, MUTED -> ACTIVE):
+    // báo ngay cho các session của user trên node này, không đợi user gửi tin mới biết
+    private void onModerationChange(ModerationEntry previous, ModerationEntry current) {
+        if (previous == null || previous.getStatus() != ModerationStatus.MUTED
+                || current.getStatus() != ModerationStatus.ACTIVE || current.getVersion() != previous.getVersion()) {
+            return;
+        }
+        String username = current.getUsername();
+        for (Map.Entry<WebSocketSession, String> entry : sessionNicknames.entrySet()) {
+            if (!username.equals(entry.getValue())) {
+                continue;
+            }
+            WebSocketSession session = entry.getKey();
+            try {
+                outboundQueues.send(session, encodeFrame(new ChatMessage("🤖 System",
+                    String.format("🔊 @%s đã hết thời gian tắt tiếng, bạn có thể chat trở lại.", username),
+                    roomRegistry.defaultRoomOf(session))));
+            } catch (IOException e) {
+                eventLog.sendFailed(session, e);
+            }
+        }
+    }
 
     @Override
     public void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        // Giới hạn byte của FloodGuard tính theo UTF-8 trên dây, không theo số char
+        int payloadLength = FloodGuard.utf8Length(message.getPayload());
+        if (!admit(session, payloadLength)) {
+            return;
+        }
+        
         String payload = message.getPayload();
         
         // Handle heartbeat/ping messages for mobile connection stability
         if ("ping".equals(payload)) {
-            session.sendMessage(new TextMessage("pong"));
+            outboundQueues.send(session, new TextMessage("pong"));
             return;
         }
         
@@ -44,167 +168,558 @@ public class ChatHandler extends TextWebSocketHandler {
             return;
         }
         
-        System.out.println("Message received: " + payload);
+        eventLog.messageReceived(session, payloadLength, payload);
 
+        // Parse JSON bằng codec streaming; null nghĩa là văn bản thường, không cần ném exception
+        ChatMessage chatMessage = codec.decode(payload);
+        
+        if (chatMessage != null) {
+            handleChatMessage(session, chatMessage);
+            return;
+        }
+        
+        // Xử lý lệnh phòng cho tin nhắn văn bản thường
+        if (handleRoomCommand(session, payload, null)) {
+            return;
+        }
+        
+        // Gửi tin nhắn văn bản thường đến phòng join gần nhất
+        String currentRoom = roomRegistry.defaultRoomOf(session);
+        if (currentRoom != null) {
+            String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
+            ChatMessage textMessage = new ChatMessage(nickname, payload, currentRoom);
+            deliverChatMessage(session, textMessage);
+        }
+    }
+    
+    // ChatMessage nhị phân từ client đã chọn ?encoding=binary; frame hỏng thì bỏ qua.
+    // TextWebSocketHandler mặc định đóng session khi nhận binary, ở đây thay bằng decode
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
         try {
-            // Parse JSON message
-            ChatMessage chatMessage = objectMapper.readValue(payload, ChatMessage.class);
-            
-            // Lưu nickname của session
-            sessionNicknames.put(session, chatMessage.getNickname());
-            
-            // Xử lý lệnh /join
-            if (chatMessage.getMessage().startsWith("/join ")) {
-                String newRoomName = chatMessage.getMessage().substring(6).trim();
-                if (!newRoomName.isEmpty()) {
-                    joinRoom(session, newRoomName);
-                    return;
-                }
-            }
-            
-            // Xử lý tin nhắn qua Bot Manager trước
-            List<ChatMessage> botResponses = botManager.processMessage(chatMessage, session);
-            
-            // Nếu có bot response, gửi chúng
-            for (ChatMessage botResponse : botResponses) {
-                broadcastToRoom(botResponse.getRoom(), botResponse, session);
-            }
-            
-            // Nếu user bị mute/ban, bot đã xử lý và return, không gửi tin nhắn gốc
-            if (!botResponses.isEmpty() && 
-                botResponses.stream().anyMatch(r -> r.getMessage().contains("bị cấm") || r.getMessage().contains("bị tắt tiếng"))) {
+            int payloadLength = message.getPayloadLength();
+            if (!admit(session, payloadLength)) {
                 return;
             }
-            
-            // Xử lý tin nhắn bình thường (nếu không phải bot command)
-            String currentRoom = sessionRooms.get(session);
-            if (currentRoom != null && !chatMessage.getMessage().startsWith("/")) {
-                broadcastToRoom(currentRoom, chatMessage, session);
-            }
-            
-        } catch (Exception e) {
-            // Nếu không parse được JSON, xử lý như tin nhắn văn bản thường
-            System.out.println("Failed to parse JSON, treating as plain text: " + e.getMessage());
-            
-            // Xử lý lệnh /join cho tin nhắn văn bản thường
-            if (payload.startsWith("/join ")) {
-                String newRoomName = payload.substring(6).trim();
-                if (!newRoomName.isEmpty()) {
-                    joinRoom(session, newRoomName);
-                    return;
-                }
-            }
-            
-            // Gửi tin nhắn văn bản thường đến phòng hiện tại
-            String currentRoom = sessionRooms.get(session);
-            if (currentRoom != null) {
-                String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
-                ChatMessage textMessage = new ChatMessage(nickname, payload, currentRoom);
-                
-                // Xử lý qua bot trước
-                List<ChatMessage> botResponses = botManager.processMessage(textMessage, session);
-                for (ChatMessage botResponse : botResponses) {
-                    broadcastToRoom(botResponse.getRoom(), botResponse, session);
-                }
-                
-                // Gửi tin nhắn gốc nếu không bị chặn
-                if (botResponses.isEmpty() || 
-                    !botResponses.stream().anyMatch(r -> r.getMessage().contains("bị cấm") || r.getMessage().contains("bị tắt tiếng"))) {
-                    broadcastToRoom(currentRoom, textMessage, session);
-                }
+            ChatMessage chatMessage = binaryCodec.decode(message.getPayload());
+            if (chatMessage != null) {
+                eventLog.messageReceived(session, payloadLength, chatMessage.getMessage());
+                handleChatMessage(session, chatMessage);
             }
+        } catch (IOException e) {
+            eventLog.sendFailed(session, e);
         }
     }
+    
+    // Đếm, ghi nhận hoạt động và kiểm tra tốc độ/kích thước frame trước mọi xử lý khác
+    private boolean admit(WebSocketSession session, int payloadLength) throws IOException {
+        metrics.inbound();
+        liveness.touch(session);
+        
+        FloodGuard.Verdict verdict = floodGuard.admit(session, payloadLength);
+        if (verdict == FloodGuard.Verdict.CLOSE) {
+            session.close(floodGuard.closeStatusFor(payloadLength));
+            return false;
+        }
+        return verdict == FloodGuard.Verdict.ACCEPT;
+    }
+    
+    private void handleChatMessage(WebSocketSession session, ChatMessage chatMessage) throws IOException {
+        // Session đã đăng nhập luôn mang tên tài khoản, bỏ qua nickname client tự ghi trong payload
+        ChatIdentity identity = ChatIdentity.of(session);
+        if (identity.isAuthenticated()) {
+            chatMessage.setNickname(identity.getUsername());
+        } else if (chatMessage.getNickname() != null) {
+            chatMessage.setNickname(guestNickname(session, chatMessage.getNickname()));
+        }
+        
+        // Lưu nickname của session
+        if (chatMessage.getNickname() != null) {
+            sessionNicknames.put(session, chatMessage.getNickname());
+        } else {
+            chatMessage.setNickname(sessionNicknames.getOrDefault(session, "Anonymous"));
+        }
+        
+        // Xử lý lệnh /join, /leave, /rooms
+        if (handleRoomCommand(session, chatMessage.getMessage(), chatMessage.getRoom())) {
+            return;
+        }
+        
+        // Tin nhắn gửi vào phòng ghi trong payload nếu session là thành viên,
+        // ngược lại vào phòng join gần nhất
+        String targetRoom = resolveRoom(session, chatMessage.getRoom());
+        if (targetRoom == null) {
+            return;
+        }
+        chatMessage.setRoom(targetRoom);
+        
+        deliverChatMessage(session, chatMessage);
+    }
+    
+    // Khách không được đăng tin dưới tên một tài khoản (hay tên "System" của thông báo hệ thống):
+    // thêm tiền tố thay vì từ chối, để khách vẫn chat được mà không mạo danh ai.
+    // Nickname không đổi so với tin trước thì dùng lại kết quả đã kiểm tra, không tra tài khoản mỗi tin
+    private String guestNickname(WebSocketSession session, String nickname) {
+        String name = nickname.trim();
+        String current = sessionNicknames.get(session);
+        if (nickname.equals(current) || (GUEST_PREFIX + name).equals(current)) {
+            return current;
+        }
+        if (name.equalsIgnoreCase("System") || identities.forUsername(name) != null) {
+            return GUEST_PREFIX + name;
+        }
+        return nickname;
+    }
+    
+    // Pong trả lời ping WebSocket của server (trình duyệt tự gửi)
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        liveness.touch(session);
+    }
+    
+    // Cổng kiểm duyệt -> broadcast tin nhắn gốc ngay -> bot chạy bất đồng bộ, trả lời khi xong
+    private void deliverChatMessage(WebSocketSession session, ChatMessage chatMessage) throws IOException {
+        // Nếu user bị mute/ban thì chỉ gửi thông báo chặn, không gửi tin nhắn gốc
+        ChatMessage rejection = botManager.checkModeration(chatMessage);
+        if (rejection != null) {
+            announceToRoom(rejection.getRoom(), rejection);
+            return;
+        }
+        
+        // Tin nhắn bình thường (không phải bot command) được gửi ngay, không chờ bot
+        if (!chatMessage.getMessage().startsWith("/")) {
+            broadcastToRoom(chatMessage.getRoom(), chatMessage, session);
+        }
+        
+        botManager.dispatchAsync(chatMessage, session, botResponse -> {
+            try {
+                broadcastToRoom(botResponse.getRoom(), botResponse, session);
+            } catch (IOException e) {
+                eventLog.sendFailed(session, e);
+            }
+        });
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        // Tự động thêm vào phòng general
-        joinRoom(session, "general");
-        System.out.println("New connection: " + session.getId() + " joined room: general");
+        // ws://.../chat?resume=<token>&since=general:120,tech:57&batch=1&encoding=binary
+        Map<String, String> query = parseQuery(session.getUri());
+        
+        floodGuard.register(session);
+        // batch=1: client nhận được frame mảng JSON, cho phép gộp tin nhắn; web UI mặc định không xin.
+        // encoding=binary: ChatMessage gửi dạng BinaryMessage gọn; frame điều khiển (session, pong) vẫn là text
+        outboundQueues.register(session, "1".equals(query.get("batch")), "binary".equals(query.get("encoding")));
+        liveness.register(session);
+        ChatIdentity identity = ChatIdentity.of(session);
+        if (identity.isAuthenticated()) {
+            sessionNicknames.put(session, identity.getUsername());
+        }
+        
+        SessionResumeRegistry.ParkedSession resumed = resumeRegistry.resume(query.get("resume"));
+        String token = resumed != null ? resumed.getToken() : resumeRegistry.issueToken();
+        session.getAttributes().put(RESUME_TOKEN_ATTR, token);
+        
+        if (resumed != null) {
+            // Khôi phục nickname + phòng, replay tin nhắn bị lỡ; không thông báo join lại.
+            // Session cũ có thể là tài khoản đã đăng nhập: khách resume không được mang lại tên tài khoản đó
+            if (resumed.getNickname() != null && !identity.isAuthenticated()) {
+                sessionNicknames.put(session, guestNickname(session, resumed.getNickname()));
+            }
+            outboundQueues.send(session, new TextMessage(codec.encodeSession(
+                token, true, sessionNicknames.get(session), resumed.getRooms(), seqEpoch)));
+            Map<String, Long> since = parseSince(query.get("since"));
+            for (String roomName : resumed.getRooms()) {
+                joinRoom(session, roomName, since.getOrDefault(roomName, -1L), false);
+            }
+        } else {
+            outboundQueues.send(session, new TextMessage(codec.encodeSession(
+                token, false, null, List.of(), seqEpoch)));
+            // Tự động thêm vào phòng general
+            joinRoom(session, "general", -1, true);
+        }
+        metrics.sessionOpened(isCompressed(session));
+        eventLog.connected(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        // Xóa session khỏi phòng hiện tại
-        String currentRoom = sessionRooms.get(session);
-        if (currentRoom != null) {
-            leaveRoom(session, currentRoom);
+        // Xóa session khỏi tất cả phòng đang tham gia
+        List<String> rooms = roomRegistry.leaveAll(session);
+        rooms.forEach(roomBus::presenceChanged);
+        rooms.forEach(this::releaseIfVacant);
+        String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
+        String token = (String) session.getAttributes().get(RESUME_TOKEN_ATTR);
+        
+        if (token != null && isResumable(status)) {
+            // Rớt mạng: giữ chỗ, chỉ thông báo rời phòng nếu client không quay lại kịp
+            resumeRegistry.park(token, sessionNicknames.get(session), rooms,
+                () -> announceLeaveAll(nickname, rooms));
+        } else {
+            announceLeaveAll(nickname, rooms);
         }
         
         // Xóa thông tin session
-        sessionRooms.remove(session);
         sessionNicknames.remove(session);
+        outboundQueues.unregister(session);
+        floodGuard.unregister(session);
+        liveness.unregister(session);
         
-        System.out.println("Connection closed: " + session.getId());
+        eventLog.closed(session, status);
     }
     
-    // Phương thức để join phòng
-    private void joinRoom(WebSocketSession session, String roomName) throws IOException {
-        // Rời phòng hiện tại (nếu có)
-        String currentRoom = sessionRooms.get(session);
-        if (currentRoom != null) {
-            leaveRoom(session, currentRoom);
+    // Tomcat tự bật permessage-deflate khi client đề nghị (mọi trình duyệt hiện đại đều đề nghị)
+    private static boolean isCompressed(WebSocketSession session) {
+        for (WebSocketExtension extension : session.getExtensions()) {
+            if ("permessage-deflate".equals(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Đóng chủ động (1000) hoặc bị ngắt vì vi phạm/flood (1008, 1009) thì không giữ chỗ
+    private static boolean isResumable(CloseStatus status) {
+        int code = status.getCode();
+        return code != CloseStatus.NORMAL.getCode()
+            && code != CloseStatus.POLICY_VIOLATION.getCode()
+            && code != CloseStatus.TOO_BIG_TO_PROCESS.getCode();
+    }
+    
+    private void announceLeaveAll(String nickname, List<String> rooms) {
+        for (String roomName : rooms) {
+            try {
+                announceToRoom(roomName, new ChatMessage("System", nickname + " đã rời phòng", roomName));
+            } catch (IOException e) {
+                eventLog.noticeFailed(roomName, e);
+            }
+        }
+    }
+    
+    // Query string của URL handshake, giá trị đã URL-decode
+    private static Map<String, String> parseQuery(URI uri) {
+        String raw = uri != null ? uri.getRawQuery() : null;
+        if (raw == null || raw.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+    
+    // "general:120,tech:57" -> seq cuối client đã nhận của từng phòng
+    private static Map<String, Long> parseSince(String since) {
+        if (since == null || since.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Long> seqs = new HashMap<>();
+        for (String part : since.split(",")) {
+            int colon = part.lastIndexOf(':');
+            if (colon > 0 && isNumber(part.substring(colon + 1))) {
+                seqs.put(part.substring(0, colon), Long.parseLong(part.substring(colon + 1)));
+            }
+        }
+        return seqs;
+    }
+    
+    // Xử lý /join <phòng>, /leave [phòng], /rooms. Trả về true nếu là lệnh phòng
+    private boolean handleRoomCommand(WebSocketSession session, String text, String sourceRoom) throws IOException {
+        if (text == null) {
+            return false;
+        }
+        String command = text.trim();
+        
+        if (command.startsWith("/join ")) {
+            // "/join <phòng> [seq]": có seq thì replay các tin nhắn sau seq đó
+            String roomName = command.substring(6).trim();
+            long afterSeq = -1;
+            int space = roomName.lastIndexOf(' ');
+            if (space > 0 && isNumber(roomName.substring(space + 1))) {
+                afterSeq = Long.parseLong(roomName.substring(space + 1));
+                roomName = roomName.substring(0, space).trim();
+            }
+            if (roomName.isEmpty()) {
+                return false;
+            }
+            joinRoom(session, roomName, afterSeq, true);
+            return true;
+        }
+        
+        if (command.equals("/leave") || command.startsWith("/leave ")) {
+            String roomName = command.substring(6).trim();
+            if (roomName.isEmpty()) {
+                roomName = resolveRoom(session, sourceRoom);
+            }
+            leaveRoom(session, roomName);
+            return true;
         }
         
-        // Thêm vào phòng mới
-        rooms.computeIfAbsent(roomName, k -> ConcurrentHashMap.newKeySet()).add(session);
-        sessionRooms.put(session, roomName);
+        if (command.equals("/rooms")) {
+            sendRoomList(session, resolveRoom(session, sourceRoom));
+            return true;
+        }
         
-        // Thông báo cho user
-        String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
-            new ChatMessage("System", "Bạn đã tham gia phòng: " + roomName, roomName)
-        )));
+        return false;
+    }
+    
+    // Phòng mà tin nhắn thuộc về: phòng client yêu cầu nếu là thành viên, ngược lại phòng join gần nhất
+    private String resolveRoom(WebSocketSession session, String requestedRoom) {
+        if (roomRegistry.isMember(session, requestedRoom)) {
+            return requestedRoom;
+        }
+        return roomRegistry.defaultRoomOf(session);
+    }
+    
+    private static boolean isNumber(String text) {
+        if (text.isEmpty() || text.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Phương thức để join phòng (giữ nguyên các phòng đang tham gia).
+    // afterSeq >= 0: replay các tin nhắn có seq > afterSeq; -1: replay các tin gần nhất nếu mới join.
+    // announce = false khi resume: không gửi thông báo join cho ai cả
+    private void joinRoom(WebSocketSession session, String roomName, long afterSeq, boolean announce) throws IOException {
+        RoomRegistry.JoinResult result = RoomRegistry.JoinResult.LIMIT_REACHED;
+        
+        // Kiểm tra giới hạn trước để phòng join thất bại không tạo log trong RoomHistory
+        // (tin nhắn của một session được xử lý tuần tự nên kiểm tra trước không bị race)
+        boolean full = !roomRegistry.isMember(session, roomName)
+            && roomRegistry.roomsOf(session).size() >= roomRegistry.getMaxRoomsPerSession();
+        
+        // Join + replay trong khóa của lịch sử phòng: tin nhắn mới broadcast sau đó
+        // luôn tới sau phần replay, không trùng và không mất tin nào ở giữa.
+        // Phần cũ hơn lịch sử trong bộ nhớ được đọc từ chat log TRƯỚC khi vào khóa, vì mọi broadcast
+        // của phòng cũng chờ khóa này; nếu trong lúc đọc lịch sử trong bộ nhớ bị đẩy bớt thì đọc lại
+        int prefetches = 0;
+        while (!full) {
+            RoomLog log = history.log(roomName);
+            long firstInMemory = afterSeq >= 0 ? log.firstSeq() : 0;
+            List<TextMessage> older = afterSeq >= 0 && afterSeq + 1 < firstInMemory
+                ? chatLogStore.read(roomName, afterSeq, firstInMemory - 1, history.getReplayLimit())
+                : List.of();
+            synchronized (log) {
+                if (log.isRetired()) {
+                    continue;
+                }
+                if (afterSeq >= 0 && log.firstSeq() != firstInMemory && ++prefetches < MAX_REPLAY_PREFETCHES) {
+                    continue;
+                }
+                result = roomRegistry.join(session, roomName);
+                if (result != RoomRegistry.JoinResult.LIMIT_REACHED) {
+                    if (announce) {
+                        outboundQueues.send(session, encodeFrame(
+                            new ChatMessage("System", "Bạn đã tham gia phòng: " + roomName, roomName)
+                        ));
+                    }
+                    List<TextMessage> replay = afterSeq >= 0
+                        ? replaySince(roomName, log, afterSeq, older, firstInMemory)
+                        : result == RoomRegistry.JoinResult.JOINED ? log.tail(history.getReplayLimit()) : List.of();
+                    for (TextMessage frame : replay) {
+                        outboundQueues.send(session, OutboundFrame.of(frame));
+                    }
+                }
+            }
+            break;
+        }
+        
+        if (result == RoomRegistry.JoinResult.JOINED) {
+            roomBus.presenceChanged(roomName);
+        }
+        
+        if (result == RoomRegistry.JoinResult.LIMIT_REACHED) {
+            if (!full) {
+                releaseIfVacant(roomName);
+            }
+            outboundQueues.send(session, encodeFrame(new ChatMessage("System",
+                "Bạn chỉ có thể tham gia tối đa " + roomRegistry.getMaxRoomsPerSession() + " phòng. Gõ /leave <tên_phòng> để rời bớt.",
+                resolveRoom(session, null))));
+            return;
+        }
+        
+        if (result == RoomRegistry.JoinResult.ALREADY_MEMBER || !announce) {
+            return;
+        }
         
         // Thông báo cho các user khác trong phòng
+        String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
         ChatMessage joinMessage = new ChatMessage("System", nickname + " đã tham gia phòng", roomName);
-        broadcastToRoom(roomName, joinMessage, session);
+        announceToRoom(roomName, joinMessage);
         
-        System.out.println("Session " + session.getId() + " joined room: " + roomName);
+        eventLog.joinedRoom(session, roomName);
     }
     
-    // Phương thức để rời phòng
+    // Tin nhắn sau afterSeq, gọi trong khóa của log: lấy từ RoomHistory, ghép với phần cũ hơn đã đọc
+    // từ chat log trước khi vào khóa (older: các frame có seq < prefetchedFirstSeq)
+    private List<TextMessage> replaySince(String roomName, RoomLog log, long afterSeq,
+                                          List<TextMessage> older, long prefetchedFirstSeq) {
+        int limit = history.getReplayLimit();
+        List<TextMessage> recent = log.since(afterSeq, limit);
+        long oldestInMemory = log.firstSeq();
+        if (recent.size() >= limit || afterSeq + 1 >= oldestInMemory) {
+            return recent;
+        }
+        int remaining = limit - recent.size();
+        if (oldestInMemory != prefetchedFirstSeq) {
+            // Hiếm: phòng có tin liên tục đẩy lịch sử đi trong mọi lần đọc trước, đành đọc đĩa trong khóa
+            older = chatLogStore.read(roomName, afterSeq, oldestInMemory - 1, remaining);
+        } else if (older.size() > remaining) {
+            older = older.subList(older.size() - remaining, older.size());
+        }
+        if (older.isEmpty()) {
+            return recent;
+        }
+        List<TextMessage> frames = new ArrayList<>(older.size() + recent.size());
+        frames.addAll(older);
+        frames.addAll(recent);
+        return frames;
+    }
+    
+    // Phương thức để rời một phòng
     private void leaveRoom(WebSocketSession session, String roomName) throws IOException {
-        Set<WebSocketSession> roomSessions = rooms.get(roomName);
-        if (roomSessions != null) {
-            roomSessions.remove(session);
-            
-            // Xóa phòng nếu không còn ai
-            if (roomSessions.isEmpty()) {
-                rooms.remove(roomName);
-            } else {
-                // Thông báo cho các user khác trong phòng
-                String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
-                ChatMessage leaveMessage = new ChatMessage("System", nickname + " đã rời phòng", roomName);
-                broadcastToRoom(roomName, leaveMessage, session);
-            }
-        }
-    }
-    
-    // Phương thức broadcast tin nhắn đến tất cả user trong phòng
-    private synchronized void broadcastToRoom(String roomName, ChatMessage message, WebSocketSession sender) throws IOException {
-        Set<WebSocketSession> roomSessions = rooms.get(roomName);
-        if (roomSessions != null) {
-            String jsonMessage = objectMapper.writeValueAsString(message);
-            
-            // Gửi đến tất cả session trong phòng (bao gồm cả người gửi)
-            // Sử dụng copy để tránh concurrent modification
-            Set<WebSocketSession> sessionsCopy = new HashSet<>(roomSessions);
-            for (WebSocketSession session : sessionsCopy) {
-                try {
-                    if (session.isOpen()) {
-                        synchronized (session) {
-                            session.sendMessage(new TextMessage(jsonMessage));
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error sending message to session: " + e.getMessage());
-                    // Remove broken session
-                    roomSessions.remove(session);
-                    sessionRooms.remove(session);
-                    sessionNicknames.remove(session);
+        if (roomName == null || !roomRegistry.leave(session, roomName)) {
+            outboundQueues.send(session, encodeFrame(new ChatMessage("System",
+                "Bạn không ở trong phòng: " + roomName, resolveRoom(session, null))));
+            return;
+        }
+        roomBus.presenceChanged(roomName);
+        releaseIfVacant(roomName);
+        
+        outboundQueues.send(session, encodeFrame(
+            new ChatMessage("System", "Bạn đã rời phòng: " + roomName, roomName)
+        ));
+        announceLeave(session, roomName);
+    }
+    
+    // Gửi danh sách phòng đang tham gia cho session
+    private void sendRoomList(WebSocketSession session, String room) throws IOException {
+        List<String> joined = roomRegistry.roomsOf(session);
+        // Số người mỗi phòng tính trên mọi node, theo presence của RoomBus
+        StringJoiner rooms = new StringJoiner(", ");
+        for (String roomName : joined) {
+            int members = roomRegistry.members(roomName).length + roomBus.remoteMembers(roomName);
+            rooms.add(roomName + " (" + members + " người)");
+        }
+        String text = joined.isEmpty()
+            ? "Bạn chưa tham gia phòng nào. Gõ /join <tên_phòng> để tham gia."
+            : "Các phòng bạn đang tham gia: " + rooms;
+        outboundQueues.send(session, encodeFrame(new ChatMessage("System", text, room)));
+    }
+    
+    // Thông báo cho các user còn lại sau khi session đã rời phòng
+    private void announceLeave(WebSocketSession session, String roomName) throws IOException {
+        String nickname = sessionNicknames.getOrDefault(session, "Anonymous");
+        ChatMessage leaveMessage = new ChatMessage("System", nickname + " đã rời phòng", roomName);
+        announceToRoom(roomName, leaveMessage);
+    }
+    
+    // Phương thức broadcast tin nhắn đến tất cả user trong phòng và lưu vào lịch sử phòng
+    // Không còn synchronized toàn cục: chỉ khóa lịch sử của phòng này trong lúc append + enqueue
+    // (package-private để benchmark fan-out gọi trực tiếp)
+    void broadcastToRoom(String roomName, ChatMessage message, WebSocketSession sender) throws IOException {
+        broadcast(roomName, message, true);
+    }
+    
+    // publish = false cho tin đến từ node khác: chỉ giao cho session local, không gửi vòng lại.
+    // Mỗi node gán seq riêng theo thứ tự nhận, nên seq (và ?since= khi resume) chỉ có nghĩa trên một node
+    // trong một lần chạy; client so epoch trong frame session để biết khi nào phải bỏ seq đã nhớ
+    private void broadcast(String roomName, ChatMessage message, boolean publish) throws IOException {
+        long start = System.nanoTime();
+        
+        int recipients;
+        while (true) {
+            RoomLog log = history.log(roomName);
+            synchronized (log) {
+                if (log.isRetired()) {
+                    // Log vừa bị RoomHistory gỡ ra: lấy log mới, seq vẫn tiếp tục từ log cũ
+                    continue;
+                }
+                // Seq được gán và encode trong khóa để thứ tự seq trùng thứ tự giao.
+                // Encode một lần, cùng một frame được dùng lại cho mọi người nhận và cho replay
+                message.setSeq(log.lastSeq() + 1);
+                OutboundFrame frame = encodeFrame(message);
+                long seq = log.append(frame.text());
+                // Chỉ enqueue cho writer của chat log, không ghi đĩa trên thread này
+                chatLogStore.append(roomName, seq, frame.text());
+                recipients = fanOut(roomName, frame);
+                // Vẫn trong khóa: các node khác nhận tin của phòng theo đúng thứ tự seq ở đây
+                if (publish) {
+                    roomBus.publish(roomName, frame.text().asBytes(), true);
+                }
+            }
+            break;
+        }
+        history.enforceBudget();
+        
+        metrics.broadcast(recipients, System.nanoTime() - start);
+    }
+    
+    // Thông báo hệ thống (join/leave, chặn kiểm duyệt): gửi cho cả phòng nhưng không lưu lịch sử
+    private void announceToRoom(String roomName, ChatMessage message) throws IOException {
+        boolean local = roomRegistry.members(roomName).length > 0;
+        if (!local && roomBus.remoteMembers(roomName) == 0) {
+            return;
+        }
+        OutboundFrame frame = encodeFrame(message);
+        roomBus.publish(roomName, frame.text().asBytes(), false);
+        if (local) {
+            fanOut(roomName, frame);
+        }
+    }
+    
+    // Tin từ node khác (thread của RoomBus): tin chat được gán seq local và lưu lịch sử như tin
+    // của node này, thông báo hệ thống thì chỉ giao cho thành viên local
+    private void deliverRemote(String roomName, byte[] payload, boolean persist) {
+        try {
+            if (!persist) {
+                fanOut(roomName, OutboundFrame.of(new TextMessage(payload)));
+                return;
+            }
+            ChatMessage message = codec.decode(new String(payload, StandardCharsets.UTF_8));
+            if (message != null) {
+                broadcast(roomName, message, false);
+            }
+        } catch (IOException e) {
+            eventLog.noticeFailed(roomName, e);
+        }
+    }
+    
+    // Gửi đến tất cả session trong phòng (bao gồm cả người gửi), trả về số người nhận
+    // Duyệt trên snapshot bất biến của RoomRegistry, không cần copy hay lock
+    private int fanOut(String roomName, OutboundFrame frame) {
+        WebSocketSession[] members = roomRegistry.members(roomName);
+        for (WebSocketSession session : members) {
+            if (!session.isOpen() || !outboundQueues.send(session, frame)) {
+                // Session đã đóng hoặc bị ngắt vì gửi quá chậm
+                if (roomRegistry.remove(session, roomName)) {
+                    roomBus.presenceChanged(roomName);
+                    releaseIfVacant(roomName);
                 }
             }
         }
+        return members.length;
+    }
+    
+    // Phòng không còn thành viên trên node này: bỏ log chưa có tin nào của phòng khỏi RoomHistory
+    private void releaseIfVacant(String roomName) {
+        if (roomRegistry.members(roomName).length == 0) {
+            history.release(roomName);
+        }
+    }
+    
+    // Serialize ChatMessage thành payload UTF-8 bất biến, có thể chia sẻ giữa các session
+    private OutboundFrame encodeFrame(ChatMessage message) throws IOException {
+        return OutboundFrame.of(new TextMessage(codec.encode(message)), message);
     }
 }
\ No newline at end of file
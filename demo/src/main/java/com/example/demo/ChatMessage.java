@@ -4,6 +4,8 @@ public class ChatMessage {
     private String nickname;
     private String message;
     private String room;
+    // Số thứ tự trong phòng, do server gán khi broadcast (null = tin nhắn không lưu lịch sử)
+    private Long seq;
 
     // Constructor mặc định
     public ChatMessage() {
@@ -43,6 +45,15 @@ public class ChatMessage {
         this.room = room;
     }
 
+    // Getter và Setter cho seq
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
     // Phương thức toString để debug
     @Override
     public String toString() {
@@ -50,6 +61,7 @@ public class ChatMessage {
                 "nickname='" + nickname + '\'' +
                 ", message='" + message + '\'' +
                 ", room='" + room + '\'' +
+                ", seq=" + seq +
                 '}';
     }
 }
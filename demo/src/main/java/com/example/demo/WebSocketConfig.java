@@ -1,16 +1,41 @@
 package com.example.demo;
 
+import com.example.demo.session.IdentityHandshakeInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import java.util.Arrays;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    private final ChatHandler chatHandler;
+    private final IdentityHandshakeInterceptor identityInterceptor;
+    private final String[] allowedOriginPatterns;
+
+    public WebSocketConfig(ChatHandler chatHandler, IdentityHandshakeInterceptor identityInterceptor,
+                           @Value("${chat.websocket.allowed-origin-patterns:}") String allowedOriginPatterns) {
+        this.chatHandler = chatHandler;
+        this.identityInterceptor = identityInterceptor;
+        this.allowedOriginPatterns = Arrays.stream(allowedOriginPatterns.split(","))
+            .map(String::trim)
+            .filter(pattern -> !pattern.isEmpty())
+            .toArray(String[]::new);
+    }
+
+    // Nén: Tomcat negotiate permessage-deflate (RFC 7692) ngay trong handshake khi client gửi
+    // Sec-WebSocket-Extensions, không cần cấu hình thêm; xem metric chat.sessions.opened{compression}.
+    // Tùy chọn theo client qua query string: ?encoding=binary, ?batch=1, ?resume=<token>.
+    // Danh tính (tài khoản đăng nhập + role) được gắn vào session ngay trong handshake.
+    // Handshake mang cookie đăng nhập nên không mở cho mọi origin (trang lạ sẽ chat dưới tên người dùng):
+    // danh sách rỗng = chỉ cùng origin với app, thêm origin khác qua chat.websocket.allowed-origin-patterns
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new ChatHandler(), "/chat").setAllowedOrigins("*");
+        registry.addHandler(chatHandler, "/chat")
+            .addInterceptors(identityInterceptor)
+            .setAllowedOriginPatterns(allowedOriginPatterns);
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
 import org.springframework.web.socket.WebSocketSession;
+import java.util.Set;
 
 public abstract class Bot {
     protected String botName;
@@ -19,6 +20,30 @@ public abstract class Bot {
     // Phương thức check xem bot có xử lý message này không
     public abstract boolean canHandle(ChatMessage message);
 
+    // Các lệnh (bắt đầu bằng /) bot đăng ký với BotManager để được route trực tiếp
+    public Set<String> getCommands() { return Set.of(); }
+
+    // Bot có nhận tin nhắn thường (không phải lệnh) không
+    public boolean acceptsFreeText() { return false; }
+
+    // Bot nhận mọi tin nhắn, cả lệnh lẫn tin thường (ví dụ chống spam)
+    public boolean observesAllMessages() { return false; }
+
+    // Số thread tối đa chạy bot song song; mặc định 1 vì state của bot không thread-safe
+    public int getMaxConcurrency() { return 1; }
+
+    // Bản dùng tin nhắn đã parse: lệnh đã đăng ký thì nhận luôn, còn lại hỏi canHandle cũ
+    public boolean canHandle(ParsedMessage parsed) {
+        if (parsed.isCommand() && getCommands().contains(parsed.getCommand())) {
+            return true;
+        }
+        return canHandle(parsed.getMessage());
+    }
+
+    public ChatMessage processMessage(ParsedMessage parsed, WebSocketSession session) {
+        return processMessage(parsed.getMessage(), session);
+    }
+
     // Getters
     public String getBotName() { return botName; }
     public String getDescription() { return description; }
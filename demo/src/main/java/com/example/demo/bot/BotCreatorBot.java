@@ -1,10 +1,14 @@
 package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
+import com.example.demo.session.ChatIdentity;
 import org.springframework.web.socket.WebSocketSession;
+import java.util.Set;
 
 public class BotCreatorBot extends Bot {
     
+    private static final Set<String> COMMANDS = Set.of("/create-bot", "/delete-bot", "/list-bots", "/toggle-bot");
+    
     private BotManager botManager;
     
     public BotCreatorBot(BotManager botManager) {
@@ -19,13 +23,16 @@ public class BotCreatorBot extends Bot {
                msg.startsWith("/list-bots") || msg.startsWith("/toggle-bot");
     }
 
+    @Override
+    public Set<String> getCommands() {
+        return COMMANDS;
+    }
+
     @Override
     public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
         String command = message.getMessage().trim();
-        String userRole = getUserRole(message.getNickname());
-        
-        // Chỉ admin và teacher mới có thể quản lý bot
-        if (!hasPermission(userRole)) {
+        // Chỉ admin và teacher mới có thể quản lý bot (role từ tài khoản đăng nhập của session)
+        if (!ChatIdentity.of(session).isModerator()) {
             return createBotResponse(
                 "❌ Bạn không có quyền quản lý bot. Chỉ **Admin** và **Giáo viên** mới có thể tạo/quản lý bot.", 
                 message.getRoom()
@@ -126,7 +133,7 @@ public class BotCreatorBot extends Bot {
             .forEach(entry -> {
                 Bot bot = entry.getValue();
                 String status = bot.isActive() ? "🟢 Hoạt động" : "🔴 Tắt";
-                response.append(String.format("• %s - %s (%s)\n", bot.getBotName(), bot.getDescription(), status));
+                response.append(String.format("• %s - %s (%s)%s\n", bot.getBotName(), bot.getDescription(), status, laneStats(bot)));
             });
         
         response.append("\n🎨 **Bot tùy chỉnh:**\n");
@@ -136,7 +143,7 @@ public class BotCreatorBot extends Bot {
             if (bot instanceof BotManager.CustomBot) {
                 hasCustomBots = true;
                 String status = bot.isActive() ? "🟢 Hoạt động" : "🔴 Tắt";
-                response.append(String.format("• %s - %s (%s)\n", bot.getBotName(), bot.getDescription(), status));
+                response.append(String.format("• %s - %s (%s)%s\n", bot.getBotName(), bot.getDescription(), status, laneStats(bot)));
             }
         }
         
@@ -176,14 +183,13 @@ public class BotCreatorBot extends Bot {
         }
     }
     
-    private String getUserRole(String username) {
-        if (username.equals("admin")) return "ADMIN";
-        if (username.equals("teacher01")) return "TEACHER";
-        if (username.startsWith("sv")) return "STUDENT";
-        return "USER";
-    }
-    
-    private boolean hasPermission(String role) {
-        return "ADMIN".equals(role) || "TEACHER".equals(role);
+    // Độ sâu hàng đợi, số timeout và lỗi của lane chạy bot
+    private String laneStats(Bot bot) {
+        BotLane lane = botManager.getBotLane(bot);
+        if (lane == null) {
+            return "";
+        }
+        return String.format(" [hàng đợi: %d, timeout: %d, lỗi: %d, bị từ chối: %d]",
+            lane.getQueueDepth(), lane.getTimeouts(), lane.getErrors(), lane.getRejected());
     }
 }
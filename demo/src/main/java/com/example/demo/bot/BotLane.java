@@ -0,0 +1,98 @@
+package com.example.demo.bot;
+
+import com.example.demo.ChatMessage;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.BotMeters;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Bulkhead của một bot: executor riêng với hàng đợi giới hạn và deadline cho mỗi tin nhắn.
+// Bot chậm hoặc lỗi chỉ làm đầy hàng đợi của chính nó, không ảnh hưởng bot khác hay luồng WebSocket.
+public class BotLane {
+
+    private final String botName;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final BotMeters meters;
+    private final ChatEventLog eventLog;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public BotLane(String botName, int threads, int queueCapacity, long timeoutMillis,
+                   BotMeters meters, ChatEventLog eventLog) {
+        this.botName = botName;
+        this.timeoutMillis = timeoutMillis;
+        this.meters = meters;
+        this.eventLog = eventLog;
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "bot-" + botName);
+                t.setDaemon(true);
+                return t;
+            });
+        // Bot ít dùng thì không giữ thread
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Chạy bot bất đồng bộ; response chỉ được giao nếu xong trước deadline (tính từ lúc submit)
+    public void submit(Supplier<ChatMessage> work, Consumer<ChatMessage> onResponse) {
+        CompletableFuture<ChatMessage> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(work.get());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            meters.rejected();
+            return;
+        }
+        submitted.incrementAndGet();
+
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error instanceof TimeoutException) {
+                timeouts.incrementAndGet();
+                meters.timedOut();
+                task.cancel(true);
+                eventLog.botTimedOut(botName, timeoutMillis);
+            } else if (error != null) {
+                errors.incrementAndGet();
+                eventLog.botFailed(botName, error);
+            } else {
+                completed.incrementAndGet();
+                if (response != null) {
+                    onResponse.accept(response);
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public String getBotName() { return botName; }
+    public int getQueueDepth() { return executor.getQueue().size(); }
+    public int getActiveCount() { return executor.getActiveCount(); }
+    public long getSubmitted() { return submitted.get(); }
+    public long getCompleted() { return completed.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+    public long getRejected() { return rejected.get(); }
+    public long getErrors() { return errors.get(); }
+}
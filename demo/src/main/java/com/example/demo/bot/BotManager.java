@@ -1,20 +1,65 @@
 package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.BotMeters;
+import com.example.demo.metrics.ChatMetrics;
 import com.example.demo.moderation.ModerationService;
+import com.example.demo.moderation.ModerationStatus;
+import com.example.demo.moderation.ReportQueue;
+import com.example.demo.ratelimit.RateLimitPolicy;
+import com.example.demo.session.ChatIdentityResolver;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.WebSocketSession;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class BotManager {
     
     private Map<String, Bot> bots = new ConcurrentHashMap<>();
-    private ModerationService moderationService = new ModerationService();
+    // Bean dùng chung (nhân bản qua RoomBus), không tạo riêng cho từng BotManager
+    private final ModerationService moderationService;
+    private final ReportQueue reportQueue;
+    private final ChatIdentityResolver identities;
     private ModerationBot moderationBot;
     
-    public BotManager() {
+    // Bảng route dựng lại mỗi khi thêm/xóa bot; đọc không cần lock
+    private volatile RoutingTable routes = RoutingTable.EMPTY;
+    
+    // Mỗi bot chạy trên lane riêng (bulkhead) với hàng đợi giới hạn và deadline
+    private final Map<Bot, BotLane> lanes = new ConcurrentHashMap<>();
+    private final long botTimeoutMillis;
+    private final int botQueueCapacity;
+    
+    // Giới hạn tốc độ gửi cho SpamDetectionBot
+    private final RateLimitPolicy spamPolicy;
+    
+    private final ChatMetrics metrics;
+    private final ChatEventLog eventLog;
+    
+    public BotManager(@Value("${chat.bots.timeout-ms:2000}") long botTimeoutMillis,
+                      @Value("${chat.bots.queue-capacity:256}") int botQueueCapacity,
+                      @Value("${chat.spam.limit:5/60s}") String spamLimit,
+                      @Value("${chat.spam.room-limits:}") String spamRoomLimits,
+                      @Value("${chat.spam.role-limits:}") String spamRoleLimits,
+                      ChatMetrics metrics,
+                      ChatEventLog eventLog,
+                      ModerationService moderationService,
+                      ReportQueue reportQueue,
+                      ChatIdentityResolver identities) {
+        this.botTimeoutMillis = botTimeoutMillis;
+        this.botQueueCapacity = botQueueCapacity;
+        this.spamPolicy = RateLimitPolicy.parse(spamLimit, spamRoomLimits, spamRoleLimits);
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.moderationService = moderationService;
+        this.reportQueue = reportQueue;
+        this.identities = identities;
         initializeBots();
     }
     
@@ -22,66 +67,189 @@ public class BotManager {
         // Khởi tạo các bot cơ bản
         bots.put("helpbot", new HelpBot());
         bots.put("quizbot", new QuizBot());
-        bots.put("spamdetector", new SpamDetectionBot());
+        bots.put("spamdetector", new SpamDetectionBot(spamPolicy));
         
-        // Moderation bot cần ModerationService
-        moderationBot = new ModerationBot(moderationService);
+        // Moderation bot cần ModerationService, hàng đợi báo cáo và role của tài khoản bị xử lý
+        moderationBot = new ModerationBot(moderationService, reportQueue, identities);
         bots.put("moderationbot", moderationBot);
         
         // Bot creator bot
         bots.put("botcreator", new BotCreatorBot(this));
+        
+        rebuildRoutes();
+    }
+    
+    // Dựng lại bảng route từ danh sách bot hiện tại
+    private synchronized void rebuildRoutes() {
+        routes = RoutingTable.build(bots.values());
+    }
+    
+    // Cổng kiểm duyệt: trả về thông báo chặn nếu user bị mute/ban, null nếu được gửi
+    public ChatMessage checkModeration(ChatMessage message) {
+        String username = message.getNickname();
+        if (username.startsWith("🤖")) { // Không check bot messages
+            return null;
+        }
+        // Một lần tra map, không đọc đồng hồ: mute hết hạn đã được timer wheel chuyển về ACTIVE
+        ModerationStatus status = moderationService.statusOf(username);
+        if (status == ModerationStatus.ACTIVE) {
+            return null;
+        }
+        
+        if (status == ModerationStatus.BANNED) {
+            metrics.moderationRejected(true);
+            return new ChatMessage("🤖 System", 
+                String.format("❌ @%s đã bị cấm chat vĩnh viễn và không thể gửi tin nhắn.", username), 
+                message.getRoom());
+        } else {
+            metrics.moderationRejected(false);
+            String timeLeft = moderationService.getRemainingMuteTime(username);
+            return new ChatMessage("🤖 System", 
+                String.format("🔇 @%s đang bị tắt tiếng. Thời gian còn lại: %s", username, timeLeft), 
+                message.getRoom());
+        }
     }
     
-    // Xử lý tin nhắn qua tất cả bot
+    // Xử lý tin nhắn qua tất cả bot (đồng bộ, trên thread gọi)
     public List<ChatMessage> processMessage(ChatMessage message, WebSocketSession session) {
         List<ChatMessage> responses = new ArrayList<>();
         
         // Kiểm tra user có bị mute/ban không
-        String username = message.getNickname();
-        if (!username.startsWith("🤖")) { // Không check bot messages
-            if (!moderationBot.canUserSendMessage(username)) {
-                String status = moderationBot.getUserModerationStatus(username);
-                if ("BANNED".equals(status)) {
-                    responses.add(new ChatMessage("🤖 System", 
-                        String.format("❌ @%s đã bị cấm chat vĩnh viễn và không thể gửi tin nhắn.", username), 
-                        message.getRoom()));
-                    return responses;
-                } else if ("MUTED".equals(status)) {
-                    String timeLeft = moderationService.getRemainingMuteTime(username);
-                    responses.add(new ChatMessage("🤖 System", 
-                        String.format("🔇 @%s đang bị tắt tiếng. Thời gian còn lại: %s", username, timeLeft), 
-                        message.getRoom()));
-                    return responses;
+        ChatMessage rejection = checkModeration(message);
+        if (rejection != null) {
+            responses.add(rejection);
+            return responses;
+        }
+        
+        route(ParsedMessage.parse(message), session, (bot, work) -> {
+            try {
+                ChatMessage response = work.get();
+                if (response != null) {
+                    responses.add(response);
                 }
+            } catch (Exception e) {
+                eventLog.botFailed(bot.getBotName(), e);
             }
-        }
+        });
         
-        // Xử lý tin nhắn qua các bot
-        for (Bot bot : bots.values()) {
-            if (bot.isActive() && bot.canHandle(message)) {
-                try {
-                    ChatMessage response = bot.processMessage(message, session);
-                    if (response != null) {
-                        responses.add(response);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error processing message with bot " + bot.getBotName() + ": " + e.getMessage());
+        return responses;
+    }
+    
+    // Chạy các bot bất đồng bộ trên lane riêng; response được giao qua onResponse khi bot xong.
+    // Không kiểm tra mute/ban, người gọi phải qua checkModeration trước.
+    public void dispatchAsync(ChatMessage message, WebSocketSession session, Consumer<ChatMessage> onResponse) {
+        route(ParsedMessage.parse(message), session, (bot, work) -> laneFor(bot).submit(work, onResponse));
+    }
+    
+    // Cách chạy một bot đã được route: đồng bộ hoặc qua lane
+    private interface BotInvoker {
+        void invoke(Bot bot, Supplier<ChatMessage> work);
+    }
+    
+    // Chỉ route tới các bot liên quan
+    private void route(ParsedMessage parsed, WebSocketSession session, BotInvoker invoker) {
+        RoutingTable table = routes;
+        
+        if (parsed.isCommand()) {
+            // Lệnh: tra bảng băm theo token đầu tiên và mọi tiền tố của nó đã được đăng ký
+            // (ví dụ "/helpme" tới bot của "/help"), rồi hỏi thêm các bot nhận free text
+            // (ví dụ "/quiz help" cũng tới HelpBot) như khi còn hỏi canHandle của mọi bot.
+            // Bot vẫn tự quyết qua canHandle; mỗi bot được hỏi tối đa một lần
+            List<Bot> routed = table.commandBots(parsed.getCommand());
+            for (Bot bot : table.freeTextBots) {
+                if (!routed.contains(bot)) {
+                    routed.add(bot);
                 }
             }
+            for (Bot bot : routed) {
+                dispatch(bot, parsed, session, invoker);
+            }
+        } else {
+            // Tin nhắn thường: chỉ các bot đăng ký nhận free text
+            for (Bot bot : table.freeTextBots) {
+                dispatch(bot, parsed, session, invoker);
+            }
+            dispatchCustomBots(table, parsed, invoker);
         }
         
-        return responses;
+        // Các bot theo dõi mọi tin nhắn (ví dụ chống spam)
+        for (Bot bot : table.observerBots) {
+            dispatch(bot, parsed, session, invoker);
+        }
+    }
+    
+    // Một lần duyệt automaton tìm mọi custom bot có trigger (hoặc tên) xuất hiện trong tin nhắn
+    private void dispatchCustomBots(RoutingTable table, ParsedMessage parsed, BotInvoker invoker) {
+        if (table.customTriggers.isEmpty()) {
+            return;
+        }
+        
+        // Bot -> trigger khớp đầu tiên (null nếu chỉ nhắc tên bot)
+        Map<CustomBot, String> matched = new LinkedHashMap<>();
+        table.customTriggers.match(parsed.getLowerText(), (start, keyword, trigger) -> {
+            if (trigger.nameOnly) {
+                matched.putIfAbsent(trigger.bot, null);
+            } else if (matched.get(trigger.bot) == null) {
+                matched.put(trigger.bot, keyword);
+            }
+        });
+        
+        String room = parsed.getMessage().getRoom();
+        for (Map.Entry<CustomBot, String> entry : matched.entrySet()) {
+            CustomBot bot = entry.getKey();
+            String trigger = entry.getValue();
+            if (bot.isActive()) {
+                BotMeters meters = metrics.forBot(bot.getBotName());
+                invoker.invoke(bot, () -> meters.process(() -> bot.respond(trigger, room)));
+            }
+        }
+    }
+    
+    private void dispatch(Bot bot, ParsedMessage parsed, WebSocketSession session, BotInvoker invoker) {
+        if (!bot.isActive()) {
+            return;
+        }
+        BotMeters meters = metrics.forBot(bot.getBotName());
+        long start = System.nanoTime();
+        boolean handles = bot.canHandle(parsed);
+        meters.recordCanHandle(System.nanoTime() - start);
+        if (handles) {
+            invoker.invoke(bot, () -> meters.process(() -> bot.processMessage(parsed, session)));
+        }
+    }
+    
+    private BotLane laneFor(Bot bot) {
+        return lanes.computeIfAbsent(bot, b ->
+            new BotLane(b.getBotName(), b.getMaxConcurrency(), botQueueCapacity, botTimeoutMillis,
+                metrics.forBot(b.getBotName()), eventLog));
+    }
+    
+    // Thống kê hàng đợi, timeout, lỗi của từng bot
+    public Map<String, BotLane> getBotLanes() {
+        Map<String, BotLane> result = new TreeMap<>();
+        lanes.forEach((bot, lane) -> result.put(bot.getBotName(), lane));
+        return result;
+    }
+    
+    public BotLane getBotLane(Bot bot) {
+        return lanes.get(bot);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(BotLane::shutdown);
     }
     
     // Tạo bot mới (cho admin/teacher)
     public boolean createCustomBot(String botName, String description, String creator) {
-        if (bots.containsKey(botName.toLowerCase())) {
+        // Tạo custom bot đơn giản
+        CustomBot customBot = new CustomBot(botName, description, creator);
+        if (bots.putIfAbsent(botName.toLowerCase(), customBot) != null) {
             return false; // Bot đã tồn tại
         }
-        
-        // Tạo custom bot đơn giản
-        Bot customBot = new CustomBot(botName, description, creator);
-        bots.put(botName.toLowerCase(), customBot);
+        // Trigger thay đổi thì build lại automaton
+        customBot.setOnResponsesChanged(this::rebuildRoutes);
+        rebuildRoutes();
         return true;
     }
     
@@ -91,6 +259,13 @@ public class BotManager {
         Bot bot = bots.get(key);
         if (bot instanceof CustomBot) {
             bots.remove(key);
+            ((CustomBot) bot).setOnResponsesChanged(null);
+            rebuildRoutes();
+            BotLane lane = lanes.remove(bot);
+            if (lane != null) {
+                lane.shutdown();
+            }
+            metrics.removeBot(bot.getBotName());
             return true;
         }
         return false; // Không thể xóa bot hệ thống
@@ -124,11 +299,14 @@ public class BotManager {
     // Custom Bot class cho bot do user tạo
     public static class CustomBot extends Bot {
         private String creator;
-        private Map<String, String> responses = new HashMap<>();
+        private Map<String, String> responses = new ConcurrentHashMap<>();
+        private final Set<String> commands;
+        private volatile Runnable onResponsesChanged;
         
         public CustomBot(String botName, String description, String creator) {
             super(botName, description);
             this.creator = creator;
+            this.commands = Set.of("/" + botName.toLowerCase());
             
             // Thêm một số response mặc định
             responses.put("hello", "Xin chào! Tôi là " + botName + " được tạo bởi @" + creator);
@@ -144,31 +322,181 @@ public class BotManager {
                    responses.keySet().stream().anyMatch(msg::contains);
         }
         
+        @Override
+        public Set<String> getCommands() {
+            return commands;
+        }
+        
+        @Override
+        public boolean acceptsFreeText() {
+            return true;
+        }
+        
+        @Override
+        public boolean canHandle(ParsedMessage parsed) {
+            if (parsed.isCommand()) {
+                return commands.contains(parsed.getCommand());
+            }
+            String msg = parsed.getLowerText();
+            return msg.contains(botName.toLowerCase()) ||
+                   responses.keySet().stream().anyMatch(msg::contains);
+        }
+        
         @Override
         public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
-            String msg = message.getMessage().toLowerCase();
+            return processMessage(ParsedMessage.parse(message), session);
+        }
+        
+        @Override
+        public ChatMessage processMessage(ParsedMessage parsed, WebSocketSession session) {
+            ChatMessage message = parsed.getMessage();
+            String msg = parsed.getLowerText();
             
             // Tìm response phù hợp
-            for (Map.Entry<String, String> entry : responses.entrySet()) {
-                if (msg.contains(entry.getKey())) {
-                    return createBotResponse(entry.getValue(), message.getRoom());
+            for (String trigger : responses.keySet()) {
+                if (msg.contains(trigger)) {
+                    return respond(trigger, message.getRoom());
                 }
             }
             
-            // Response mặc định
-            return createBotResponse(
-                "Xin chào! Tôi là " + botName + ". Gõ 'help' để biết thêm thông tin!", 
-                message.getRoom()
-            );
+            return respond(null, message.getRoom());
+        }
+        
+        // Trả lời cho trigger đã khớp; null = response mặc định
+        ChatMessage respond(String trigger, String room) {
+            String response = trigger != null ? responses.get(trigger) : null;
+            if (response == null) {
+                // Response mặc định
+                response = "Xin chào! Tôi là " + botName + ". Gõ 'help' để biết thêm thông tin!";
+            }
+            return createBotResponse(response, room);
         }
         
         // Thêm response mới
         public void addResponse(String trigger, String response) {
             responses.put(trigger.toLowerCase(), response);
+            notifyResponsesChanged();
+        }
+        
+        // Xóa response
+        public boolean removeResponse(String trigger) {
+            boolean removed = responses.remove(trigger.toLowerCase()) != null;
+            if (removed) {
+                notifyResponsesChanged();
+            }
+            return removed;
+        }
+        
+        void setOnResponsesChanged(Runnable listener) {
+            this.onResponsesChanged = listener;
+        }
+        
+        private void notifyResponsesChanged() {
+            Runnable listener = onResponsesChanged;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+        
+        Set<String> getTriggers() {
+            return responses.keySet();
         }
         
         // Getters
         public String getCreator() { return creator; }
         public Map<String, String> getResponses() { return new HashMap<>(responses); }
     }
-}
+    
+    // Bảng route bất biến: lệnh -> bot, bot nhận free text, bot theo dõi mọi tin nhắn
+    private static final class RoutingTable {
+        static final RoutingTable EMPTY = new RoutingTable(Map.of(), new Bot[0], new Bot[0], KeywordMatcher.empty());
+        
+        // Key là token đầu của lệnh (ví dụ "/nội" cho "/nội quy"), bot tự kiểm tra phần còn lại
+        final Map<String, Bot[]> commandRoutes;
+        // Các độ dài khác nhau của key, tăng dần: chỉ tra những tiền tố có thể là một key
+        private final int[] commandLengths;
+        final Bot[] freeTextBots;
+        final Bot[] observerBots;
+        // Tất cả trigger của custom bot gộp trong một automaton
+        final KeywordMatcher<CustomTrigger> customTriggers;
+        
+        RoutingTable(Map<String, Bot[]> commandRoutes, Bot[] freeTextBots, Bot[] observerBots,
+                     KeywordMatcher<CustomTrigger> customTriggers) {
+            this.commandRoutes = commandRoutes;
+            this.commandLengths = commandRoutes.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+            this.freeTextBots = freeTextBots;
+            this.observerBots = observerBots;
+            this.customTriggers = customTriggers;
+        }
+        
+        // Các bot đăng ký token là tiền tố của command, không trùng lặp
+        List<Bot> commandBots(String command) {
+            List<Bot> result = new ArrayList<>(4);
+            for (int length : commandLengths) {
+                if (length > command.length()) {
+                    break;
+                }
+                Bot[] bots = commandRoutes.get(length == command.length() ? command : command.substring(0, length));
+                if (bots == null) {
+                    continue;
+                }
+                for (Bot bot : bots) {
+                    if (!result.contains(bot)) {
+                        result.add(bot);
+                    }
+                }
+            }
+            return result;
+        }
+        
+        static RoutingTable build(Collection<Bot> bots) {
+            Map<String, List<Bot>> commands = new HashMap<>();
+            List<Bot> freeText = new ArrayList<>();
+            List<Bot> observers = new ArrayList<>();
+            Map<String, List<CustomTrigger>> triggers = new HashMap<>();
+            
+            for (Bot bot : bots) {
+                if (bot.observesAllMessages()) {
+                    // Đã nhận mọi tin nhắn, không cần route thêm để tránh gọi hai lần
+                    observers.add(bot);
+                    continue;
+                }
+                for (String command : bot.getCommands()) {
+                    String token = command.split("\\s+", 2)[0];
+                    List<Bot> routed = commands.computeIfAbsent(token, k -> new ArrayList<>());
+                    if (!routed.contains(bot)) {
+                        routed.add(bot);
+                    }
+                }
+                if (bot instanceof CustomBot customBot) {
+                    // Custom bot được tìm qua automaton thay vì duyệt từng bot
+                    triggers.computeIfAbsent(customBot.getBotName().toLowerCase(), k -> new ArrayList<>())
+                        .add(new CustomTrigger(customBot, true));
+                    for (String trigger : customBot.getTriggers()) {
+                        triggers.computeIfAbsent(trigger, k -> new ArrayList<>())
+                            .add(new CustomTrigger(customBot, false));
+                    }
+                } else if (bot.acceptsFreeText()) {
+                    freeText.add(bot);
+                }
+            }
+            
+            Map<String, Bot[]> commandRoutes = new HashMap<>();
+            commands.forEach((token, list) -> commandRoutes.put(token, list.toArray(new Bot[0])));
+            return new RoutingTable(Map.copyOf(commandRoutes),
+                freeText.toArray(new Bot[0]), observers.toArray(new Bot[0]),
+                KeywordMatcher.build(triggers));
+        }
+    }
+    
+    // Một từ khóa trong automaton: trigger của bot, hoặc chính tên bot
+    private static final class CustomTrigger {
+        final CustomBot bot;
+        final boolean nameOnly;
+        
+        CustomTrigger(CustomBot bot, boolean nameOnly) {
+            this.bot = bot;
+            this.nameOnly = nameOnly;
+        }
+    }
+}
\ No newline at end of file
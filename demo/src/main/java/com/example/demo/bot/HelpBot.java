@@ -2,9 +2,12 @@ package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
 import org.springframework.web.socket.WebSocketSession;
+import java.util.Set;
 
 public class HelpBot extends Bot {
     
+    private static final Set<String> COMMANDS = Set.of("/help", "/nội quy", "/hướng dẫn");
+    
     public HelpBot() {
         super("HelpBot", "Bot hỗ trợ thông tin và nội quy");
     }
@@ -16,9 +19,32 @@ public class HelpBot extends Bot {
                msg.startsWith("/hướng dẫn") || msg.contains("help");
     }
 
+    @Override
+    public Set<String> getCommands() {
+        return COMMANDS;
+    }
+
+    @Override
+    public boolean acceptsFreeText() {
+        return true;
+    }
+
+    @Override
+    public boolean canHandle(ParsedMessage parsed) {
+        String msg = parsed.getLowerText();
+        return msg.startsWith("/help") || msg.startsWith("/nội quy") || 
+               msg.startsWith("/hướng dẫn") || msg.contains("help");
+    }
+
     @Override
     public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
-        String command = message.getMessage().toLowerCase().trim();
+        return processMessage(ParsedMessage.parse(message), session);
+    }
+
+    @Override
+    public ChatMessage processMessage(ParsedMessage parsed, WebSocketSession session) {
+        ChatMessage message = parsed.getMessage();
+        String command = parsed.getLowerText();
         String response = "";
 
         if (command.startsWith("/help")) {
@@ -27,7 +53,7 @@ public class HelpBot extends Bot {
             response = getRulesMessage();
         } else if (command.startsWith("/hướng dẫn")) {
             response = getGuideMessage();
-        } else if (message.getMessage().toLowerCase().contains("help")) {
+        } else if (command.contains("help")) {
             response = "Bạn cần hỗ trợ? Gõ /help để xem danh sách lệnh! 😊";
         }
 
@@ -41,7 +67,9 @@ public class HelpBot extends Bot {
         🔹 `/help` - Hiển thị danh sách lệnh
         🔹 `/nội quy` - Xem nội quy phòng chat
         🔹 `/hướng dẫn` - Hướng dẫn sử dụng
-        🔹 `/join <tên_phòng>` - Tham gia phòng mới
+        🔹 `/join <tên_phòng>` - Tham gia thêm phòng (giữ các phòng cũ), xem lại tin nhắn gần đây
+        🔹 `/leave [tên_phòng]` - Rời phòng
+        🔹 `/rooms` - Xem các phòng đang tham gia
         
         🎮 **LỆNH GIẢI TRÍ:**
         🔹 `/quiz` - Chơi trò quiz
@@ -54,6 +82,8 @@ public class HelpBot extends Bot {
         🔹 `/ban @user [lý do]` - Cấm user vĩnh viễn
         🔹 `/unban @user` - Bỏ cấm user
         🔹 `/check @user` - Kiểm tra trạng thái user
+        🔹 `/reports [@user] [sau_id]` - Xem hàng đợi báo cáo
+        🔹 `/resolve <id>` - Đánh dấu báo cáo đã xử lý
         
         🤖 **QUẢN LÝ BOT:**
         🔹 `/create-bot <tên> <mô tả>` - Tạo bot mới
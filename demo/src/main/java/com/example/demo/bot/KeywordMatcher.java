@@ -0,0 +1,156 @@
+package com.example.demo.bot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Automaton Aho-Corasick: tìm tất cả từ khóa trong một lần duyệt văn bản,
+// chi phí không phụ thuộc vào số lượng từ khóa. Bất biến sau khi build.
+final class KeywordMatcher<T> {
+
+    interface MatchHandler<T> {
+        void onMatch(int start, String keyword, T value);
+    }
+
+    private static final KeywordMatcher<?> EMPTY = build(Map.of());
+
+    // Cạnh của mỗi state: ký tự đã sắp xếp và state đích tương ứng
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    // Các từ khóa kết thúc tại mỗi state (đã gộp theo failure link)
+    private final int[][] outputs;
+    private final String[] keywords;
+    private final Object[][] values;
+
+    private KeywordMatcher(char[][] edgeChars, int[][] edgeTargets, int[] fail, int[][] outputs,
+                           String[] keywords, Object[][] values) {
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.outputs = outputs;
+        this.keywords = keywords;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> KeywordMatcher<T> empty() {
+        return (KeywordMatcher<T>) EMPTY;
+    }
+
+    static <T> KeywordMatcher<T> build(Map<String, List<T>> keywordValues) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        children.add(new TreeMap<>());
+        out.add(new ArrayList<>());
+
+        String[] keywords = new String[keywordValues.size()];
+        Object[][] values = new Object[keywordValues.size()][];
+        int id = 0;
+        for (Map.Entry<String, List<T>> entry : keywordValues.entrySet()) {
+            String keyword = entry.getKey();
+            if (keyword.isEmpty() || entry.getValue().isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<>());
+                    out.add(new ArrayList<>());
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            keywords[id] = keyword;
+            values[id] = entry.getValue().toArray();
+            out.get(state).add(id);
+            id++;
+        }
+
+        // BFS để tính failure link; state nông hơn luôn xong trước nên gộp output an toàn
+        int[] fail = new int[children.size()];
+        Deque<Integer> queue = new ArrayDeque<>(children.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : children.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+                int f = fail[state];
+                while (f != 0 && !children.get(f).containsKey(c)) {
+                    f = fail[f];
+                }
+                Integer target = state == 0 ? null : children.get(f).get(c);
+                fail[child] = target != null ? target : 0;
+                out.get(child).addAll(out.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        char[][] edgeChars = new char[children.size()][];
+        int[][] edgeTargets = new int[children.size()][];
+        int[][] outputs = new int[children.size()][];
+        for (int state = 0; state < children.size(); state++) {
+            TreeMap<Character, Integer> edges = children.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeTargets[state][i] = edge.getValue();
+                i++;
+            }
+            outputs[state] = out.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        return new KeywordMatcher<>(edgeChars, edgeTargets, fail, outputs, keywords, values);
+    }
+
+    boolean isEmpty() {
+        return edgeChars[0].length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void match(String text, MatchHandler<T> handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = next(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = next(state, c);
+            }
+            state = next < 0 ? 0 : next;
+
+            for (int keywordId : outputs[state]) {
+                String keyword = keywords[keywordId];
+                int start = i - keyword.length() + 1;
+                for (Object value : values[keywordId]) {
+                    handler.onMatch(start, keyword, (T) value);
+                }
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        char[] chars = edgeChars[state];
+        int lo = 0;
+        int hi = chars.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chars[mid] < c) {
+                lo = mid + 1;
+            } else if (chars[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[state][mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -1,21 +1,44 @@
 package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
+import com.example.demo.moderation.ModerationEntry;
+import com.example.demo.moderation.ModerationReport;
 import com.example.demo.moderation.ModerationService;
+import com.example.demo.moderation.ModerationStatus;
+import com.example.demo.moderation.ReportQueue;
+import com.example.demo.session.ChatIdentity;
+import com.example.demo.session.ChatIdentityResolver;
 import org.springframework.web.socket.WebSocketSession;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class ModerationBot extends Bot {
     
+    private static final Set<String> COMMANDS = Set.of("/mute", "/ban", "/unmute", "/unban", "/report", "/check",
+        "/reports", "/resolve");
+    
+    // Số báo cáo mỗi trang của /reports
+    private static final int REPORT_PAGE_SIZE = 5;
+    
+    // Mute dài nhất cho phép (1 năm); lâu hơn thì dùng /ban
+    private static final int MAX_MUTE_MINUTES = 365 * 24 * 60;
+    
     private ModerationService moderationService;
+    private ReportQueue reportQueue;
+    private ChatIdentityResolver identities;
     private Pattern mutePattern = Pattern.compile("/mute\\s+@(\\w+)\\s+(\\d+)(?:\\s+(.+))?");
     private Pattern banPattern = Pattern.compile("/ban\\s+@(\\w+)(?:\\s+(.+))?");
     private Pattern reportPattern = Pattern.compile("/report\\s+@(\\w+)(?:\\s+(.+))?");
+    private Pattern reportsPattern = Pattern.compile("/reports(?:\\s+@(\\w+))?(?:\\s+(\\d+))?");
     
-    public ModerationBot(ModerationService moderationService) {
+    public ModerationBot(ModerationService moderationService, ReportQueue reportQueue,
+                         ChatIdentityResolver identities) {
         super("ModerationBot", "Bot quản lý và điều hành phòng chat");
         this.moderationService = moderationService;
+        this.reportQueue = reportQueue;
+        this.identities = identities;
     }
 
     @Override
@@ -23,18 +46,25 @@ public class ModerationBot extends Bot {
         String msg = message.getMessage().toLowerCase();
         return msg.startsWith("/mute") || msg.startsWith("/ban") || 
                msg.startsWith("/unmute") || msg.startsWith("/unban") ||
-               msg.startsWith("/report") || msg.startsWith("/check");
+               msg.startsWith("/report") || msg.startsWith("/check") ||
+               msg.startsWith("/resolve");
+    }
+
+    @Override
+    public Set<String> getCommands() {
+        return COMMANDS;
     }
 
     @Override
     public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
         String command = message.getMessage().trim();
-        String userRole = getUserRole(message.getNickname()); // Lấy role của user
+        ChatIdentity identity = ChatIdentity.of(session); // Role từ tài khoản đăng nhập, gắn lúc handshake
         
         // Kiểm tra quyền hạn
         if (command.startsWith("/mute") || command.startsWith("/ban") || 
-            command.startsWith("/unmute") || command.startsWith("/unban")) {
-            if (!hasModeratorPermission(userRole)) {
+            command.startsWith("/unmute") || command.startsWith("/unban") ||
+            command.startsWith("/reports") || command.startsWith("/resolve")) {
+            if (!identity.isModerator()) {
                 return createBotResponse(
                     "❌ Bạn không có quyền sử dụng lệnh này. Chỉ **Giáo viên** và **Admin** mới có thể điều hành.", 
                     message.getRoom()
@@ -50,6 +80,10 @@ public class ModerationBot extends Bot {
             return handleUnmuteCommand(command, message.getRoom());
         } else if (command.startsWith("/unban")) {
             return handleUnbanCommand(command, message.getRoom());
+        } else if (command.startsWith("/reports")) {
+            return handleReportsCommand(command, message.getRoom());
+        } else if (command.startsWith("/resolve")) {
+            return handleResolveCommand(command, message.getNickname(), message.getRoom());
         } else if (command.startsWith("/report")) {
             return handleReportCommand(command, message.getNickname(), message.getRoom());
         } else if (command.startsWith("/check")) {
@@ -69,7 +103,14 @@ public class ModerationBot extends Bot {
         }
         
         String username = matcher.group(1);
-        int minutes = Integer.parseInt(matcher.group(2));
+        // Kiểm tra độ dài trước khi parse để số quá lớn không ném NumberFormatException
+        String digits = matcher.group(2);
+        int minutes = digits.length() <= 9 ? Integer.parseInt(digits) : Integer.MAX_VALUE;
+        if (minutes < 1 || minutes > MAX_MUTE_MINUTES) {
+            return createBotResponse(String.format(
+                "❌ Thời gian tắt tiếng phải từ 1 đến %d phút. Muốn chặn lâu hơn hãy dùng `/ban @%s`.",
+                MAX_MUTE_MINUTES, username), room);
+        }
         String reason = matcher.group(3) != null ? matcher.group(3) : "Không nêu lý do";
         
         // Kiểm tra không tự mute chính mình
@@ -78,12 +119,14 @@ public class ModerationBot extends Bot {
         }
         
         // Kiểm tra không mute admin/teacher khác
-        String targetRole = getUserRole(username);
-        if (hasModeratorPermission(targetRole)) {
+        if (identities.roleOf(username).isModerator()) {
             return createBotResponse("❌ Không thể tắt tiếng Giáo viên hoặc Admin khác!", room);
         }
         
         ModerationService.MuteResult result = moderationService.muteUser(username, minutes, reason, moderator);
+        if (!result.success) {
+            return createBotResponse("❌ Không thể tắt tiếng @" + username + ": " + result.message, room);
+        }
         
         String response = String.format("""
             🔇 **USER ĐÃ BỊ TẮT TIẾNG**
@@ -116,8 +159,7 @@ public class ModerationBot extends Bot {
             return createBotResponse("❌ Bạn không thể cấm chính mình!", room);
         }
         
-        String targetRole = getUserRole(username);
-        if (hasModeratorPermission(targetRole)) {
+        if (identities.roleOf(username).isModerator()) {
             return createBotResponse("❌ Không thể cấm Giáo viên hoặc Admin khác!", room);
         }
         
@@ -147,9 +189,10 @@ public class ModerationBot extends Bot {
         
         String reportedUser = matcher.group(1);
         String reason = matcher.group(2) != null ? matcher.group(2) : "Không nêu lý do cụ thể";
+        ModerationReport report = reportQueue.submit(reporter, reportedUser, reason, room);
         
         String response = String.format("""
-            📋 **BÁO CÁO VI PHẠM**
+            📋 **BÁO CÁO VI PHẠM #%d**
             
             👤 Người báo cáo: @%s
             🎯 Người bị báo cáo: @%s
@@ -161,12 +204,78 @@ public class ModerationBot extends Bot {
             🔍 Các moderator sẽ xem xét và xử lý trong thời gian sớm nhất.
             
             💡 Cảm ơn bạn đã giúp duy trì môi trường chat tích cực!
-            """, reporter, reportedUser, reason, java.time.LocalDateTime.now().format(
-                java.time.format.DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy")));
+            """, report.getId(), reporter, reportedUser, reason, formatTime(report.getCreatedMillis()));
             
         return createBotResponse(response, room);
     }
     
+    // /reports [@user] [id]: một trang báo cáo đang chờ, cũ nhất trước; id = báo cáo cuối của trang trước
+    private ChatMessage handleReportsCommand(String command, String room) {
+        Matcher matcher = reportsPattern.matcher(command);
+        if (!matcher.matches()) {
+            return createBotResponse("❌ Sử dụng: `/reports [@username] [sau_id]`", room);
+        }
+        
+        String reportedUser = matcher.group(1);
+        long afterId;
+        try {
+            afterId = matcher.group(2) != null ? Long.parseLong(matcher.group(2)) : 0;
+        } catch (NumberFormatException e) {
+            afterId = -1;
+        }
+        if (afterId < 0) {
+            return createBotResponse("❌ Sử dụng: `/reports [@username] [sau_id]`", room);
+        }
+        List<ModerationReport> page = reportedUser != null
+            ? reportQueue.pageFor(reportedUser, afterId, REPORT_PAGE_SIZE)
+            : reportQueue.page(afterId, REPORT_PAGE_SIZE);
+        int total = reportedUser != null ? reportQueue.getOpenCountFor(reportedUser) : reportQueue.getOpenCount();
+        
+        StringBuilder response = new StringBuilder();
+        response.append(String.format("📋 **HÀNG ĐỢI BÁO CÁO%s** (%d đang chờ xử lý)\n\n",
+            reportedUser != null ? " VỀ @" + reportedUser : "", total));
+        if (page.isEmpty()) {
+            response.append("✅ Không còn báo cáo nào.");
+            return createBotResponse(response.toString(), room);
+        }
+        for (ModerationReport report : page) {
+            response.append(String.format("#%d 🎯 @%s ← @%s (%s, %s): %s\n", report.getId(),
+                report.getReportedUser(), report.getReporter(), report.getRoom(),
+                formatTime(report.getCreatedMillis()), report.getReason()));
+        }
+        if (page.size() == REPORT_PAGE_SIZE) {
+            response.append(String.format("\n➡️ Trang sau: `/reports %s%d`",
+                reportedUser != null ? "@" + reportedUser + " " : "", page.get(page.size() - 1).getId()));
+        }
+        response.append("\n✔️ Xử lý xong: `/resolve <id>`");
+        return createBotResponse(response.toString(), room);
+    }
+    
+    private ChatMessage handleResolveCommand(String command, String moderator, String room) {
+        String[] parts = command.split("\\s+");
+        long id;
+        try {
+            id = parts.length == 2 ? Long.parseLong(parts[1].replace("#", "")) : -1;
+        } catch (NumberFormatException e) {
+            id = -1;
+        }
+        if (id < 0) {
+            return createBotResponse("❌ Sử dụng: `/resolve <id>`\nVí dụ: `/resolve 12`", room);
+        }
+        
+        ModerationReport report = reportQueue.resolve(id);
+        if (report == null) {
+            return createBotResponse(String.format("❌ Không có báo cáo #%d đang chờ xử lý.", id), room);
+        }
+        return createBotResponse(String.format("✅ Báo cáo #%d về @%s đã được @%s xử lý.",
+            id, report.getReportedUser(), moderator), room);
+    }
+    
+    private static String formatTime(long epochMillis) {
+        return java.time.Instant.ofEpochMilli(epochMillis).atZone(java.time.ZoneId.systemDefault())
+            .format(java.time.format.DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy"));
+    }
+    
     private ChatMessage handleCheckCommand(String command, String room) {
         String[] parts = command.split("\\s+");
         if (parts.length < 2 || !parts[1].startsWith("@")) {
@@ -177,24 +286,24 @@ public class ModerationBot extends Bot {
         StringBuilder status = new StringBuilder();
         status.append(String.format("📊 **TRẠNG THÁI CỦA @%s:**\n\n", username));
         
-        if (moderationService.isBanned(username)) {
-            ModerationService.BanInfo banInfo = moderationService.getBanInfo(username);
+        ModerationEntry entry = moderationService.getEntry(username);
+        if (entry != null && entry.getStatus() == ModerationStatus.BANNED) {
             status.append(String.format("""
                 🚫 **BỊ CẤM VĨNH VIỄN**
                 📝 Lý do: %s
                 👨‍🏫 Người cấm: @%s
                 🕐 Thời gian: %s
-                """, banInfo.reason, banInfo.moderator, 
-                banInfo.banTime.format(java.time.format.DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy"))));
-        } else if (moderationService.isMuted(username)) {
-            ModerationService.MuteInfo muteInfo = moderationService.getMuteInfo(username);
+                """, entry.getReason(), entry.getModerator(), 
+                java.time.Instant.ofEpochSecond(0, entry.getSinceNanos()).atZone(java.time.ZoneId.systemDefault())
+                    .format(java.time.format.DateTimeFormatter.ofPattern("HH:mm dd/MM/yyyy"))));
+        } else if (entry != null) {
             String timeLeft = moderationService.getRemainingMuteTime(username);
             status.append(String.format("""
                 🔇 **BỊ TẮT TIẾNG**
                 📝 Lý do: %s
                 👨‍🏫 Người tắt tiếng: @%s
                 ⏰ Thời gian còn lại: %s
-                """, muteInfo.reason, muteInfo.moderator, timeLeft));
+                """, entry.getReason(), entry.getModerator(), timeLeft));
         } else {
             status.append("✅ **HOẠT ĐỘNG BÌNH THƯỜNG**\nKhông có hạn chế nào.");
         }
@@ -246,29 +355,12 @@ public class ModerationBot extends Bot {
         }
     }
     
-    // Helper methods
-    private String getUserRole(String username) {
-        if (username.equals("admin")) return "ADMIN";
-        if (username.equals("teacher01")) return "TEACHER";
-        if (username.startsWith("sv")) return "STUDENT";
-        return "USER";
-    }
-    
-    private boolean hasModeratorPermission(String role) {
-        return "ADMIN".equals(role) || "TEACHER".equals(role);
-    }
-    
     // Public method để kiểm tra từ bên ngoài
     public boolean canUserSendMessage(String username) {
-        return !moderationService.isMuted(username) && !moderationService.isBanned(username);
+        return moderationService.statusOf(username) == ModerationStatus.ACTIVE;
     }
     
     public String getUserModerationStatus(String username) {
-        if (moderationService.isBanned(username)) {
-            return "BANNED";
-        } else if (moderationService.isMuted(username)) {
-            return "MUTED";
-        }
-        return "ACTIVE";
+        return moderationService.statusOf(username).name();
     }
 }
@@ -0,0 +1,80 @@
+package com.example.demo.bot;
+
+import com.example.demo.ChatMessage;
+import java.util.ArrayList;
+import java.util.List;
+
+// Tin nhắn đã được parse một lần trước khi route tới các bot,
+// để các bot không phải lowercase/split lại nội dung
+public class ParsedMessage {
+
+    private final ChatMessage message;
+    private final String text;
+    private final String lowerText;
+    private final String command;
+    private final String args;
+    private final List<String> mentions;
+
+    private ParsedMessage(ChatMessage message, String text, String lowerText,
+                          String command, String args, List<String> mentions) {
+        this.message = message;
+        this.text = text;
+        this.lowerText = lowerText;
+        this.command = command;
+        this.args = args;
+        this.mentions = mentions;
+    }
+
+    public static ParsedMessage parse(ChatMessage message) {
+        String text = message.getMessage() == null ? "" : message.getMessage().trim();
+        String lowerText = text.toLowerCase();
+
+        // Lệnh là token đầu tiên nếu tin nhắn bắt đầu bằng '/'
+        String command = null;
+        String args = "";
+        if (lowerText.startsWith("/")) {
+            int end = indexOfWhitespace(lowerText, 1);
+            command = lowerText.substring(0, end);
+            args = text.substring(end).trim();
+        }
+
+        // Các @mention trong tin nhắn
+        List<String> mentions = List.of();
+        int at = text.indexOf('@');
+        while (at >= 0) {
+            int end = indexOfWhitespace(text, at + 1);
+            if (end > at + 1) {
+                if (mentions.isEmpty()) {
+                    mentions = new ArrayList<>();
+                }
+                mentions.add(text.substring(at + 1, end));
+            }
+            at = text.indexOf('@', end);
+        }
+
+        return new ParsedMessage(message, text, lowerText, command, args,
+            mentions.isEmpty() ? mentions : List.copyOf(mentions));
+    }
+
+    private static int indexOfWhitespace(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return i;
+            }
+        }
+        return s.length();
+    }
+
+    public ChatMessage getMessage() { return message; }
+    public String getText() { return text; }
+    public String getLowerText() { return lowerText; }
+    public String getCommand() { return command; }
+    public String getArgs() { return args; }
+    public List<String> getMentions() { return mentions; }
+    public boolean isCommand() { return command != null; }
+
+    public boolean isFromBot() {
+        String nickname = message.getNickname();
+        return nickname != null && nickname.startsWith("🤖");
+    }
+}
@@ -1,12 +1,19 @@
 package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
+import com.example.demo.session.ChatIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.WebSocketSession;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class QuizBot extends Bot {
     
+    private static final Logger log = LoggerFactory.getLogger(QuizBot.class);
+    
+    private static final Set<String> COMMANDS = Set.of("/quiz");
+    
     private Map<String, QuizGameState> activeGames = new ConcurrentHashMap<>();
     private List<QuizQuestion> questionBank = new ArrayList<>();
     private Timer gameTimer = new Timer();
@@ -22,16 +29,28 @@ public class QuizBot extends Bot {
         return msg.startsWith("/quiz") || hasActiveGame(message.getRoom());
     }
 
+    // Chỉ lệnh /quiz tạo ra phản hồi, tin nhắn thường không cần route tới QuizBot
+    @Override
+    public Set<String> getCommands() {
+        return COMMANDS;
+    }
+
     @Override
     public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
-        String command = message.getMessage().toLowerCase().trim();
+        return processMessage(ParsedMessage.parse(message), session);
+    }
+
+    @Override
+    public ChatMessage processMessage(ParsedMessage parsed, WebSocketSession session) {
+        ChatMessage message = parsed.getMessage();
+        String command = parsed.getLowerText();
         String room = message.getRoom();
         String username = message.getNickname();
         
         if (command.startsWith("/quiz start")) {
             return startQuizGame(room, username);
         } else if (command.startsWith("/quiz stop")) {
-            return stopQuizGame(room, username);
+            return stopQuizGame(room, username, ChatIdentity.of(session));
         } else if (command.startsWith("/quiz answer ")) {
             String answer = command.substring(13).trim(); // "/quiz answer ".length() = 13
             return handleQuizAnswer(room, username, answer);
@@ -55,14 +74,14 @@ public class QuizBot extends Bot {
         return nextQuestion(room);
     }
     
-    private ChatMessage stopQuizGame(String room, String username) {
+    private ChatMessage stopQuizGame(String room, String username, ChatIdentity identity) {
         QuizGameState game = activeGames.get(room);
         if (game == null) {
             return createBotResponse("❌ Không có quiz nào đang diễn ra!", room);
         }
         
         // Chỉ game master hoặc admin mới có thể stop
-        if (!game.isGameMaster(username) && !isAdmin(username)) {
+        if (!game.isGameMaster(username) && !identity.isModerator()) {
             return createBotResponse("❌ Chỉ người tạo game hoặc admin mới có thể dừng quiz!", room);
         }
         
@@ -157,7 +176,7 @@ public class QuizBot extends Bot {
                 if (game != null) {
                     // Broadcast next question (cần ChatHandler hỗ trợ)
                     // Tạm thời chỉ log
-                    System.out.println("Auto next question for room: " + room);
+                    log.debug("Auto next question for room: {}", room);
                 }
             }
         }, delay);
@@ -257,10 +276,6 @@ public class QuizBot extends Bot {
         return activeGames.containsKey(room);
     }
     
-    private boolean isAdmin(String username) {
-        return username.equals("admin") || username.equals("teacher01");
-    }
-    
     private QuizQuestion getRandomQuestion() {
         Random random = new Random();
         return questionBank.get(random.nextInt(questionBank.size()));
@@ -1,23 +1,36 @@
 package com.example.demo.bot;
 
 import com.example.demo.ChatMessage;
+import com.example.demo.ratelimit.RateLimit;
+import com.example.demo.ratelimit.RateLimitPolicy;
+import com.example.demo.ratelimit.RateLimiter;
+import com.example.demo.session.ChatIdentity;
 import org.springframework.web.socket.WebSocketSession;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class SpamDetectionBot extends Bot {
     
-    // Theo dõi tin nhắn của từng user
-    private Map<String, List<Long>> userMessageTimes = new ConcurrentHashMap<>();
-    private Map<String, Integer> userSpamCount = new ConcurrentHashMap<>();
+    // Số lần vi phạm của từng user; hết hạn cùng bucket của user trong rate limiter
+    private final Map<String, Integer> userSpamCount = new ConcurrentHashMap<>();
+    // Theo dõi tốc độ gửi của từng user (lock-free, tự dọn user không hoạt động)
+    private final RateLimiter rateLimiter = new RateLimiter(10, TimeUnit.MINUTES, userSpamCount::remove);
     
     // Cài đặt spam detection
-    private static final int MAX_MESSAGES_PER_MINUTE = 5; // Tối đa 5 tin nhắn/phút
+    private static final RateLimit DEFAULT_LIMIT = RateLimit.of(5, 1, TimeUnit.MINUTES); // Tối đa 5 tin nhắn/phút
     private static final int SPAM_THRESHOLD = 3; // 3 lần spam = cảnh báo
-    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    
+    // Giới hạn theo phòng và role
+    private final RateLimitPolicy policy;
     
     public SpamDetectionBot() {
+        this(new RateLimitPolicy(DEFAULT_LIMIT, Map.of(), Map.of()));
+    }
+    
+    public SpamDetectionBot(RateLimitPolicy policy) {
         super("SpamDetector", "Bot phát hiện và báo cáo spam");
+        this.policy = policy;
     }
 
     @Override
@@ -26,20 +39,30 @@ public class SpamDetectionBot extends Bot {
         return !message.getNickname().startsWith("🤖");
     }
 
+    @Override
+    public boolean observesAllMessages() {
+        return true;
+    }
+
+    @Override
+    public boolean canHandle(ParsedMessage parsed) {
+        return !parsed.isFromBot();
+    }
+
+    // Rate limiter thread-safe nên cho phép chạy song song
+    @Override
+    public int getMaxConcurrency() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    }
+
     @Override
     public ChatMessage processMessage(ChatMessage message, WebSocketSession session) {
         String username = message.getNickname();
-        long currentTime = System.currentTimeMillis();
-        
-        // Lấy danh sách thời gian tin nhắn của user
-        userMessageTimes.computeIfAbsent(username, k -> new ArrayList<>()).add(currentTime);
-        
-        // Xóa tin nhắn cũ hơn 1 phút
-        List<Long> messageTimes = userMessageTimes.get(username);
-        messageTimes.removeIf(time -> currentTime - time > MINUTE_IN_MILLIS);
+        String room = message.getRoom();
         
-        // Kiểm tra spam
-        if (messageTimes.size() > MAX_MESSAGES_PER_MINUTE) {
+        // Kiểm tra spam: O(1), không cấp phát
+        RateLimit limit = policy.limitFor(room, ChatIdentity.of(session).getRole().name());
+        if (!rateLimiter.tryAcquire(policy.scopeFor(room), username, limit)) {
             return handleSpamDetected(username, message.getRoom());
         }
         
@@ -52,8 +75,7 @@ public class SpamDetectionBot extends Bot {
     }
     
     private ChatMessage handleSpamDetected(String username, String room) {
-        int spamCount = userSpamCount.getOrDefault(username, 0) + 1;
-        userSpamCount.put(username, spamCount);
+        int spamCount = userSpamCount.merge(username, 1, Integer::sum);
         
         String response;
         if (spamCount == 1) {
@@ -101,7 +123,7 @@ public class SpamDetectionBot extends Bot {
     // Phương thức reset spam count (có thể gọi từ bên ngoài)
     public void resetSpamCount(String username) {
         userSpamCount.remove(username);
-        userMessageTimes.remove(username);
+        rateLimiter.reset(username);
     }
     
     // Lấy thông tin spam của user
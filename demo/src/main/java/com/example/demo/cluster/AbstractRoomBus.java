@@ -0,0 +1,132 @@
+package com.example.demo.cluster;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Phần presence dùng chung của các RoomBus: số thành viên local đã công bố và
+// số thành viên của từng node khác, theo phòng.
+abstract class AbstractRoomBus implements RoomBus {
+
+    // Listener chưa đăng ký thì coi như node không có thành viên nào
+    private static final Listener NO_LISTENER = new Listener() {
+        @Override
+        public void onRemoteMessage(String roomName, byte[] payload, boolean persist) {
+        }
+
+        @Override
+        public int localMembers(String roomName) {
+            return 0;
+        }
+    };
+
+    private final String nodeId;
+    private volatile Listener listener = NO_LISTENER;
+
+    // topic -> handler của kênh sự kiện toàn cluster
+    protected final Map<String, EventHandler> eventHandlers = new ConcurrentHashMap<>();
+
+    // Số thành viên local đã công bố, chỉ chứa phòng có thành viên; ghi trong khóa presence
+    protected final Map<String, Integer> localCounts = new ConcurrentHashMap<>();
+
+    // nodeId -> (phòng -> số thành viên trên node đó)
+    private final Map<String, Map<String, Integer>> remotePresence = new ConcurrentHashMap<>();
+
+    protected final AtomicLong published = new AtomicLong();
+    protected final AtomicLong received = new AtomicLong();
+    protected final AtomicLong dropped = new AtomicLong();
+
+    protected AbstractRoomBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void subscribeEvents(String topic, EventHandler handler) {
+        eventHandlers.put(topic, handler);
+    }
+
+    // Đọc lại số thành viên trong khóa: lần gọi sau luôn thấy mọi join/leave trước nó,
+    // nên giá trị cuối cùng được công bố không bao giờ cũ hơn trạng thái thật
+    @Override
+    public void presenceChanged(String roomName) {
+        synchronized (localCounts) {
+            int count = listener.localMembers(roomName);
+            Integer previous = count > 0 ? localCounts.put(roomName, count) : localCounts.remove(roomName);
+            int before = previous == null ? 0 : previous;
+            if (before != count) {
+                announcePresence(roomName, count, (before == 0) != (count == 0));
+            }
+        }
+    }
+
+    // Gửi presence cho các node khác; interestChanged = phòng vừa có thành viên đầu tiên hoặc vừa hết người.
+    // Gọi trong khóa presence
+    protected abstract void announcePresence(String roomName, int count, boolean interestChanged);
+
+    // Node đó có thành viên trong phòng không (quyết định có chuyển tin hay không)
+    protected boolean isInterested(String remoteNodeId, String roomName) {
+        Map<String, Integer> rooms = remotePresence.get(remoteNodeId);
+        return rooms != null && rooms.containsKey(roomName);
+    }
+
+    protected void applyPresence(String remoteNodeId, String roomName, int count) {
+        Map<String, Integer> rooms = remotePresence.computeIfAbsent(remoteNodeId, id -> new ConcurrentHashMap<>());
+        if (count > 0) {
+            rooms.put(roomName, count);
+        } else {
+            rooms.remove(roomName);
+        }
+    }
+
+    // Node mất kết nối: bỏ toàn bộ presence của nó
+    protected void forgetNode(String remoteNodeId) {
+        remotePresence.remove(remoteNodeId);
+    }
+
+    protected void deliver(String roomName, byte[] payload, boolean persist) {
+        received.incrementAndGet();
+        listener.onRemoteMessage(roomName, payload, persist);
+    }
+
+    protected void deliverEvent(String topic, byte[] payload) {
+        EventHandler handler = eventHandlers.get(topic);
+        if (handler != null) {
+            received.incrementAndGet();
+            handler.onEvent(payload);
+        }
+    }
+
+    @Override
+    public int remoteMembers(String roomName) {
+        int total = 0;
+        for (Map<String, Integer> rooms : remotePresence.values()) {
+            total += rooms.getOrDefault(roomName, 0);
+        }
+        return total;
+    }
+
+    @Override
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    @Override
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
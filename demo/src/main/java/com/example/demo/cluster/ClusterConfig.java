@@ -0,0 +1,56 @@
+package com.example.demo.cluster;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Chọn RoomBus theo chat.cluster.mode; Spring tự gọi shutdown() khi đóng context
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    public RoomBus roomBus(@Value("${chat.cluster.mode:LOOPBACK}") ClusterMode mode,
+                           @Value("${chat.cluster.node-id:}") String nodeId,
+                           @Value("${chat.cluster.bind-address:127.0.0.1}") String bindAddress,
+                           @Value("${chat.cluster.port:7400}") int port,
+                           @Value("${chat.cluster.secret:}") String secret,
+                           @Value("${chat.cluster.peers:}") String peers,
+                           @Value("${chat.cluster.reconnect-ms:1000}") long reconnectMillis,
+                           @Value("${chat.cluster.presence-interval-ms:500}") long presenceIntervalMillis,
+                           @Value("${chat.cluster.queue-capacity:65536}") int queueCapacity) throws IOException {
+        String id = nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId.trim();
+        if (mode == ClusterMode.TCP) {
+            // Không có secret thì bất kỳ ai tới được cổng cluster cũng chèn được tin nhắn và lệnh kiểm duyệt
+            if (secret.isBlank()) {
+                throw new IllegalArgumentException("chat.cluster.secret: bắt buộc khi chat.cluster.mode=TCP");
+            }
+            return new TcpRoomBus(id, InetAddress.getByName(bindAddress.trim()), port, secret, parsePeers(peers),
+                reconnectMillis, presenceIntervalMillis, queueCapacity);
+        }
+        return new LoopbackRoomBus(new LoopbackRoomBus.Hub(), id);
+    }
+
+    // "10.0.0.2:7400,10.0.0.3:7400"; có thể liệt kê cả chính node này, link tới chính mình tự dừng
+    static List<InetSocketAddress> parsePeers(String peers) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String part : peers.split(",")) {
+            String peer = part.trim();
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0) {
+                if (!peer.isEmpty()) {
+                    throw new IllegalArgumentException("chat.cluster.peers: cần host:port, nhận được " + peer);
+                }
+                continue;
+            }
+            addresses.add(InetSocketAddress.createUnresolved(peer.substring(0, colon),
+                Integer.parseInt(peer.substring(colon + 1))));
+        }
+        return addresses;
+    }
+}
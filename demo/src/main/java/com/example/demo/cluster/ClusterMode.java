@@ -0,0 +1,9 @@
+package com.example.demo.cluster;
+
+// Cách các node chia sẻ tin nhắn của cùng một phòng
+public enum ClusterMode {
+    // Các bus trong cùng JVM nối qua bộ nhớ; mặc định một node, không tốn gì thêm
+    LOOPBACK,
+    // Các node nối trực tiếp với nhau qua TCP (chat.cluster.peers)
+    TCP
+}
@@ -0,0 +1,114 @@
+package com.example.demo.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// RoomBus trong cùng JVM: các node gắn vào chung một Hub và trao tin qua bộ nhớ.
+// Mặc định của ứng dụng là một node trên Hub riêng (publish không có ai nhận, gần như miễn phí);
+// benchmark/thử nghiệm dựng nhiều ChatHandler trên cùng một Hub để mô phỏng cluster.
+// Tin được giao trên thread inbox của node nhận, không gọi thẳng: bên gửi đang giữ khóa
+// lịch sử phòng, gọi đồng bộ sang node khác cũng publish cùng phòng sẽ deadlock.
+public class LoopbackRoomBus extends AbstractRoomBus {
+
+    // Tập các node trong cùng một "cluster" trong JVM
+    public static final class Hub {
+        private final List<LoopbackRoomBus> nodes = new CopyOnWriteArrayList<>();
+    }
+
+    private final Hub hub;
+    private final ExecutorService inbox;
+
+    public LoopbackRoomBus() {
+        this(new Hub(), "local");
+    }
+
+    public LoopbackRoomBus(Hub hub, String nodeId) {
+        super(nodeId);
+        this.hub = hub;
+        this.inbox = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-bus-loopback-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Node mới nhận presence hiện có của các node đã gắn vào hub, và ngược lại
+        for (LoopbackRoomBus other : hub.nodes) {
+            other.localCounts.forEach((room, count) -> applyPresence(other.nodeId(), room, count));
+        }
+        hub.nodes.add(this);
+    }
+
+    @Override
+    public void publish(String roomName, byte[] payload, boolean persist) {
+        for (LoopbackRoomBus other : hub.nodes) {
+            if (other == this || !isInterested(other.nodeId(), roomName)) {
+                continue;
+            }
+            sendTo(other, () -> other.deliver(roomName, payload, persist));
+        }
+    }
+
+    @Override
+    public void publishEvent(String topic, byte[] payload) {
+        for (LoopbackRoomBus other : hub.nodes) {
+            if (other != this && other.eventHandlers.containsKey(topic)) {
+                sendTo(other, () -> other.deliverEvent(topic, payload));
+            }
+        }
+    }
+
+    // Trao đổi snapshot với các node đã đăng ký cùng topic, như khi một node TCP vừa kết nối
+    @Override
+    public void subscribeEvents(String topic, EventHandler handler) {
+        super.subscribeEvents(topic, handler);
+        byte[] ours = handler.snapshot();
+        for (LoopbackRoomBus other : hub.nodes) {
+            EventHandler theirs = other.eventHandlers.get(topic);
+            if (other == this || theirs == null) {
+                continue;
+            }
+            byte[] snapshot = theirs.snapshot();
+            if (snapshot != null) {
+                sendTo(this, () -> deliverEvent(topic, snapshot));
+            }
+            if (ours != null) {
+                sendTo(other, () -> other.deliverEvent(topic, ours));
+            }
+        }
+    }
+
+    private void sendTo(LoopbackRoomBus other, Runnable delivery) {
+        try {
+            other.inbox.execute(delivery);
+            published.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Ghi thẳng vào bảng presence của các node khác, không cần gộp
+    @Override
+    protected void announcePresence(String roomName, int count, boolean interestChanged) {
+        for (LoopbackRoomBus other : hub.nodes) {
+            if (other != this) {
+                other.applyPresence(nodeId(), roomName, count);
+            }
+        }
+    }
+
+    @Override
+    public int peerCount() {
+        return hub.nodes.size() - 1;
+    }
+
+    @Override
+    public void shutdown() {
+        hub.nodes.remove(this);
+        for (LoopbackRoomBus other : hub.nodes) {
+            other.forgetNode(nodeId());
+        }
+        inbox.shutdown();
+    }
+}
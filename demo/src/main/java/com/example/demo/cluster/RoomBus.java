@@ -0,0 +1,54 @@
+package com.example.demo.cluster;
+
+// Kênh broadcast giữa các node chạy /chat sau cùng một load balancer.
+// Mỗi node báo cho các node khác số thành viên local của từng phòng (presence);
+// tin nhắn chỉ được chuyển tới node đang có thành viên trong phòng đó.
+// Tin nhận từ bus chỉ giao cho session local, không bao giờ được publish lại.
+public interface RoomBus {
+
+    // Phía ChatHandler: nhận tin từ node khác và cho bus đọc số thành viên local
+    interface Listener {
+        // persist = true: tin chat (node nhận gán seq riêng và lưu lịch sử); false: thông báo hệ thống
+        void onRemoteMessage(String roomName, byte[] payload, boolean persist);
+
+        int localMembers(String roomName);
+    }
+
+    // Kênh sự kiện toàn cluster, không lọc theo phòng (ví dụ thay đổi kiểm duyệt).
+    // payload của snapshot và của sự kiện có cùng định dạng, bên nhận phải gộp được nhiều lần (idempotent)
+    interface EventHandler {
+        void onEvent(byte[] payload);
+
+        // Trạng thái đầy đủ gửi cho node vừa kết nối; null nếu không có gì
+        byte[] snapshot();
+    }
+
+    String nodeId();
+
+    void subscribe(Listener listener);
+
+    // Gửi frame JSON tới các node có thành viên trong phòng; không chặn, hàng đợi đầy thì bỏ và đếm
+    void publish(String roomName, byte[] payload, boolean persist);
+
+    void subscribeEvents(String topic, EventHandler handler);
+
+    // Gửi tới mọi node đang kết nối; node kết nối sau sẽ nhận snapshot thay cho các sự kiện đã lỡ
+    void publishEvent(String topic, byte[] payload);
+
+    // Gọi sau mỗi lần thành viên local của phòng thay đổi; bus tự đọc lại số thành viên
+    void presenceChanged(String roomName);
+
+    // Tổng thành viên của phòng trên các node khác, theo presence đã nhận
+    int remoteMembers(String roomName);
+
+    // Số node khác đang kết nối
+    int peerCount();
+
+    long getPublishedCount();
+
+    long getReceivedCount();
+
+    long getDroppedCount();
+
+    void shutdown();
+}
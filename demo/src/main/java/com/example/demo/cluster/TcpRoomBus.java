@@ -0,0 +1,529 @@
+package com.example.demo.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// RoomBus qua TCP, các node nối thẳng với nhau (full mesh theo chat.cluster.peers).
+// Mỗi node mở một kết nối ra tới từng peer để GỬI (tin nhắn + presence của mình) và nhận
+// kết nối vào từ các peer để NHẬN, nên không cần xử lý hai node cùng quay số nhau.
+// Chỉ lắng nghe trên chat.cluster.bind-address (mặc định loopback). Bắt tay có xác thực bằng
+// secret chung: mỗi bên gửi HELLO kèm nonce ngẫu nhiên, rồi chứng minh biết secret bằng
+// AUTH = HMAC-SHA256(secret, nonce của bên kia + nodeId của mình). Kết nối sai AUTH bị đóng
+// trước khi đọc bất kỳ PRESENCE/MESSAGE/EVENT nào.
+// Frame: int độ dài (không tính 4 byte này) rồi byte kiểu:
+//   HELLO    utf nodeId, 16 byte nonce        (bắt tay, hai chiều)
+//   AUTH     32 byte HMAC                     (bắt tay, hai chiều, sau HELLO)
+//   PRESENCE utf phòng, int số thành viên      (0 = node không còn ai trong phòng)
+//   MESSAGE  utf phòng, boolean persist, int n, n byte JSON
+//   EVENT    utf topic, int n, n byte          (kênh sự kiện toàn cluster, gửi cho mọi node)
+// Presence đổi trạng thái có/không có thành viên được gửi ngay (để không lỡ tin đầu tiên),
+// còn thay đổi số lượng thì gộp lại gửi mỗi presence-interval-ms.
+public class TcpRoomBus extends AbstractRoomBus {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpRoomBus.class);
+
+    private static final byte TYPE_HELLO = 1;
+    private static final byte TYPE_PRESENCE = 2;
+    private static final byte TYPE_MESSAGE = 3;
+    private static final byte TYPE_EVENT = 4;
+    private static final byte TYPE_AUTH = 5;
+
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_WRITE_BATCH = 256;
+    private static final int NONCE_BYTES = 16;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_BYTES = 32;
+
+    private final long reconnectMillis;
+    private final int queueCapacity;
+    private final SecretKeySpec secretKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private final ServerSocket server;
+    private final List<PeerLink> links = new ArrayList<>();
+    // Kết nối vào hiện tại của từng node; kết nối cũ đóng sau không được xóa presence của kết nối mới
+    private final Map<String, Socket> inbound = new ConcurrentHashMap<>();
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService presenceFlusher;
+    private volatile boolean running = true;
+
+    public TcpRoomBus(String nodeId, InetAddress bindAddress, int port, String secret, List<InetSocketAddress> peers,
+                      long reconnectMillis, long presenceIntervalMillis, int queueCapacity) throws IOException {
+        super(nodeId);
+        this.reconnectMillis = Math.max(100, reconnectMillis);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+
+        this.server = new ServerSocket();
+        this.server.setReuseAddress(true);
+        this.server.bind(new InetSocketAddress(bindAddress, port));
+        startThread(this::acceptLoop, "chat-bus-acceptor");
+
+        for (InetSocketAddress peer : peers) {
+            PeerLink link = new PeerLink(peer);
+            links.add(link);
+            startThread(link, "chat-bus-out-" + peer.getHostString() + ":" + peer.getPort());
+        }
+
+        this.presenceFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-bus-presence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(10, presenceIntervalMillis);
+        presenceFlusher.scheduleWithFixedDelay(this::flushPresence, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Cluster node {} listening on {}:{}, peers {}", nodeId, bindAddress.getHostAddress(), getPort(), peers);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Encode một lần, cùng mảng byte được đưa vào hàng đợi của mọi peer quan tâm
+    @Override
+    public void publish(String roomName, byte[] payload, boolean persist) {
+        byte[] frame = null;
+        for (PeerLink link : links) {
+            String remote = link.remoteNodeId;
+            if (remote == null || !isInterested(remote, roomName)) {
+                continue;
+            }
+            if (frame == null) {
+                frame = messageFrame(roomName, payload, persist);
+            }
+            if (link.offer(frame)) {
+                published.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void publishEvent(String topic, byte[] payload) {
+        byte[] frame = eventFrame(topic, payload);
+        for (PeerLink link : links) {
+            if (link.remoteNodeId != null && link.offer(frame)) {
+                published.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    protected void announcePresence(String roomName, int count, boolean interestChanged) {
+        if (interestChanged) {
+            dirtyRooms.remove(roomName);
+            sendToAll(presenceFrame(roomName, count));
+        } else {
+            dirtyRooms.add(roomName);
+        }
+    }
+
+    // Trong khóa presence để không chen ngược thứ tự với presence gửi ngay trong presenceChanged
+    private void flushPresence() {
+        if (dirtyRooms.isEmpty()) {
+            return;
+        }
+        synchronized (localCounts) {
+            for (String roomName : dirtyRooms) {
+                dirtyRooms.remove(roomName);
+                sendToAll(presenceFrame(roomName, localCounts.getOrDefault(roomName, 0)));
+            }
+        }
+    }
+
+    private void sendToAll(byte[] frame) {
+        for (PeerLink link : links) {
+            if (link.remoteNodeId != null) {
+                link.offer(frame);
+            }
+        }
+    }
+
+    @Override
+    public int peerCount() {
+        int connected = 0;
+        for (PeerLink link : links) {
+            if (link.remoteNodeId != null) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        presenceFlusher.shutdownNow();
+        closeQuietly(server);
+        for (PeerLink link : links) {
+            link.close();
+        }
+        inbound.values().forEach(TcpRoomBus::closeQuietly);
+    }
+
+    // ===== Phía nhận =====
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                startThread(() -> readLoop(socket), "chat-bus-in-" + socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Cluster accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        String remote = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            // Kết nối chưa bắt tay xong không được giữ thread mãi
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            Hello hello = readHello(in);
+            byte[] nonce = newNonce();
+            out.write(helloFrame(nodeId(), nonce));
+            out.flush();
+            if (hello.nodeId.equals(nodeId())) {
+                return;
+            }
+            verifyAuth(in, hello.nodeId, nonce);
+            out.write(authFrame(hello.nonce));
+            out.flush();
+            socket.setSoTimeout(0);
+            remote = hello.nodeId;
+
+            Socket previous = inbound.put(remote, socket);
+            if (previous != null) {
+                closeQuietly(previous);
+            }
+            log.info("Cluster node {} connected from {}", remote, socket.getRemoteSocketAddress());
+
+            while (running) {
+                int length = readLength(in);
+                byte type = in.readByte();
+                switch (type) {
+                    case TYPE_PRESENCE -> applyPresence(remote, in.readUTF(), in.readInt());
+                    case TYPE_MESSAGE -> {
+                        String roomName = in.readUTF();
+                        boolean persist = in.readBoolean();
+                        byte[] payload = new byte[checkLength(in.readInt())];
+                        in.readFully(payload);
+                        deliver(roomName, payload, persist);
+                    }
+                    case TYPE_EVENT -> {
+                        String topic = in.readUTF();
+                        byte[] payload = new byte[checkLength(in.readInt())];
+                        in.readFully(payload);
+                        deliverEvent(topic, payload);
+                    }
+                    // Kiểu frame của phiên bản mới hơn: bỏ qua
+                    default -> in.skipNBytes(length - 1);
+                }
+            }
+        } catch (EOFException e) {
+            // Peer đóng kết nối
+        } catch (IOException | RuntimeException e) {
+            if (running) {
+                log.warn("Cluster link from {} failed: {}", remote != null ? remote : socket.getRemoteSocketAddress(), e.toString());
+            }
+        } finally {
+            if (remote != null && inbound.remove(remote, socket)) {
+                forgetNode(remote);
+                log.info("Cluster node {} disconnected", remote);
+            }
+        }
+    }
+
+    // ===== Phía gửi =====
+
+    // Kết nối ra tới một peer, tự kết nối lại; hàng đợi giới hạn để broadcast không bao giờ bị chặn
+    private final class PeerLink implements Runnable {
+        private final InetSocketAddress address;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        // nodeId của peer sau khi bắt tay xong; null = chưa kết nối, publish bỏ qua peer này
+        volatile String remoteNodeId;
+        private volatile Socket socket;
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean offer(byte[] frame) {
+            if (queue.offer(frame)) {
+                return true;
+            }
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    if (connectAndSend()) {
+                        return;
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        log.debug("Cluster peer {} unavailable: {}", address, e.getMessage());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    remoteNodeId = null;
+                    closeQuietly(socket);
+                }
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        // Trả về true nếu peer chính là node này (cấu hình peers chung cho mọi node): dừng hẳn
+        private boolean connectAndSend() throws IOException, InterruptedException {
+            Socket connection = new Socket();
+            socket = connection;
+            connection.setTcpNoDelay(true);
+            connection.setKeepAlive(true);
+            // Resolve lại mỗi lần kết nối: địa chỉ của peer có thể đổi khi nó khởi động lại
+            connection.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MILLIS);
+            connection.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream(), 64 * 1024));
+            DataInputStream in = new DataInputStream(connection.getInputStream());
+            byte[] nonce = newNonce();
+            out.write(helloFrame(nodeId(), nonce));
+            out.flush();
+            Hello hello = readHello(in);
+            String remote = hello.nodeId;
+            if (remote.equals(nodeId())) {
+                return true;
+            }
+            // Peer cũng phải chứng minh biết secret trước khi nhận tin nhắn của node này
+            out.write(authFrame(hello.nonce));
+            out.flush();
+            verifyAuth(in, remote, nonce);
+            connection.setSoTimeout(0);
+
+            // Tin cũ trong hàng đợi thuộc kết nối trước, peer có thể đã không còn quan tâm
+            queue.clear();
+            remoteNodeId = remote;
+            // Snapshot presence đi trước mọi cập nhật vào hàng đợi sau thời điểm này
+            for (Map.Entry<String, Integer> entry : localCounts.entrySet()) {
+                out.write(presenceFrame(entry.getKey(), entry.getValue()));
+            }
+            // Peer có thể đã lỡ các sự kiện khi chưa kết nối: gửi trạng thái đầy đủ của từng topic
+            for (Map.Entry<String, EventHandler> entry : eventHandlers.entrySet()) {
+                byte[] snapshot = entry.getValue().snapshot();
+                if (snapshot != null) {
+                    out.write(eventFrame(entry.getKey(), snapshot));
+                }
+            }
+            out.flush();
+            log.info("Cluster link to {} ({}) established", remote, address);
+
+            List<byte[]> batch = new ArrayList<>(MAX_WRITE_BATCH);
+            while (running) {
+                byte[] first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_WRITE_BATCH - 1);
+                for (byte[] frame : batch) {
+                    out.write(frame);
+                }
+                batch.clear();
+                // Flush khi hàng đợi cạn: nhiều frame dồn lại đi chung một lần ghi socket
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            }
+            return false;
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    // ===== Encode/decode frame =====
+
+    private static byte[] helloFrame(String nodeId, byte[] nonce) {
+        return frame(TYPE_HELLO, out -> {
+            out.writeUTF(nodeId);
+            out.write(nonce);
+        });
+    }
+
+    // AUTH của node này cho nonce mà peer gửi trong HELLO
+    private byte[] authFrame(byte[] peerNonce) {
+        byte[] mac = mac(peerNonce, nodeId());
+        return frame(TYPE_AUTH, out -> out.write(mac));
+    }
+
+    private static byte[] presenceFrame(String roomName, int count) {
+        return frame(TYPE_PRESENCE, out -> {
+            out.writeUTF(roomName);
+            out.writeInt(count);
+        });
+    }
+
+    private static byte[] messageFrame(String roomName, byte[] payload, boolean persist) {
+        return frame(TYPE_MESSAGE, out -> {
+            out.writeUTF(roomName);
+            out.writeBoolean(persist);
+            out.writeInt(payload.length);
+            out.write(payload);
+        });
+    }
+
+    private static byte[] eventFrame(String topic, byte[] payload) {
+        return frame(TYPE_EVENT, out -> {
+            out.writeUTF(topic);
+            out.writeInt(payload.length);
+            out.write(payload);
+        });
+    }
+
+    private interface FrameBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] frame(byte type, FrameBody body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type);
+            body.write(out);
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Hello readHello(DataInputStream in) throws IOException {
+        readLength(in);
+        if (in.readByte() != TYPE_HELLO) {
+            throw new IOException("expected HELLO frame");
+        }
+        String nodeId = in.readUTF();
+        byte[] nonce = new byte[NONCE_BYTES];
+        in.readFully(nonce);
+        return new Hello(nodeId, nonce);
+    }
+
+    // Đọc AUTH của peer và so với HMAC của nonce node này đã gửi; sai thì ném lỗi để đóng kết nối
+    private void verifyAuth(DataInputStream in, String remote, byte[] nonce) throws IOException {
+        int length = readLength(in);
+        if (in.readByte() != TYPE_AUTH || length - 1 != MAC_BYTES) {
+            throw new IOException("expected AUTH frame from " + remote);
+        }
+        byte[] received = new byte[length - 1];
+        in.readFully(received);
+        if (!MessageDigest.isEqual(received, mac(nonce, remote))) {
+            throw new IOException("authentication failed for node " + remote);
+        }
+    }
+
+    private byte[] mac(byte[] nonce, String nodeId) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secretKey);
+            mac.update(nonce);
+            return mac.doFinal(nodeId.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_BYTES];
+        random.nextBytes(nonce);
+        return nonce;
+    }
+
+    private static final class Hello {
+        final String nodeId;
+        final byte[] nonce;
+
+        Hello(String nodeId, byte[] nonce) {
+            this.nodeId = nodeId;
+            this.nonce = nonce;
+        }
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1) {
+            throw new IOException("invalid frame length " + length);
+        }
+        return checkLength(length);
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("frame length " + length + " exceeds " + MAX_FRAME_BYTES);
+        }
+        return length;
+    }
+
+    private static void startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Đang đóng, không còn gì để làm
+        }
+    }
+}
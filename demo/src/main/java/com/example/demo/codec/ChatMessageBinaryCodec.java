@@ -0,0 +1,121 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Mã hóa nhị phân gọn của ChatMessage cho client xin ?encoding=binary.
+// Bố cục frame (varint = LEB128 không dấu):
+//   byte    kiểu frame (0x01 = ChatMessage)
+//   varint  seq + 1 (0 = không có seq)
+//   chuỗi   nickname, message, room: varint (độ dài UTF-8 + 1, 0 = null) rồi các byte UTF-8
+// So với JSON: không có tên field, dấu ngoặc, escape; tiếng Việt vẫn là UTF-8 như cũ.
+public class ChatMessageBinaryCodec {
+
+    public static final byte TYPE_CHAT_MESSAGE = 0x01;
+
+    public byte[] encode(ChatMessage message) {
+        byte[] nickname = utf8(message.getNickname());
+        byte[] text = utf8(message.getMessage());
+        byte[] room = utf8(message.getRoom());
+        long seq = message.getSeq() == null ? 0 : message.getSeq() + 1;
+
+        int size = 1 + varintSize(seq) + stringSize(nickname) + stringSize(text) + stringSize(room);
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(TYPE_CHAT_MESSAGE);
+        putVarint(out, seq);
+        putString(out, nickname);
+        putString(out, text);
+        putString(out, room);
+        return out.array();
+    }
+
+    // Trả về null nếu frame không phải ChatMessage hợp lệ
+    public ChatMessage decode(ByteBuffer frame) {
+        ByteBuffer in = frame.slice();
+        try {
+            if (!in.hasRemaining() || in.get() != TYPE_CHAT_MESSAGE) {
+                return null;
+            }
+            long seq = getVarint(in);
+            String nickname = getString(in);
+            String text = getString(in);
+            String room = getString(in);
+            if (text == null) {
+                return null;
+            }
+            ChatMessage message = new ChatMessage(nickname, text, room);
+            if (seq > 0) {
+                message.setSeq(seq - 1);
+            }
+            return message;
+        } catch (RuntimeException e) {
+            // Độ dài vượt quá frame hoặc varint hỏng
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return value == null ? 1 : varintSize(value.length + 1L) + value.length;
+    }
+
+    private static void putString(ByteBuffer out, byte[] value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        putVarint(out, value.length + 1L);
+        out.put(value);
+    }
+
+    private static String getString(ByteBuffer in) {
+        long length = getVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        // length < 0 là varint không dấu lớn hơn Long.MAX_VALUE; ép sang int có thể thành số dương nhỏ
+        if (length < 0 || length - 1 > in.remaining()) {
+            throw new IllegalArgumentException("string length " + (length - 1) + " exceeds frame");
+        }
+        int start = in.position();
+        in.position(start + (int) (length - 1));
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + start, (int) (length - 1), StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import java.io.IOException;
+import java.util.List;
+
+// Codec cho schema ChatMessage (nickname, message, room, seq) dùng Jackson streaming,
+// thay cho ObjectMapper databind trên hot path.
+// - decode: nhận diện văn bản thường mà không cần ném exception
+// - encode: ghi thẳng ra buffer tái sử dụng theo thread
+public class ChatMessageCodec {
+
+    private static final String NICKNAME = "nickname";
+    private static final String MESSAGE = "message";
+    private static final String ROOM = "room";
+    private static final String SEQ = "seq";
+
+    // JsonFactory thread-safe, tự tái sử dụng buffer nội bộ qua BufferRecycler
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // Buffer đầu ra tái sử dụng cho mỗi thread
+    private final ThreadLocal<ByteArrayBuilder> outputBuffers =
+        ThreadLocal.withInitial(() -> new ByteArrayBuilder(512));
+
+    // Trả về null nếu payload không phải JSON object hợp lệ của ChatMessage (tức là văn bản thường)
+    public ChatMessage decode(String payload) {
+        if (!looksLikeJsonObject(payload)) {
+            return null;
+        }
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            String nickname = null;
+            String message = null;
+            String room = null;
+            Long seq = null;
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    // Field lạ có cấu trúc lồng thì bỏ qua; field của ChatMessage thì không hợp lệ
+                    if (NICKNAME.equals(field) || MESSAGE.equals(field) || ROOM.equals(field)) {
+                        return null;
+                    }
+                    parser.skipChildren();
+                    continue;
+                }
+
+                if (SEQ.equals(field)) {
+                    // seq do server gán; client gửi lên thì vẫn bị ghi đè khi broadcast
+                    seq = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : null;
+                    continue;
+                }
+
+                String text = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                switch (field) {
+                    case NICKNAME -> nickname = text;
+                    case MESSAGE -> message = text;
+                    case ROOM -> room = text;
+                    default -> { } // Bỏ qua field không biết
+                }
+            }
+
+            if (token != JsonToken.END_OBJECT || message == null) {
+                return null;
+            }
+            ChatMessage chatMessage = new ChatMessage(nickname, message, room);
+            chatMessage.setSeq(seq);
+            return chatMessage;
+        } catch (IOException e) {
+            // Bắt đầu bằng '{' nhưng không phải JSON hợp lệ: hiếm, coi như văn bản thường
+            return null;
+        }
+    }
+
+    // Serialize thành UTF-8; mảng trả về là bản sao riêng, có thể chia sẻ giữa các session
+    public byte[] encode(ChatMessage message) throws IOException {
+        ByteArrayBuilder out = outputBuffers.get();
+        out.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            writeFields(generator, message);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFields(JsonGenerator generator, ChatMessage message) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(NICKNAME, message.getNickname());
+        generator.writeStringField(MESSAGE, message.getMessage());
+        generator.writeStringField(ROOM, message.getRoom());
+        if (message.getSeq() != null) {
+            generator.writeNumberField(SEQ, message.getSeq());
+        }
+        generator.writeEndObject();
+    }
+
+    // Frame điều khiển gửi khi kết nối: resume token, trạng thái session và epoch của không gian seq
+    // {"type":"session","resumeToken":"...","resumed":true,"nickname":"...","rooms":["general"],"epoch":"..."}
+    public byte[] encodeSession(String resumeToken, boolean resumed, String nickname, List<String> rooms,
+                                String epoch) throws IOException {
+        ByteArrayBuilder out = outputBuffers.get();
+        out.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "session");
+            generator.writeStringField("resumeToken", resumeToken);
+            generator.writeBooleanField("resumed", resumed);
+            generator.writeStringField(NICKNAME, nickname);
+            generator.writeArrayFieldStart("rooms");
+            for (String room : rooms) {
+                generator.writeString(room);
+            }
+            generator.writeEndArray();
+            generator.writeStringField("epoch", epoch);
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    // Kiểm tra nhanh ký tự đầu tiên không phải khoảng trắng
+    private static boolean looksLikeJsonObject(String payload) {
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.demo.history;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lịch sử tin nhắn trong bộ nhớ cho tất cả phòng, để replay khi join hoặc reconnect.
+// Mỗi phòng giới hạn theo số tin và byte; tổng byte của mọi phòng giới hạn bởi ngân sách chung,
+// vượt ngân sách thì xóa lịch sử của phòng lâu không có tin mới nhất.
+// Log rỗng bị gỡ khỏi map (retire) khi bị xóa vì ngân sách hoặc khi phòng không còn ai;
+// chỉ lastSeq được giữ lại để seq của phòng vẫn tăng dần khi log được tạo lại.
+@Component
+public class RoomHistory {
+
+    private final Map<String, RoomLog> logs = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    // lastSeq của các phòng đã retire (chỉ phòng từng có tin nhắn)
+    private final Map<String, Long> retiredSeqs = new ConcurrentHashMap<>();
+
+    // Các log đang có frame, theo thứ tự có frame đầu tiên; chọn phòng bị xóa theo kiểu CLOCK:
+    // phòng có tin mới kể từ lần vào hàng đợi được cho thêm một vòng, không phải quét mọi phòng
+    private final Queue<RoomLog> evictionQueue = new ConcurrentLinkedQueue<>();
+
+    private final int maxMessagesPerRoom;
+    private final int maxBytesPerRoom;
+    private final long maxTotalBytes;
+    private final int replayLimit;
+
+    public RoomHistory(@Value("${chat.history.max-messages:100}") int maxMessagesPerRoom,
+                       @Value("${chat.history.max-bytes:262144}") int maxBytesPerRoom,
+                       @Value("${chat.history.max-total-bytes:67108864}") long maxTotalBytes,
+                       @Value("${chat.history.replay-limit:50}") int replayLimit) {
+        this.maxMessagesPerRoom = maxMessagesPerRoom;
+        this.maxBytesPerRoom = maxBytesPerRoom;
+        this.maxTotalBytes = maxTotalBytes;
+        this.replayLimit = replayLimit;
+    }
+
+    // Log của phòng, tạo mới (tiếp tục seq cũ nếu có) khi chưa có.
+    // Log có thể bị retire giữa lúc lấy ra và lúc khóa: sau khi khóa, isRetired() = true thì lấy lại
+    public RoomLog log(String room) {
+        RoomLog log = logs.get(room);
+        if (log != null) {
+            return log;
+        }
+        return logs.computeIfAbsent(room, r -> {
+            Long lastSeq = retiredSeqs.remove(r);
+            return new RoomLog(this, r, maxMessagesPerRoom, maxBytesPerRoom, lastSeq != null ? lastSeq : 0);
+        });
+    }
+
+    // Gọi khi phòng không còn thành viên trên node này: log chưa có frame nào thì bỏ khỏi map
+    public void release(String room) {
+        RoomLog log = logs.get(room);
+        if (log == null) {
+            return;
+        }
+        synchronized (log) {
+            if (!log.isRetired() && log.size() == 0) {
+                retire(log);
+            }
+        }
+    }
+
+    // Gọi sau khi đã nhả khóa của RoomLog: nếu vượt ngân sách thì xóa lịch sử các phòng ít hoạt động
+    // cho đến khi còn 90% ngân sách, để không phải quét lại ở mỗi tin nhắn
+    public void enforceBudget() {
+        if (totalBytes.get() <= maxTotalBytes) {
+            return;
+        }
+        long target = maxTotalBytes - maxTotalBytes / 10;
+        // Giới hạn số lần tha để phòng liên tục có tin không làm vòng lặp chạy mãi
+        int spareLimit = logs.size();
+        int spared = 0;
+        while (totalBytes.get() > target) {
+            RoomLog candidate = evictionQueue.poll();
+            if (candidate == null) {
+                return;
+            }
+            synchronized (candidate) {
+                if (candidate.isRetired()) {
+                    continue;
+                }
+                if (spared < spareLimit && candidate.touchedSinceQueued()) {
+                    spared++;
+                    candidate.markQueued();
+                    evictionQueue.offer(candidate);
+                    continue;
+                }
+                adjustBytes(-candidate.clear());
+                retire(candidate);
+            }
+        }
+    }
+
+    // Gọi khi đang giữ khóa của log: lưu lastSeq trước rồi mới gỡ khỏi map, để log tạo lại sau đó
+    // luôn thấy seq cũ
+    private void retire(RoomLog log) {
+        log.retire();
+        if (log.lastSeq() > 0) {
+            retiredSeqs.put(log.getRoom(), log.lastSeq());
+        }
+        logs.remove(log.getRoom(), log);
+    }
+
+    void enqueue(RoomLog log) {
+        evictionQueue.offer(log);
+    }
+
+    void adjustBytes(long delta) {
+        totalBytes.addAndGet(delta);
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public int getRoomCount() {
+        return logs.size();
+    }
+
+    public int getMaxMessagesPerRoom() {
+        return maxMessagesPerRoom;
+    }
+
+    public int getReplayLimit() {
+        return replayLimit;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.history;
+
+import org.springframework.web.socket.TextMessage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+// Lịch sử của một phòng: ring buffer các frame đã serialize sẵn, giới hạn theo số lượng và byte.
+// Seq tăng dần liên tục trong phòng nên seq của frame thứ i = firstSeq + i.
+// Mọi method synchronized trên chính đối tượng này; ChatHandler cũng giữ khóa này khi
+// append + fan-out và khi join + replay để thứ tự giao luôn trùng thứ tự seq.
+public class RoomLog {
+
+    private final RoomHistory history;
+    private final String room;
+    private final int maxMessages;
+    private final int maxBytes;
+
+    private final Deque<TextMessage> frames = new ArrayDeque<>();
+    private long firstSeq;
+    private long lastSeq;
+    private int bytes;
+
+    // Lần append gần nhất, dùng để chọn phòng bị xóa lịch sử khi vượt ngân sách bộ nhớ chung
+    private long lastAppendNanos;
+
+    // Trạng thái trong hàng đợi xóa của RoomHistory
+    private boolean queued;
+    private long queuedAppendNanos;
+
+    // Đã bị gỡ khỏi RoomHistory: không dùng nữa, người giữ tham chiếu phải lấy log mới
+    private boolean retired;
+
+    RoomLog(RoomHistory history, String room, int maxMessages, int maxBytes, long lastSeq) {
+        this.history = history;
+        this.room = room;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.lastSeq = lastSeq;
+        this.firstSeq = lastSeq + 1;
+    }
+
+    // Thêm frame vào cuối, trả về seq của nó; frame cũ nhất bị bỏ khi vượt giới hạn
+    public synchronized long append(TextMessage frame) {
+        int size = frame.getPayloadLength();
+        frames.addLast(frame);
+        bytes += size;
+        lastSeq++;
+        int removed = 0;
+        while (!frames.isEmpty() && (frames.size() > maxMessages || bytes > maxBytes)) {
+            removed += evictOldest();
+        }
+        lastAppendNanos = System.nanoTime();
+        history.adjustBytes(size - removed);
+        enqueueIfNeeded();
+        return lastSeq;
+    }
+
+    // Seq của frame mới nhất (0 nếu phòng chưa có tin nhắn nào)
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    // Seq của frame cũ nhất còn giữ (lastSeq + 1 nếu rỗng)
+    public synchronized long firstSeq() {
+        return firstSeq;
+    }
+
+    // Nạp lại lịch sử sau khi restart: frames là các frame cuối cùng, frame cuối có seq = lastSeq
+    public synchronized void restore(long restoredLastSeq, List<TextMessage> restored) {
+        int removed = clear();
+        lastSeq = restoredLastSeq;
+        firstSeq = restoredLastSeq - restored.size() + 1;
+        int added = 0;
+        for (TextMessage frame : restored) {
+            frames.addLast(frame);
+            bytes += frame.getPayloadLength();
+            added += frame.getPayloadLength();
+        }
+        while (!frames.isEmpty() && (frames.size() > maxMessages || bytes > maxBytes)) {
+            added -= evictOldest();
+        }
+        lastAppendNanos = System.nanoTime();
+        history.adjustBytes(added - removed);
+        enqueueIfNeeded();
+    }
+
+    // Các frame có seq > afterSeq, tối đa max frame mới nhất
+    public synchronized List<TextMessage> since(long afterSeq, int max) {
+        if (frames.isEmpty() || afterSeq >= lastSeq || max <= 0) {
+            return Collections.emptyList();
+        }
+        long from = Math.max(Math.max(afterSeq + 1, firstSeq), lastSeq - max + 1);
+        List<TextMessage> result = new ArrayList<>((int) (lastSeq - from + 1));
+        long seq = firstSeq;
+        for (TextMessage frame : frames) {
+            if (seq >= from) {
+                result.add(frame);
+            }
+            seq++;
+        }
+        return result;
+    }
+
+    // max frame gần nhất
+    public List<TextMessage> tail(int max) {
+        return since(0, max);
+    }
+
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    public synchronized int bytes() {
+        return bytes;
+    }
+
+    public synchronized boolean isRetired() {
+        return retired;
+    }
+
+    String getRoom() {
+        return room;
+    }
+
+    // Các method dưới đây gọi khi RoomHistory đang giữ khóa của log
+    boolean touchedSinceQueued() {
+        return lastAppendNanos != queuedAppendNanos;
+    }
+
+    void markQueued() {
+        queued = true;
+        queuedAppendNanos = lastAppendNanos;
+    }
+
+    void retire() {
+        retired = true;
+    }
+
+    // Xóa toàn bộ frame nhưng giữ seq để client vẫn dùng được "since seq"
+    synchronized int clear() {
+        int removed = bytes;
+        frames.clear();
+        bytes = 0;
+        firstSeq = lastSeq + 1;
+        return removed;
+    }
+
+    private void enqueueIfNeeded() {
+        if (!queued && !frames.isEmpty()) {
+            markQueued();
+            history.enqueue(this);
+        }
+    }
+
+    private int evictOldest() {
+        TextMessage oldest = frames.pollFirst();
+        int size = oldest.getPayloadLength();
+        bytes -= size;
+        firstSeq++;
+        return size;
+    }
+}
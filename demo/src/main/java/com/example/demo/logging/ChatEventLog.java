@@ -0,0 +1,124 @@
+package com.example.demo.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Log sự kiện chat dạng key=value qua logger "chat.events".
+// Logger này đi qua AsyncAppender (logback-spring.xml): hàng đợi giới hạn, đầy thì bỏ chứ không chặn thread gửi/nhận.
+// Mức log chỉnh bằng logging.level.chat.events; nội dung tin nhắn mặc định không được ghi.
+@Component
+public class ChatEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger("chat.events");
+
+    // Ghi cả nội dung tin nhắn (chỉ nên bật khi debug)
+    private final boolean includeBodies;
+
+    // Tỉ lệ tin nhắn được ghi ở mức DEBUG, 1.0 = tất cả
+    private final double messageSampleRate;
+
+    public ChatEventLog(@Value("${chat.log.include-bodies:false}") boolean includeBodies,
+                        @Value("${chat.log.message-sample-rate:0.01}") double messageSampleRate) {
+        this.includeBodies = includeBodies;
+        this.messageSampleRate = messageSampleRate;
+    }
+
+    // Gọi cho mọi tin nhắn: khi DEBUG tắt chỉ tốn một lần kiểm tra mức log
+    public void messageReceived(WebSocketSession session, int payloadLength, String payload) {
+        if (!log.isDebugEnabled() || !sampled()) {
+            return;
+        }
+        LoggingEventBuilder event = log.atDebug()
+            .setMessage("message.received")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("bytes", payloadLength);
+        if (includeBodies) {
+            event = event.addKeyValue("body", payload);
+        }
+        event.log();
+    }
+
+    public void connected(WebSocketSession session) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log.atInfo()
+            .setMessage("session.connected")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("remote", session.getRemoteAddress())
+            .log();
+    }
+
+    public void closed(WebSocketSession session, CloseStatus status) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        log.atInfo()
+            .setMessage("session.closed")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("code", status.getCode())
+            .log();
+    }
+
+    public void idleEvicted(WebSocketSession session, long idleMillis) {
+        log.atWarn()
+            .setMessage("session.idle-evicted")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("idleMs", idleMillis)
+            .log();
+    }
+
+    public void joinedRoom(WebSocketSession session, String room) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        log.atDebug()
+            .setMessage("room.joined")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("room", room)
+            .log();
+    }
+
+    public void botFailed(String botName, Throwable error) {
+        log.atWarn()
+            .setMessage("bot.failed")
+            .addKeyValue("bot", botName)
+            .addKeyValue("error", String.valueOf(error.getMessage()))
+            .log();
+    }
+
+    public void botTimedOut(String botName, long timeoutMillis) {
+        log.atWarn()
+            .setMessage("bot.timeout")
+            .addKeyValue("bot", botName)
+            .addKeyValue("timeoutMs", timeoutMillis)
+            .log();
+    }
+
+    public void sendFailed(WebSocketSession session, Throwable error) {
+        log.atWarn()
+            .setMessage("send.failed")
+            .addKeyValue("session", session.getId())
+            .addKeyValue("error", String.valueOf(error.getMessage()))
+            .log();
+    }
+
+    // Gửi thông báo hệ thống cho cả phòng thất bại (không gắn với session nào)
+    public void noticeFailed(String room, Throwable error) {
+        log.atWarn()
+            .setMessage("notice.failed")
+            .addKeyValue("room", room)
+            .addKeyValue("error", String.valueOf(error.getMessage()))
+            .log();
+    }
+
+    private boolean sampled() {
+        return messageSampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < messageSampleRate;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Timer canHandle/processMessage và số lỗi của một bot, gắn tag bot=<tên>
+public class BotMeters {
+
+    private final Timer canHandle;
+    private final Timer process;
+    private final Counter errors;
+    private final Counter timeouts;
+    private final Counter rejected;
+
+    BotMeters(String botName, MeterRegistry registry) {
+        this.canHandle = Timer.builder("chat.bot.can-handle")
+            .description("Thời gian bot quyết định có xử lý tin nhắn không")
+            .tag("bot", botName)
+            .register(registry);
+        this.process = Timer.builder("chat.bot.process")
+            .description("Thời gian bot xử lý tin nhắn")
+            .tag("bot", botName)
+            .register(registry);
+        this.errors = errorCounter(botName, "exception", registry);
+        this.timeouts = errorCounter(botName, "timeout", registry);
+        this.rejected = errorCounter(botName, "rejected", registry);
+    }
+
+    private static Counter errorCounter(String botName, String type, MeterRegistry registry) {
+        return Counter.builder("chat.bot.errors")
+            .description("Lỗi của bot: exception, quá deadline, hoặc hàng đợi lane đầy")
+            .tag("bot", botName)
+            .tag("type", type)
+            .register(registry);
+    }
+
+    public void recordCanHandle(long elapsedNanos) {
+        canHandle.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Chạy processMessage, đo thời gian và đếm exception (exception vẫn được ném tiếp)
+    public <T> T process(Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } catch (RuntimeException e) {
+            errors.increment();
+            throw e;
+        } finally {
+            process.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    public void rejected() {
+        rejected.increment();
+    }
+
+    void removeFrom(MeterRegistry registry) {
+        registry.remove(canHandle);
+        registry.remove(process);
+        registry.remove(errors);
+        registry.remove(timeouts);
+        registry.remove(rejected);
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.metrics;
+
+import com.example.demo.cluster.RoomBus;
+import com.example.demo.history.RoomHistory;
+import com.example.demo.moderation.ModerationJournal;
+import com.example.demo.moderation.ReportQueue;
+import com.example.demo.outbound.OutboundQueueManager;
+import com.example.demo.persistence.ChatLogStore;
+import com.example.demo.ratelimit.FloodGuard;
+import com.example.demo.room.RoomRegistry;
+import com.example.demo.session.SessionLiveness;
+import com.example.demo.session.SessionResumeRegistry;
+import com.example.demo.timer.TimerWheel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+// Gauge đọc trạng thái hiện tại khi scrape, không tốn gì trên đường xử lý tin nhắn
+@Component
+public class ChatMeterBinder implements MeterBinder {
+
+    // Cận trên các bucket của histogram kích thước phòng
+    private static final int[] ROOM_SIZE_BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    private final RoomRegistry roomRegistry;
+    private final OutboundQueueManager outboundQueues;
+    private final FloodGuard floodGuard;
+    private final RoomHistory history;
+    private final ChatLogStore chatLogStore;
+    private final SessionResumeRegistry resumeRegistry;
+    private final SessionLiveness liveness;
+    private final TimerWheel timer;
+    private final RoomBus roomBus;
+    private final ModerationJournal moderationJournal;
+    private final ReportQueue reportQueue;
+
+    public ChatMeterBinder(RoomRegistry roomRegistry, OutboundQueueManager outboundQueues,
+                           FloodGuard floodGuard, RoomHistory history, ChatLogStore chatLogStore,
+                           SessionResumeRegistry resumeRegistry, SessionLiveness liveness,
+                           TimerWheel timer, RoomBus roomBus, ModerationJournal moderationJournal,
+                           ReportQueue reportQueue) {
+        this.roomRegistry = roomRegistry;
+        this.outboundQueues = outboundQueues;
+        this.floodGuard = floodGuard;
+        this.history = history;
+        this.chatLogStore = chatLogStore;
+        this.resumeRegistry = resumeRegistry;
+        this.liveness = liveness;
+        this.timer = timer;
+        this.roomBus = roomBus;
+        this.moderationJournal = moderationJournal;
+        this.reportQueue = reportQueue;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.sessions.active", outboundQueues, OutboundQueueManager::getQueueCount)
+            .description("Số session WebSocket đang mở")
+            .register(registry);
+        Gauge.builder("chat.rooms.active", roomRegistry, RoomRegistry::roomCount)
+            .description("Số phòng có ít nhất một thành viên")
+            .register(registry);
+        Gauge.builder("chat.sessions.parked", resumeRegistry, SessionResumeRegistry::getParkedCount)
+            .description("Session đã rớt mạng đang chờ resume")
+            .register(registry);
+        FunctionCounter.builder("chat.heartbeat.pings", liveness, SessionLiveness::getPingsSent)
+            .description("Ping WebSocket server gửi cho session im lặng")
+            .register(registry);
+        FunctionCounter.builder("chat.heartbeat.evicted", liveness, SessionLiveness::getEvictedCount)
+            .description("Session bị ngắt vì không phản hồi quá idle-timeout")
+            .register(registry);
+        Gauge.builder("chat.timer.scheduled", timer, TimerWheel::getScheduledCount)
+            .description("Timeout đang chờ trên timer wheel")
+            .register(registry);
+
+        Gauge.builder("chat.cluster.peers", roomBus, RoomBus::peerCount)
+            .description("Số node khác đang kết nối qua RoomBus")
+            .register(registry);
+        FunctionCounter.builder("chat.cluster.published", roomBus, RoomBus::getPublishedCount)
+            .description("Frame đã chuyển sang node khác (mỗi node nhận tính một lần)")
+            .register(registry);
+        FunctionCounter.builder("chat.cluster.received", roomBus, RoomBus::getReceivedCount)
+            .description("Frame nhận từ node khác")
+            .register(registry);
+        FunctionCounter.builder("chat.cluster.dropped", roomBus, RoomBus::getDroppedCount)
+            .description("Frame bị bỏ vì hàng đợi tới node khác đầy")
+            .register(registry);
+
+        // Histogram tích lũy: số phòng có kích thước <= le
+        for (int bound : ROOM_SIZE_BUCKETS) {
+            Gauge.builder("chat.rooms.size", roomRegistry, registryRef -> countRoomsUpTo(registryRef, bound))
+                .description("Số phòng theo kích thước (tích lũy)")
+                .tag("le", String.valueOf(bound))
+                .register(registry);
+        }
+        Gauge.builder("chat.rooms.size", roomRegistry, registryRef -> countRoomsUpTo(registryRef, Integer.MAX_VALUE))
+            .description("Số phòng theo kích thước (tích lũy)")
+            .tag("le", "+Inf")
+            .register(registry);
+
+        Gauge.builder("chat.history.bytes", history, RoomHistory::getTotalBytes)
+            .description("Tổng byte frame đang giữ trong lịch sử các phòng")
+            .baseUnit("bytes")
+            .register(registry);
+
+        Gauge.builder("chat.store.queue", chatLogStore, ChatLogStore::getQueueDepth)
+            .description("Bản ghi đang chờ writer của chat log")
+            .register(registry);
+        FunctionCounter.builder("chat.store.appended", chatLogStore, ChatLogStore::getAppendedCount)
+            .description("Bản ghi đã ghi vào chat log")
+            .register(registry);
+        FunctionCounter.builder("chat.store.dropped", chatLogStore, ChatLogStore::getDroppedCount)
+            .description("Bản ghi bị bỏ vì hàng đợi chat log đầy")
+            .register(registry);
+        FunctionCounter.builder("chat.store.errors", chatLogStore, ChatLogStore::getWriteErrorCount)
+            .description("Lỗi ghi/fsync chat log")
+            .register(registry);
+
+        Gauge.builder("chat.moderation.reports.open", reportQueue, ReportQueue::getOpenCount)
+            .description("Báo cáo /report đang chờ moderator xử lý")
+            .register(registry);
+        FunctionCounter.builder("chat.moderation.journal.appended", moderationJournal, ModerationJournal::getAppendedCount)
+            .description("Bản ghi đã ghi vào nhật ký kiểm duyệt")
+            .register(registry);
+        FunctionCounter.builder("chat.moderation.journal.errors", moderationJournal, ModerationJournal::getWriteErrorCount)
+            .description("Lỗi ghi/fsync/snapshot nhật ký kiểm duyệt")
+            .register(registry);
+
+        FunctionCounter.builder("chat.flood.rejects", floodGuard, FloodGuard::getDroppedMessageRate)
+            .description("Frame bị FloodGuard chặn")
+            .tag("reason", "message-rate")
+            .register(registry);
+        FunctionCounter.builder("chat.flood.rejects", floodGuard, FloodGuard::getDroppedByteRate)
+            .description("Frame bị FloodGuard chặn")
+            .tag("reason", "byte-rate")
+            .register(registry);
+        FunctionCounter.builder("chat.flood.rejects", floodGuard, FloodGuard::getClosedOversize)
+            .description("Frame bị FloodGuard chặn")
+            .tag("reason", "oversize")
+            .register(registry);
+        FunctionCounter.builder("chat.flood.rejects", floodGuard, FloodGuard::getClosedAbuse)
+            .description("Frame bị FloodGuard chặn")
+            .tag("reason", "abuse")
+            .register(registry);
+    }
+
+    private static double countRoomsUpTo(RoomRegistry roomRegistry, int bound) {
+        int count = 0;
+        for (int size : roomRegistry.roomSizes()) {
+            if (size <= bound) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
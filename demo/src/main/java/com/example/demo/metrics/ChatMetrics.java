@@ -0,0 +1,154 @@
+package com.example.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Metrics trên đường xử lý tin nhắn; xem qua /actuator/metrics hoặc /actuator/prometheus.
+// Mọi meter được tạo sẵn, đường nóng chỉ tăng counter / ghi timer, không tra registry.
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Counter inbound;
+    private final Counter outbound;
+    private final Counter outboundDropped;
+    private final Counter enqueueFailures;
+    private final Counter writeFailures;
+    private final Counter mutedRejects;
+    private final Counter bannedRejects;
+    private final Timer broadcastLatency;
+    private final DistributionSummary broadcastFanOut;
+    private final DistributionSummary outboundBatchSize;
+    private final Counter sessionsDeflate;
+    private final Counter sessionsUncompressed;
+    private final Counter outboundJsonBytes;
+    private final Counter outboundBinaryBytes;
+
+    // Meter của từng bot, tạo khi bot được dùng lần đầu
+    private final Map<String, BotMeters> botMeters = new ConcurrentHashMap<>();
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.inbound = Counter.builder("chat.messages.inbound")
+            .description("Frame nhận từ client")
+            .register(registry);
+        this.outbound = Counter.builder("chat.messages.outbound")
+            .description("Frame đưa vào hàng đợi gửi (mỗi người nhận tính một lần)")
+            .register(registry);
+        this.outboundDropped = Counter.builder("chat.messages.dropped")
+            .description("Frame bị bỏ do hàng đợi gửi đầy (DROP_OLDEST)")
+            .register(registry);
+        this.enqueueFailures = Counter.builder("chat.send.failures")
+            .description("Gửi thất bại")
+            .tag("stage", "enqueue")
+            .register(registry);
+        this.writeFailures = Counter.builder("chat.send.failures")
+            .description("Gửi thất bại")
+            .tag("stage", "write")
+            .register(registry);
+        this.mutedRejects = Counter.builder("chat.moderation.rejects")
+            .description("Tin nhắn bị chặn bởi cổng kiểm duyệt")
+            .tag("status", "muted")
+            .register(registry);
+        this.bannedRejects = Counter.builder("chat.moderation.rejects")
+            .description("Tin nhắn bị chặn bởi cổng kiểm duyệt")
+            .tag("status", "banned")
+            .register(registry);
+        this.broadcastLatency = Timer.builder("chat.broadcast.latency")
+            .description("Thời gian encode + enqueue một tin nhắn cho cả phòng")
+            .publishPercentileHistogram()
+            .register(registry);
+        this.broadcastFanOut = DistributionSummary.builder("chat.broadcast.fanout")
+            .description("Số người nhận của mỗi lần broadcast")
+            .baseUnit("sessions")
+            .register(registry);
+        this.outboundBatchSize = DistributionSummary.builder("chat.outbound.batch.size")
+            .description("Số tin nhắn được gộp trong một frame gửi theo lô")
+            .baseUnit("messages")
+            .register(registry);
+        this.sessionsDeflate = Counter.builder("chat.sessions.opened")
+            .description("Kết nối WebSocket đã mở, theo việc có negotiate permessage-deflate hay không")
+            .tag("compression", "deflate")
+            .register(registry);
+        this.sessionsUncompressed = Counter.builder("chat.sessions.opened")
+            .description("Kết nối WebSocket đã mở, theo việc có negotiate permessage-deflate hay không")
+            .tag("compression", "none")
+            .register(registry);
+        this.outboundJsonBytes = Counter.builder("chat.outbound.bytes")
+            .description("Byte ChatMessage đưa vào hàng đợi gửi, trước permessage-deflate")
+            .tag("encoding", "json")
+            .baseUnit("bytes")
+            .register(registry);
+        this.outboundBinaryBytes = Counter.builder("chat.outbound.bytes")
+            .description("Byte ChatMessage đưa vào hàng đợi gửi, trước permessage-deflate")
+            .tag("encoding", "binary")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    public void inbound() {
+        inbound.increment();
+    }
+
+    public void outbound() {
+        outbound.increment();
+    }
+
+    public void outboundDropped() {
+        outboundDropped.increment();
+    }
+
+    public void sessionOpened(boolean compressed) {
+        (compressed ? sessionsDeflate : sessionsUncompressed).increment();
+    }
+
+    public void outboundBytes(boolean json, int bytes) {
+        (json ? outboundJsonBytes : outboundBinaryBytes).increment(bytes);
+    }
+
+    public void outboundBatch(int messages) {
+        outboundBatchSize.record(messages);
+    }
+
+    // Session đã đóng hoặc bị ngắt vì gửi quá chậm
+    public void enqueueFailed() {
+        enqueueFailures.increment();
+    }
+
+    // Lỗi IO khi writer gửi frame ra socket
+    public void writeFailed() {
+        writeFailures.increment();
+    }
+
+    public void broadcast(int recipients, long elapsedNanos) {
+        broadcastLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        broadcastFanOut.record(recipients);
+    }
+
+    public void moderationRejected(boolean banned) {
+        (banned ? bannedRejects : mutedRejects).increment();
+    }
+
+    public BotMeters forBot(String botName) {
+        BotMeters meters = botMeters.get(botName);
+        if (meters != null) {
+            return meters;
+        }
+        return botMeters.computeIfAbsent(botName, name -> new BotMeters(name, registry));
+    }
+
+    // Gỡ meter khi custom bot bị xóa để registry không giữ bot cũ mãi
+    public void removeBot(String botName) {
+        BotMeters meters = botMeters.remove(botName);
+        if (meters != null) {
+            meters.removeFrom(registry);
+        }
+    }
+}
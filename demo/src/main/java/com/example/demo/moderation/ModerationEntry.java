@@ -0,0 +1,67 @@
+package com.example.demo.moderation;
+
+import com.example.demo.timer.TimerWheel;
+
+// Bản ghi kiểm duyệt của một user, được nhân bản sang mọi node; các field nhân bản đều bất biến.
+// Mỗi lần thay đổi tạo bản ghi mới với version (đồng hồ Lamport) lớn hơn; khi hai node cùng sửa
+// một user thì bản ghi có version lớn hơn thắng, hòa thì so nodeId để mọi node chọn giống nhau.
+public final class ModerationEntry {
+
+    private final String username;
+    private final ModerationStatus status;
+    private final String reason;
+    private final String moderator;
+    // Thời điểm thực hiện và hết hạn mute (epoch nanos, so được giữa các node); 0 = không hết hạn
+    private final long sinceNanos;
+    private final long untilNanos;
+    private final long version;
+    private final String origin;
+
+    // Timeout hết hạn mute trên timer wheel của node này (không nhân bản)
+    volatile TimerWheel.Timeout expiry;
+
+    public ModerationEntry(String username, ModerationStatus status, String reason, String moderator,
+                           long sinceNanos, long untilNanos, long version, String origin) {
+        this.username = username;
+        this.status = status;
+        this.reason = reason;
+        this.moderator = moderator;
+        this.sinceNanos = sinceNanos;
+        this.untilNanos = untilNanos;
+        this.version = version;
+        this.origin = origin;
+    }
+
+    // Bản ghi còn hiệu lực tại thời điểm nowNanos
+    public boolean isInEffect(long nowNanos) {
+        return status == ModerationStatus.BANNED
+            || status == ModerationStatus.MUTED && nowNanos < untilNanos;
+    }
+
+    // Mute hết hạn: thành ACTIVE nhưng giữ nguyên version, để bản ghi cũ hơn (kể cả ban đã bị mute này
+    // thay thế) không sống lại; node khác tự hết hạn bản ghi của mình nên không cần phát đi
+    ModerationEntry expired() {
+        return new ModerationEntry(username, ModerationStatus.ACTIVE, null, null, sinceNanos, 0, version, origin);
+    }
+
+    boolean supersedes(ModerationEntry other) {
+        if (other == null || version != other.version) {
+            return other == null || version > other.version;
+        }
+        return origin.compareTo(other.origin) > 0;
+    }
+
+    public String getUsername() { return username; }
+    public ModerationStatus getStatus() { return status; }
+    public String getReason() { return reason; }
+    public String getModerator() { return moderator; }
+    public long getSinceNanos() { return sinceNanos; }
+    public long getUntilNanos() { return untilNanos; }
+    public long getVersion() { return version; }
+    public String getOrigin() { return origin; }
+
+    @Override
+    public String toString() {
+        return "ModerationEntry{" + username + " " + status + " v" + version + "@" + origin + "}";
+    }
+}
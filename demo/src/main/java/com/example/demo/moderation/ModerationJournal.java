@@ -0,0 +1,362 @@
+package com.example.demo.moderation;
+
+import com.example.demo.persistence.Durability;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+// Nhật ký kiểm duyệt trên đĩa: mỗi thay đổi mute/ban và mỗi báo cáo /report (gửi, xử lý xong) được
+// ghi nối vào journal.log bởi một writer thread. Sau mỗi snapshot-every bản ghi, writer ghi snapshot.bin
+// chỉ chứa trạng thái hiện tại (mỗi loại một lô, decode một lần khi khởi động) rồi cắt journal về rỗng.
+// Khởi động: đọc snapshot rồi phát lại journal. Phát lại là idempotent (bản ghi gộp theo version, báo cáo
+// theo id) nên sập giữa lúc thay snapshot và cắt journal chỉ làm phát lại thừa, không sai trạng thái.
+// Hai file được đọc bằng stream chứ không map, để compact đổi tên/cắt được chúng cả trên Windows.
+@Component
+public class ModerationJournal implements ModerationListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ModerationJournal.class);
+
+    // Mỗi bản ghi: [length:int][crc:int][type:byte][payload]; CRC tính trên type + payload,
+    // bản ghi ghi dở khi sập máy sai CRC và là điểm dừng khi phát lại
+    private static final int HEADER_BYTES = 9;
+    private static final byte ENTRIES = 1;
+    private static final byte REPORTS = 2;
+    private static final byte RESOLVE = 3;
+    private static final byte NEXT_REPORT_ID = 4;
+
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int MAX_BATCH = 1024;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int snapshotEvery;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+
+    // Không giới hạn: thay đổi kiểm duyệt hiếm và không được phép mất như chat log
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private FileChannel channel;
+    // Số bản ghi trong journal kể từ snapshot cuối (kể cả bản ghi đọc lại lúc khởi động)
+    private int sinceSnapshot;
+    private int replayedRecords;
+    // Số bản ghi trạng thái trong snapshot cuối: chỉ gộp lại khi journal dài ít nhất chừng đó,
+    // để chi phí ghi snapshot (tỉ lệ với trạng thái) được chia đều cho các bản ghi journal
+    private int snapshotRecords;
+
+    // Trạng thái hiện tại để ghi snapshot, do ModerationService/ReportQueue gắn vào
+    private volatile Supplier<Collection<ModerationEntry>> entryState = List::of;
+    private volatile Supplier<Collection<ModerationReport>> reportState = List::of;
+    private volatile LongSupplier nextReportId = () -> 1;
+
+    // Kết quả phát lại lúc khởi động
+    private final List<ModerationEntry> recoveredEntries = new ArrayList<>();
+    private final Map<Long, ModerationReport> recoveredReports = new LinkedHashMap<>();
+    private long recoveredNextReportId = 1;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+
+    public ModerationJournal(@Value("${chat.moderation.journal.enabled:true}") boolean enabled,
+                             @Value("${chat.moderation.journal.dir:data/moderation}") String dir,
+                             @Value("${chat.moderation.journal.snapshot-every:10000}") int snapshotEvery,
+                             @Value("${chat.moderation.journal.durability:ALWAYS}") Durability durability,
+                             @Value("${chat.moderation.journal.flush-interval-ms:200}") long flushIntervalMillis) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.durability = durability;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        if (enabled) {
+            recover();
+        }
+        this.writer = new Thread(this::writeLoop, "moderation-journal-writer");
+        this.writer.setDaemon(true);
+        if (enabled && channel != null) {
+            this.writer.start();
+        }
+    }
+
+    // Mute hết hạn giữ nguyên version nên không cần ghi: phát lại tự hết hạn theo untilNanos
+    @Override
+    public void onChange(ModerationEntry previous, ModerationEntry current) {
+        if (previous != null && previous.getVersion() == current.getVersion()
+                && previous.getOrigin().equals(current.getOrigin())) {
+            return;
+        }
+        append(ENTRIES, ModerationService.encode(List.of(current)));
+    }
+
+    void reportSubmitted(ModerationReport report) {
+        append(REPORTS, ModerationReport.encode(List.of(report)));
+    }
+
+    void reportResolved(long id) {
+        append(RESOLVE, ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+    }
+
+    void attachEntries(Supplier<Collection<ModerationEntry>> state) {
+        this.entryState = state;
+    }
+
+    void attachReports(Supplier<Collection<ModerationReport>> state, LongSupplier nextId) {
+        this.reportState = state;
+        this.nextReportId = nextId;
+    }
+
+    List<ModerationEntry> recoveredEntries() {
+        return recoveredEntries;
+    }
+
+    Collection<ModerationReport> recoveredReports() {
+        return recoveredReports.values();
+    }
+
+    long recoveredNextReportId() {
+        return recoveredNextReportId;
+    }
+
+    private void append(byte type, byte[] payload) {
+        if (enabled && running) {
+            queue.add(frame(type, payload));
+        }
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        long lastFlush = System.currentTimeMillis();
+        boolean dirty = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                byte[] first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    write(batch);
+                    sinceSnapshot += batch.size();
+                    batch.clear();
+                    dirty = true;
+                }
+
+                long now = System.currentTimeMillis();
+                if (dirty && (durability == Durability.ALWAYS || now - lastFlush >= flushIntervalMillis)) {
+                    force(durability != Durability.NONE);
+                    lastFlush = now;
+                    dirty = false;
+                }
+                if (sinceSnapshot >= Math.max(snapshotEvery, snapshotRecords)) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+        // Dừng ứng dụng: gộp journal vào snapshot để lần khởi động sau chỉ đọc một file
+        if (sinceSnapshot > 0) {
+            compact();
+        }
+    }
+
+    private void write(List<byte[]> batch) {
+        int size = 0;
+        for (byte[] record : batch) {
+            size += record.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] record : batch) {
+            buffer.put(record);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            appended.addAndGet(batch.size());
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            log.warn("Cannot append to moderation journal: {}", e.getMessage());
+        }
+    }
+
+    private void force(boolean sync) {
+        if (!sync) {
+            return;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            log.warn("Cannot sync moderation journal: {}", e.getMessage());
+        }
+    }
+
+    // Ghi snapshot.tmp, fsync, đổi tên đè snapshot.bin (atomic) rồi mới cắt journal
+    private void compact() {
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Collection<ModerationEntry> entries = entryState.get();
+            Collection<ModerationReport> reports = reportState.get();
+            writeFully(out, frame(NEXT_REPORT_ID, ByteBuffer.allocate(Long.BYTES).putLong(nextReportId.getAsLong()).array()));
+            writeFully(out, frame(ENTRIES, ModerationService.encode(entries)));
+            writeFully(out, frame(REPORTS, ModerationReport.encode(reports)));
+            out.force(true);
+            Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.truncate(0);
+            channel.force(true);
+            sinceSnapshot = 0;
+            snapshotRecords = entries.size() + reports.size();
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            log.warn("Cannot write moderation snapshot: {}", e.getMessage());
+        }
+    }
+
+    private static void writeFully(FileChannel out, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            Path snapshot = dir.resolve(SNAPSHOT_FILE);
+            if (Files.exists(snapshot)) {
+                replay(snapshot);
+                snapshotRecords = recoveredEntries.size() + recoveredReports.size();
+            }
+            Path journal = dir.resolve(JOURNAL_FILE);
+            channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            long validEnd = replay(journal);
+            sinceSnapshot = replayedRecords;
+            // Bản ghi mới nối tiếp ngay sau bản ghi hợp lệ cuối; đặt vị trí trước khi bỏ phần đuôi ghi dở
+            // để nếu truncate lỗi thì bản ghi mới vẫn không đè lên đầu journal
+            channel.position(validEnd);
+            channel.truncate(validEnd);
+            log.info("Recovered {} moderation entries and {} open reports from {} in {} ms",
+                recoveredEntries.size(), recoveredReports.size(), dir.toAbsolutePath(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.warn("Cannot recover moderation journal from {}: {}", dir.toAbsolutePath(), e.getMessage());
+        }
+    }
+
+    // Phát lại các bản ghi hợp lệ, trả về vị trí ngay sau bản ghi hợp lệ cuối cùng
+    private long replay(Path file) throws IOException {
+        long position = 0;
+        int records = 0;
+        long limit = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (position + HEADER_BYTES <= limit) {
+                int length = in.readInt();
+                if (length < 0 || length > limit - position - HEADER_BYTES) {
+                    break;
+                }
+                int crc = in.readInt();
+                byte type = in.readByte();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (crc != checksum(type, payload) || !apply(type, payload)) {
+                    break;
+                }
+                position += HEADER_BYTES + length;
+                records++;
+            }
+        } catch (EOFException e) {
+            // File ngắn hơn lúc bắt đầu đọc: dừng ở bản ghi trọn vẹn cuối
+        }
+        replayedRecords = records;
+        return position;
+    }
+
+    private boolean apply(byte type, byte[] payload) {
+        try {
+            switch (type) {
+                case ENTRIES -> recoveredEntries.addAll(ModerationService.decode(payload));
+                case REPORTS -> {
+                    for (ModerationReport report : ModerationReport.decode(payload)) {
+                        recoveredReports.put(report.getId(), report);
+                        recoveredNextReportId = Math.max(recoveredNextReportId, report.getId() + 1);
+                    }
+                }
+                case RESOLVE -> recoveredReports.remove(ByteBuffer.wrap(payload).getLong());
+                case NEXT_REPORT_ID -> recoveredNextReportId = Math.max(recoveredNextReportId,
+                    ByteBuffer.wrap(payload).getLong());
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Corrupt moderation journal record of type {}: {}", type, e.getMessage());
+            return false;
+        }
+    }
+
+    private static byte[] frame(byte type, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt(checksum(type, payload)).put(type).put(payload);
+        return buffer.array();
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled || channel == null) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close moderation journal: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public long getAppendedCount() { return appended.get(); }
+    public long getWriteErrorCount() { return writeErrors.get(); }
+    public int getQueueDepth() { return queue.size(); }
+}
@@ -0,0 +1,9 @@
+package com.example.demo.moderation;
+
+// Nhận thay đổi trạng thái kiểm duyệt đã áp dụng trên node này: lệnh local, bản ghi từ node khác,
+// hoặc mute hết hạn. Có thể chạy trên thread bot, thread RoomBus hay thread timer wheel nên phải ngắn
+public interface ModerationListener {
+
+    // previous null nếu user chưa từng có bản ghi
+    void onChange(ModerationEntry previous, ModerationEntry current);
+}
@@ -0,0 +1,80 @@
+package com.example.demo.moderation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Một báo cáo /report đang chờ moderator xử lý; id tăng dần theo thứ tự gửi trên node này
+public final class ModerationReport {
+
+    private final long id;
+    private final String reporter;
+    private final String reportedUser;
+    private final String reason;
+    private final String room;
+    private final long createdMillis;
+
+    public ModerationReport(long id, String reporter, String reportedUser, String reason, String room,
+                            long createdMillis) {
+        this.id = id;
+        this.reporter = reporter;
+        this.reportedUser = reportedUser;
+        this.reason = reason;
+        this.room = room;
+        this.createdMillis = createdMillis;
+    }
+
+    public long getId() { return id; }
+    public String getReporter() { return reporter; }
+    public String getReportedUser() { return reportedUser; }
+    public String getReason() { return reason; }
+    public String getRoom() { return room; }
+    public long getCreatedMillis() { return createdMillis; }
+
+    // int số báo cáo, mỗi báo cáo: long id, utf reporter, utf reported, utf reason, utf room ("" = null), long created
+    static byte[] encode(Collection<ModerationReport> batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * batch.size() + 4);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(batch.size());
+            for (ModerationReport report : batch) {
+                out.writeLong(report.id);
+                out.writeUTF(report.reporter);
+                out.writeUTF(report.reportedUser);
+                out.writeUTF(report.reason);
+                out.writeUTF(report.room != null ? report.room : "");
+                out.writeLong(report.createdMillis);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<ModerationReport> decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        List<ModerationReport> batch = new ArrayList<>(Math.min(count, 1 << 16));
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            String reporter = in.readUTF();
+            String reportedUser = in.readUTF();
+            String reason = in.readUTF();
+            String room = in.readUTF();
+            batch.add(new ModerationReport(id, reporter, reportedUser, reason, room.isEmpty() ? null : room,
+                in.readLong()));
+        }
+        return batch;
+    }
+
+    @Override
+    public String toString() {
+        return "ModerationReport{#" + id + " " + reporter + " -> " + reportedUser + "}";
+    }
+}
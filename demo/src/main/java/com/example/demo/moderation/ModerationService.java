@@ -1,90 +1,156 @@
 package com.example.demo.moderation;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import com.example.demo.cluster.RoomBus;
+import com.example.demo.timer.TimerWheel;
+import org.springframework.stereotype.Component;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+// Trạng thái mute/ban dùng chung cho cả ứng dụng (một bean) và nhân bản sang mọi node qua RoomBus.
+// Mỗi node giữ bản sao đầy đủ trong một ConcurrentHashMap: kiểm tra trên đường gửi tin nhắn là
+// một lần get không khóa trả về ModerationStatus, không đọc đồng hồ. Mute hết hạn được timer wheel
+// chuyển về ACTIVE đúng lúc (trễ tối đa một tick) thay vì so thời gian ở mỗi lần tra.
+// Thay đổi được áp dụng local rồi phát cho các node khác; node kết nối sau nhận snapshot.
+// Gộp theo version (last-writer-wins) nên nhận trùng hay sai thứ tự đều không sao.
+// Bản ghi được lưu qua ModerationJournal và nạp lại khi khởi động, trước khi trao snapshot với node khác.
+@Component
 public class ModerationService {
-    
-    // Lưu trữ thông tin user bị mute
-    private Map<String, MuteInfo> mutedUsers = new ConcurrentHashMap<>();
-    // Lưu trữ user bị ban vĩnh viễn
-    private Map<String, BanInfo> bannedUsers = new ConcurrentHashMap<>();
-    
+
+    // Topic trên kênh sự kiện của RoomBus
+    static final String TOPIC = "moderation";
+
+    // Epoch nanos = nanoTime (đơn điệu, không cấp phát như Instant.now()) neo vào giờ hệ thống lúc khởi động
+    private static final long EPOCH_OFFSET_NANOS = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private final RoomBus roomBus;
+    private final TimerWheel timer;
+    private final String nodeId;
+    private final List<ModerationListener> listeners = new CopyOnWriteArrayList<>();
+
+    // username -> bản ghi mới nhất (kể cả bia mộ ACTIVE sau unmute/unban)
+    private final Map<String, ModerationEntry> entries;
+
+    // Đồng hồ Lamport: lớn hơn mọi version đã thấy, kể cả từ node khác
+    private final AtomicLong clock = new AtomicLong();
+
+    public ModerationService(RoomBus roomBus, TimerWheel timer, ModerationJournal journal) {
+        this.roomBus = roomBus;
+        this.timer = timer;
+        this.nodeId = roomBus.nodeId();
+        // Đặt sẵn dung lượng theo số bản ghi phát lại để danh sách ban lớn không phải rehash nhiều lần
+        List<ModerationEntry> recovered = journal.recoveredEntries();
+        this.entries = new ConcurrentHashMap<>(Math.max(16, recovered.size()));
+        restore(recovered);
+        journal.attachEntries(this::liveEntries);
+        addListener(journal);
+        roomBus.subscribeEvents(TOPIC, new RoomBus.EventHandler() {
+            @Override
+            public void onEvent(byte[] payload) {
+                decode(payload).forEach(ModerationService.this::apply);
+            }
+
+            @Override
+            public byte[] snapshot() {
+                return encodeSnapshot();
+            }
+        });
+    }
+
+    static long epochNanos() {
+        return EPOCH_OFFSET_NANOS + System.nanoTime();
+    }
+
+    public void addListener(ModerationListener listener) {
+        listeners.add(listener);
+    }
+
+    // Đường nóng: gọi cho mọi tin nhắn
+    public ModerationStatus statusOf(String username) {
+        ModerationEntry entry = entries.get(username);
+        return entry == null ? ModerationStatus.ACTIVE : entry.getStatus();
+    }
+
     // Kiểm tra user có bị mute không
     public boolean isMuted(String username) {
-        MuteInfo muteInfo = mutedUsers.get(username);
-        if (muteInfo == null) return false;
-        
-        if (muteInfo.isExpired()) {
-            mutedUsers.remove(username);
-            return false;
-        }
-        return true;
+        return statusOf(username) == ModerationStatus.MUTED;
     }
-    
+
     // Kiểm tra user có bị ban không
     public boolean isBanned(String username) {
-        return bannedUsers.containsKey(username);
+        return statusOf(username) == ModerationStatus.BANNED;
     }
-    
+
     // Mute user trong thời gian nhất định
     public MuteResult muteUser(String username, int minutes, String reason, String moderator) {
+        if (minutes <= 0) {
+            return new MuteResult(false, "Thời gian tắt tiếng phải lớn hơn 0 phút");
+        }
         if (isBanned(username)) {
             return new MuteResult(false, "User đã bị ban vĩnh viễn");
         }
-        
-        LocalDateTime expiryTime = LocalDateTime.now().plusMinutes(minutes);
-        MuteInfo muteInfo = new MuteInfo(username, reason, moderator, expiryTime);
-        mutedUsers.put(username, muteInfo);
-        
+
+        // Cộng bão hòa: thời hạn quá xa thì giữ ở Long.MAX_VALUE thay vì tràn số thành mute đã hết hạn
+        long now = epochNanos();
+        long duration = TimeUnit.MINUTES.toNanos(minutes);
+        long until = duration > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + duration;
+        write(username, ModerationStatus.MUTED, reason, moderator, now, until);
+
         return new MuteResult(true, String.format("User @%s đã bị tắt tiếng %d phút", username, minutes));
     }
-    
-    // Ban user vĩnh viễn
+
+    // Ban user vĩnh viễn (thay luôn cho mute nếu có)
     public BanResult banUser(String username, String reason, String moderator) {
-        BanInfo banInfo = new BanInfo(username, reason, moderator, LocalDateTime.now());
-        bannedUsers.put(username, banInfo);
-        
-        // Remove từ mute list nếu có
-        mutedUsers.remove(username);
-        
+        write(username, ModerationStatus.BANNED, reason, moderator, epochNanos(), 0);
+
         return new BanResult(true, String.format("User @%s đã bị cấm chat vĩnh viễn", username));
     }
-    
+
     // Unmute user
     public boolean unmuteUser(String username) {
-        return mutedUsers.remove(username) != null;
+        if (!isMuted(username)) {
+            return false;
+        }
+        write(username, ModerationStatus.ACTIVE, null, null, epochNanos(), 0);
+        return true;
     }
-    
+
     // Unban user
     public boolean unbanUser(String username) {
-        return bannedUsers.remove(username) != null;
-    }
-    
-    // Lấy thông tin mute
-    public MuteInfo getMuteInfo(String username) {
-        return mutedUsers.get(username);
+        if (!isBanned(username)) {
+            return false;
+        }
+        write(username, ModerationStatus.ACTIVE, null, null, epochNanos(), 0);
+        return true;
     }
-    
-    // Lấy thông tin ban
-    public BanInfo getBanInfo(String username) {
-        return bannedUsers.get(username);
+
+    // Bản ghi mute/ban đang có hiệu lực, null nếu user không bị hạn chế
+    public ModerationEntry getEntry(String username) {
+        ModerationEntry entry = entries.get(username);
+        return entry != null && entry.getStatus() != ModerationStatus.ACTIVE ? entry : null;
     }
-    
-    // Lấy thời gian còn lại của mute
+
+    // Lấy thời gian còn lại của mute (làm tròn lên phút)
     public String getRemainingMuteTime(String username) {
-        MuteInfo muteInfo = mutedUsers.get(username);
-        if (muteInfo == null || muteInfo.isExpired()) {
+        ModerationEntry entry = entries.get(username);
+        if (entry == null || entry.getStatus() != ModerationStatus.MUTED) {
             return null;
         }
-        
-        long minutesLeft = java.time.Duration.between(LocalDateTime.now(), muteInfo.expiryTime).toMinutes();
-        if (minutesLeft <= 0) {
-            mutedUsers.remove(username);
+
+        long nanosLeft = entry.getUntilNanos() - epochNanos();
+        if (nanosLeft <= 0) {
             return null;
         }
-        
+        long minutesLeft = (nanosLeft + TimeUnit.MINUTES.toNanos(1) - 1) / TimeUnit.MINUTES.toNanos(1);
+
         if (minutesLeft < 60) {
             return minutesLeft + " phút";
         } else {
@@ -93,56 +159,190 @@ public class ModerationService {
             return hours + " giờ " + mins + " phút";
         }
     }
-    
-    // Inner classes
-    public static class MuteInfo {
-        public String username;
-        public String reason;
-        public String moderator;
-        public LocalDateTime muteTime;
-        public LocalDateTime expiryTime;
-        
-        public MuteInfo(String username, String reason, String moderator, LocalDateTime expiryTime) {
-            this.username = username;
-            this.reason = reason;
-            this.moderator = moderator;
-            this.muteTime = LocalDateTime.now();
-            this.expiryTime = expiryTime;
-        }
-        
-        public boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiryTime);
-        }
-    }
-    
-    public static class BanInfo {
-        public String username;
-        public String reason;
-        public String moderator;
-        public LocalDateTime banTime;
-        
-        public BanInfo(String username, String reason, String moderator, LocalDateTime banTime) {
-            this.username = username;
-            this.reason = reason;
-            this.moderator = moderator;
-            this.banTime = banTime;
-        }
-    }
-    
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    // Thay đổi từ node này: version mới lớn hơn mọi version đã thấy nên luôn thắng bản ghi hiện tại
+    private void write(String username, ModerationStatus status, String reason, String moderator,
+                       long sinceNanos, long untilNanos) {
+        ModerationEntry entry = new ModerationEntry(username, status, reason, moderator,
+            sinceNanos, untilNanos, clock.incrementAndGet(), nodeId);
+        apply(entry);
+        roomBus.publishEvent(TOPIC, encode(List.of(entry)));
+    }
+
+    // Gộp một bản ghi (local hoặc từ node khác): chỉ thay khi mới hơn bản ghi đang có.
+    // Mute đã quá hạn (từ snapshot/sự kiện đến muộn) được ghi luôn dưới dạng đã hết hạn
+    private void apply(ModerationEntry incoming) {
+        clock.accumulateAndGet(incoming.getVersion(), Math::max);
+        long delay = incoming.getStatus() == ModerationStatus.MUTED ? incoming.getUntilNanos() - epochNanos() : 0;
+        ModerationEntry entry = incoming.getStatus() == ModerationStatus.MUTED && delay <= 0 ? incoming.expired() : incoming;
+
+        ModerationEntry[] previous = new ModerationEntry[1];
+        ModerationEntry result = entries.compute(entry.getUsername(), (username, current) -> {
+            previous[0] = current;
+            return entry.supersedes(current) ? entry : current;
+        });
+        if (result != entry) {
+            return;
+        }
+        cancelExpiry(previous[0]);
+        if (entry.getStatus() == ModerationStatus.MUTED) {
+            entry.expiry = timer.schedule(() -> expire(entry), delay, TimeUnit.NANOSECONDS);
+        }
+        notifyListeners(previous[0], entry);
+    }
+
+    // Nạp lại từ journal lúc khởi động: chưa có listener hay thread nào khác nên chỉ get/put,
+    // đồng hồ Lamport cập nhật một lần, và chỉ hẹn giờ cho mute còn thắng sau khi nạp hết
+    private void restore(List<ModerationEntry> recovered) {
+        long now = epochNanos();
+        long maxVersion = 0;
+        List<ModerationEntry> mutes = new ArrayList<>();
+        for (ModerationEntry entry : recovered) {
+            maxVersion = Math.max(maxVersion, entry.getVersion());
+            if (entry.getStatus() == ModerationStatus.MUTED) {
+                if (entry.getUntilNanos() <= now) {
+                    entry = entry.expired();
+                } else {
+                    mutes.add(entry);
+                }
+            }
+            if (entry.supersedes(entries.get(entry.getUsername()))) {
+                entries.put(entry.getUsername(), entry);
+            }
+        }
+        clock.set(maxVersion);
+        for (ModerationEntry mute : mutes) {
+            if (entries.get(mute.getUsername()) == mute) {
+                mute.expiry = timer.schedule(() -> expire(mute), mute.getUntilNanos() - now, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    // Trên thread timer wheel: chỉ đổi bản ghi nếu mute này vẫn là bản ghi hiện tại
+    private void expire(ModerationEntry muted) {
+        ModerationEntry expired = muted.expired();
+        if (entries.replace(muted.getUsername(), muted, expired)) {
+            notifyListeners(muted, expired);
+        }
+    }
+
+    private static void cancelExpiry(ModerationEntry entry) {
+        TimerWheel.Timeout expiry = entry != null ? entry.expiry : null;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+    }
+
+    private void notifyListeners(ModerationEntry previous, ModerationEntry current) {
+        for (ModerationListener listener : listeners) {
+            listener.onChange(previous, current);
+        }
+    }
+
+    // Mute đã hết hạn không cần gửi/lưu; bia mộ vẫn giữ để chặn bản ghi cũ ở node khác
+    private Collection<ModerationEntry> liveEntries() {
+        long now = epochNanos();
+        List<ModerationEntry> live = new ArrayList<>(entries.size());
+        for (ModerationEntry entry : entries.values()) {
+            if (entry.getStatus() != ModerationStatus.MUTED || entry.isInEffect(now)) {
+                live.add(entry);
+            }
+        }
+        return live;
+    }
+
+    private byte[] encodeSnapshot() {
+        Collection<ModerationEntry> live = liveEntries();
+        return live.isEmpty() ? null : encode(live);
+    }
+
+    // int số bản ghi, mỗi bản ghi: str username, byte status, long version, str origin,
+    // str reason, str moderator ("" = null), long since, long until; str = [int độ dài][UTF-8].
+    // Không dùng writeUTF/readUTF: giải mã từng ký tự rất chậm khi nạp lại danh sách ban lớn lúc khởi động
+    static byte[] encode(Collection<ModerationEntry> batch) {
+        List<byte[]> strings = new ArrayList<>(batch.size() * 4);
+        int size = Integer.BYTES;
+        for (ModerationEntry entry : batch) {
+            size += 1 + 3 * Long.BYTES;
+            size += addString(strings, entry.getUsername());
+            size += addString(strings, entry.getOrigin());
+            size += addString(strings, entry.getReason());
+            size += addString(strings, entry.getModerator());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(batch.size());
+        int next = 0;
+        for (ModerationEntry entry : batch) {
+            putString(buffer, strings.get(next++));
+            buffer.put((byte) entry.getStatus().ordinal());
+            buffer.putLong(entry.getVersion());
+            putString(buffer, strings.get(next++));
+            putString(buffer, strings.get(next++));
+            putString(buffer, strings.get(next++));
+            buffer.putLong(entry.getSinceNanos());
+            buffer.putLong(entry.getUntilNanos());
+        }
+        return buffer.array();
+    }
+
+    static List<ModerationEntry> decode(byte[] payload) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            int count = buffer.getInt();
+            List<ModerationEntry> batch = new ArrayList<>(Math.min(count, payload.length / 41));
+            ModerationStatus[] statuses = ModerationStatus.values();
+            for (int i = 0; i < count; i++) {
+                String username = getString(buffer);
+                ModerationStatus status = statuses[buffer.get()];
+                long version = buffer.getLong();
+                String origin = getString(buffer);
+                String reason = getString(buffer);
+                String moderator = getString(buffer);
+                batch.add(new ModerationEntry(username, status, reason.isEmpty() ? null : reason,
+                    moderator.isEmpty() ? null : moderator, buffer.getLong(), buffer.getLong(), version, origin));
+            }
+            return batch;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // Payload hỏng: bỏ qua, snapshot lần kết nối sau sẽ bù lại
+            return List.of();
+        }
+    }
+
+    private static int addString(List<byte[]> strings, String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        strings.add(bytes);
+        return Integer.BYTES + bytes.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
     public static class MuteResult {
         public boolean success;
         public String message;
-        
+
         public MuteResult(boolean success, String message) {
             this.success = success;
             this.message = message;
         }
     }
-    
+
     public static class BanResult {
         public boolean success;
         public String message;
-        
+
         public BanResult(boolean success, String message) {
             this.success = success;
             this.message = message;
@@ -0,0 +1,9 @@
+package com.example.demo.moderation;
+
+// Trạng thái kiểm duyệt của một user
+public enum ModerationStatus {
+    // Không bị hạn chế; cũng dùng làm "bia mộ" khi unmute/unban để bản ghi cũ hơn không sống lại
+    ACTIVE,
+    MUTED,
+    BANNED
+}
@@ -0,0 +1,125 @@
+package com.example.demo.moderation;
+
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hàng đợi báo cáo /report chờ moderator xử lý, lưu qua ModerationJournal.
+// Phân trang theo con trỏ (id cuối của trang trước): mỗi trang là một lần tailMap/tailSet trên
+// skip list, O(log n + trang) dù hàng đợi dài bao nhiêu, không quét từ đầu.
+// Báo cáo chỉ nằm trên node nhận /report, không nhân bản qua RoomBus.
+@Component
+public class ReportQueue {
+
+    private final ModerationJournal journal;
+    private final AtomicLong nextId;
+
+    // id -> báo cáo đang mở, theo thứ tự gửi
+    private final ConcurrentSkipListMap<Long, ModerationReport> open = new ConcurrentSkipListMap<>();
+
+    // user bị báo cáo -> id các báo cáo đang mở về user đó
+    private final Map<String, UserReports> byUser = new ConcurrentHashMap<>();
+
+    // size() của skip list phải đếm từng phần tử nên giữ bộ đếm riêng
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    public ReportQueue(ModerationJournal journal) {
+        this.journal = journal;
+        for (ModerationReport report : journal.recoveredReports()) {
+            index(report);
+        }
+        this.nextId = new AtomicLong(journal.recoveredNextReportId());
+        journal.attachReports(open::values, nextId::get);
+    }
+
+    public ModerationReport submit(String reporter, String reportedUser, String reason, String room) {
+        ModerationReport report = new ModerationReport(nextId.getAndIncrement(), reporter, reportedUser, reason,
+            room, System.currentTimeMillis());
+        index(report);
+        journal.reportSubmitted(report);
+        return report;
+    }
+
+    // Đánh dấu đã xử lý: bỏ khỏi hàng đợi, null nếu không có báo cáo đang mở với id này
+    public ModerationReport resolve(long id) {
+        ModerationReport report = open.remove(id);
+        if (report == null) {
+            return null;
+        }
+        openCount.decrementAndGet();
+        byUser.computeIfPresent(report.getReportedUser(), (user, reports) -> {
+            if (reports.ids.remove(id)) {
+                reports.count.decrementAndGet();
+            }
+            return reports.ids.isEmpty() ? null : reports;
+        });
+        journal.reportResolved(id);
+        return report;
+    }
+
+    // Tối đa limit báo cáo đang mở có id > afterId, cũ nhất trước
+    public List<ModerationReport> page(long afterId, int limit) {
+        List<ModerationReport> page = new ArrayList<>(limit);
+        for (ModerationReport report : open.tailMap(afterId, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(report);
+        }
+        return page;
+    }
+
+    // Như page nhưng chỉ các báo cáo về một user, qua index theo user
+    public List<ModerationReport> pageFor(String reportedUser, long afterId, int limit) {
+        UserReports reports = byUser.get(reportedUser);
+        List<ModerationReport> page = new ArrayList<>(limit);
+        if (reports == null) {
+            return page;
+        }
+        for (Long id : reports.ids.tailSet(afterId, false)) {
+            if (page.size() == limit) {
+                break;
+            }
+            ModerationReport report = open.get(id);
+            if (report != null) {
+                page.add(report);
+            }
+        }
+        return page;
+    }
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public int getOpenCountFor(String reportedUser) {
+        UserReports reports = byUser.get(reportedUser);
+        return reports == null ? 0 : reports.count.get();
+    }
+
+    private void index(ModerationReport report) {
+        if (open.put(report.getId(), report) == null) {
+            openCount.incrementAndGet();
+        }
+        byUser.compute(report.getReportedUser(), (user, reports) -> {
+            UserReports entry = reports != null ? reports : new UserReports();
+            if (entry.ids.add(report.getId())) {
+                entry.count.incrementAndGet();
+            }
+            return entry;
+        });
+    }
+
+    // Id các báo cáo đang mở về một user, kèm bộ đếm như openCount; chỉ sửa bên trong compute của byUser
+    private static final class UserReports {
+        final NavigableSet<Long> ids = new ConcurrentSkipListSet<>();
+        final AtomicInteger count = new AtomicInteger();
+    }
+}
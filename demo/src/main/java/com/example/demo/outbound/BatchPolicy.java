@@ -0,0 +1,28 @@
+package com.example.demo.outbound;
+
+// Cấu hình gộp frame cho session đã đăng ký nhận theo lô (?batch=1 khi handshake).
+// Các tin nhắn JSON đến cùng một session trong lingerMillis (hoặc tới maxMessages / maxBytes)
+// được gửi thành một frame mảng JSON: [{...},{...}]
+public final class BatchPolicy {
+
+    // Không gộp: mỗi tin nhắn một frame như trước
+    public static final BatchPolicy NONE = new BatchPolicy(0, 1, 0);
+
+    private final long lingerMillis;
+    private final int maxMessages;
+    private final int maxBytes;
+
+    public BatchPolicy(long lingerMillis, int maxMessages, int maxBytes) {
+        this.lingerMillis = Math.max(0, lingerMillis);
+        this.maxMessages = Math.max(1, maxMessages);
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxMessages > 1;
+    }
+
+    public long getLingerMillis() { return lingerMillis; }
+    public int getMaxMessages() { return maxMessages; }
+    public int getMaxBytes() { return maxBytes; }
+}
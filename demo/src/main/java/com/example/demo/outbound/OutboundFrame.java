@@ -0,0 +1,56 @@
+package com.example.demo.outbound;
+
+import com.example.demo.ChatMessage;
+import com.example.demo.codec.ChatMessageBinaryCodec;
+import com.example.demo.codec.ChatMessageCodec;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import java.nio.ByteBuffer;
+
+// Một ChatMessage đã encode, dùng chung cho mọi người nhận của một lần broadcast.
+// Bản JSON luôn có sẵn; bản nhị phân chỉ được encode (một lần) khi gặp session đầu tiên
+// xin ?encoding=binary, nên phòng toàn client JSON không tốn thêm gì.
+public final class OutboundFrame {
+
+    private static final ChatMessageCodec JSON = new ChatMessageCodec();
+    private static final ChatMessageBinaryCodec BINARY = new ChatMessageBinaryCodec();
+
+    private final TextMessage text;
+    private final ChatMessage message;
+
+    // Race khi khởi tạo lười chỉ làm encode hai lần, kết quả như nhau
+    private volatile byte[] binary;
+
+    private OutboundFrame(TextMessage text, ChatMessage message) {
+        this.text = text;
+        this.message = message;
+    }
+
+    public static OutboundFrame of(TextMessage text, ChatMessage message) {
+        return new OutboundFrame(text, message);
+    }
+
+    // Frame JSON lấy từ lịch sử/chat log: bản nhị phân được dựng bằng cách decode lại JSON
+    public static OutboundFrame of(TextMessage text) {
+        return new OutboundFrame(text, null);
+    }
+
+    public TextMessage text() {
+        return text;
+    }
+
+    // BinaryMessage mới mỗi lần vì container đọc dịch position của ByteBuffer; mảng byte dùng chung.
+    // null nếu frame không phải ChatMessage (không thể mã hóa nhị phân)
+    public BinaryMessage binary() {
+        byte[] payload = binary;
+        if (payload == null) {
+            ChatMessage source = message != null ? message : JSON.decode(text.getPayload());
+            if (source == null) {
+                return null;
+            }
+            payload = BINARY.encode(source);
+            binary = payload;
+        }
+        return new BinaryMessage(ByteBuffer.wrap(payload));
+    }
+}
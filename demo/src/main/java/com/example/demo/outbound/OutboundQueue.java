@@ -0,0 +1,260 @@
+package com.example.demo.outbound;
+
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hàng đợi gửi riêng cho từng session: broadcast chỉ enqueue rồi return,
+// một writer trên executor dùng chung sẽ lấy tin nhắn ra và gửi tuần tự.
+// Session nhận theo lô: writer chờ thêm lingerMillis rồi gộp các tin nhắn JSON đang chờ
+// thành một frame mảng, nên một lần sendMessage thay cho nhiều lần
+public class OutboundQueue {
+
+    private final WebSocketSession session;
+    private final Executor writer;
+    private final ScheduledExecutorService flusher;
+    private final BatchPolicy batch;
+    private final boolean binary;
+    private final long sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy overflowPolicy;
+    private final ChatMetrics metrics;
+    private final ChatEventLog eventLog;
+
+    // Các field dưới đây được bảo vệ bởi lock của buffer
+    private final Deque<WebSocketMessage<?>> buffer = new ArrayDeque<>();
+    private int bufferSize;
+    private boolean draining;
+    private Future<?> lingerTask;
+
+    // Thời điểm bắt đầu lần gửi hiện tại (0 = không gửi)
+    private volatile long sendStartTime;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public OutboundQueue(WebSocketSession session, Executor writer, ScheduledExecutorService flusher,
+                         long sendTimeLimitMillis, int bufferSizeLimit, OverflowPolicy overflowPolicy,
+                         BatchPolicy batch, boolean binary, ChatMetrics metrics, ChatEventLog eventLog) {
+        this.session = session;
+        this.writer = writer;
+        this.flusher = flusher;
+        this.batch = batch;
+        this.binary = binary;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+    }
+
+    // Đưa tin nhắn vào hàng đợi, trả về false nếu session đã đóng hoặc bị ngắt vì quá chậm
+    public boolean enqueue(WebSocketMessage<?> message) {
+        if (closed.get()) {
+            return false;
+        }
+
+        boolean slowConsumer = false;
+        boolean startWriter = false;
+
+        synchronized (buffer) {
+            long started = sendStartTime;
+            if (draining && started > 0 && System.currentTimeMillis() - started > sendTimeLimitMillis) {
+                // Lần gửi hiện tại bị kẹt quá lâu
+                slowConsumer = true;
+            } else {
+                buffer.addLast(message);
+                bufferSize += message.getPayloadLength();
+
+                while (bufferSize > bufferSizeLimit && !buffer.isEmpty()) {
+                    if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                        slowConsumer = true;
+                        break;
+                    }
+                    WebSocketMessage<?> dropped = buffer.pollFirst();
+                    bufferSize -= dropped.getPayloadLength();
+                    droppedCount.incrementAndGet();
+                    metrics.outboundDropped();
+                }
+
+                if (!slowConsumer && !draining) {
+                    draining = true;
+                    if (batch.isEnabled() && batch.getLingerMillis() > 0) {
+                        // Chờ gom thêm tin nhắn trước khi gửi
+                        lingerTask = flusher.schedule(() -> writer.execute(this::drain),
+                            batch.getLingerMillis(), TimeUnit.MILLISECONDS);
+                    } else {
+                        startWriter = true;
+                    }
+                } else if (lingerTask != null && buffer.size() >= batch.getMaxMessages()) {
+                    // Đủ một lô thì gửi ngay, không chờ hết cửa sổ; nếu task đã chạy thì nó sẽ drain
+                    startWriter = lingerTask.cancel(false);
+                    lingerTask = null;
+                }
+            }
+        }
+
+        if (slowConsumer) {
+            // Người gọi là fan-out đang giữ lock của phòng, còn lần gửi của session này đang kẹt:
+            // session.close() phải chờ gửi close frame nên không được chạy trên thread này
+            closeAsync(CloseStatus.SESSION_NOT_RELIABLE);
+            return false;
+        }
+        if (startWriter) {
+            writer.execute(this::drain);
+        }
+        return true;
+    }
+
+    // Chạy trên writer thread: gửi lần lượt cho đến khi hàng đợi rỗng
+    private void drain() {
+        List<WebSocketMessage<?>> pending = batch.isEnabled() ? new ArrayList<>() : null;
+        while (true) {
+            WebSocketMessage<?> next;
+            synchronized (buffer) {
+                lingerTask = null;
+                next = closed.get() ? null : buffer.pollFirst();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+                bufferSize -= next.getPayloadLength();
+                if (pending != null && isBatchable(next)) {
+                    // Lấy thêm các tin nhắn JSON liền sau, trong giới hạn số lượng và byte của lô
+                    pending.add(next);
+                    int bytes = next.getPayloadLength();
+                    while (pending.size() < batch.getMaxMessages() && isBatchable(buffer.peekFirst())
+                            && bytes + buffer.peekFirst().getPayloadLength() <= batch.getMaxBytes()) {
+                        WebSocketMessage<?> more = buffer.pollFirst();
+                        bufferSize -= more.getPayloadLength();
+                        bytes += more.getPayloadLength();
+                        pending.add(more);
+                    }
+                }
+            }
+            if (pending != null && pending.size() > 1) {
+                metrics.outboundBatch(pending.size());
+                next = toArrayFrame(pending);
+            }
+            if (pending != null) {
+                pending.clear();
+            }
+
+            if (!session.isOpen()) {
+                close(CloseStatus.SESSION_NOT_RELIABLE);
+                continue;
+            }
+
+            try {
+                sendStartTime = System.currentTimeMillis();
+                session.sendMessage(next);
+            } catch (IOException | RuntimeException e) {
+                metrics.writeFailed();
+                eventLog.sendFailed(session, e);
+                close(CloseStatus.SESSION_NOT_RELIABLE);
+            } finally {
+                sendStartTime = 0;
+            }
+        }
+    }
+
+    // Chỉ gộp tin nhắn JSON object; ping, "pong" và frame khác gửi riêng như cũ
+    private static boolean isBatchable(WebSocketMessage<?> message) {
+        return message instanceof TextMessage text
+            && text.getPayloadLength() > 0
+            && text.getPayload().charAt(0) == '{';
+    }
+
+    // [frame1,frame2,...] ghép thẳng từ các payload đã encode sẵn, không serialize lại
+    private static TextMessage toArrayFrame(List<WebSocketMessage<?>> frames) {
+        byte[][] payloads = new byte[frames.size()][];
+        int size = frames.size() + 1;
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = ((TextMessage) frames.get(i)).asBytes();
+            size += payloads[i].length;
+        }
+        byte[] out = new byte[size];
+        int pos = 0;
+        out[pos++] = '[';
+        for (byte[] payload : payloads) {
+            if (pos > 1) {
+                out[pos++] = ',';
+            }
+            System.arraycopy(payload, 0, out, pos, payload.length);
+            pos += payload.length;
+        }
+        out[pos] = ']';
+        return new TextMessage(out);
+    }
+
+    // Đóng hàng đợi và session; afterConnectionClosed sẽ dọn dẹp phòng
+    public void close(CloseStatus status) {
+        if (markClosed()) {
+            closeSession(status);
+        }
+    }
+
+    // Như close nhưng đóng session trên writer thread: dùng khi người gọi không được chặn
+    // (timer wheel, fan-out đang giữ lock của phòng). Hàng đợi đóng ngay nên fan-out kế tiếp đã bỏ session khỏi phòng
+    public void closeAsync(CloseStatus status) {
+        if (markClosed()) {
+            writer.execute(() -> closeSession(status));
+        }
+    }
+
+    // Chỉ một thread thắng CAS và đóng session, các lần gọi sau không làm gì
+    private boolean markClosed() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (buffer) {
+            buffer.clear();
+            bufferSize = 0;
+        }
+        return true;
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (IOException e) {
+            // Session đã hỏng, không cần làm gì thêm
+        }
+    }
+
+    // Đánh dấu đã đóng mà không đóng session (khi container đã đóng sẵn)
+    void discard() {
+        closed.set(true);
+        synchronized (buffer) {
+            buffer.clear();
+            bufferSize = 0;
+        }
+    }
+
+    public WebSocketSession getSession() { return session; }
+    public boolean isBinary() { return binary; }
+    public boolean isClosed() { return closed.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+
+    public int getBufferSize() {
+        synchronized (buffer) {
+            return bufferSize;
+        }
+    }
+}
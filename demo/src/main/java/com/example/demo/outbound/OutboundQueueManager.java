@@ -0,0 +1,132 @@
+package com.example.demo.outbound;
+
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.metrics.ChatMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Quản lý hàng đợi gửi của tất cả session và pool writer dùng chung
+@Component
+public class OutboundQueueManager {
+
+    private final Map<String, OutboundQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+    
+    // Hẹn giờ cửa sổ gom lô; task chỉ chuyển việc sang writer
+    private final ScheduledExecutorService flusher;
+
+    private final long sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy overflowPolicy;
+    private final BatchPolicy batchPolicy;
+    private final ChatMetrics metrics;
+    private final ChatEventLog eventLog;
+
+    public OutboundQueueManager(@Value("${chat.outbound.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+                                @Value("${chat.outbound.buffer-size-limit:524288}") int bufferSizeLimit,
+                                @Value("${chat.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                @Value("${chat.outbound.batch.window-ms:15}") long batchWindowMillis,
+                                @Value("${chat.outbound.batch.max-messages:32}") int batchMaxMessages,
+                                @Value("${chat.outbound.batch.max-bytes:65536}") int batchMaxBytes,
+                                ChatMetrics metrics,
+                                ChatEventLog eventLog) {
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.overflowPolicy = overflowPolicy;
+        this.batchPolicy = new BatchPolicy(batchWindowMillis, batchMaxMessages, batchMaxBytes);
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+
+        // Cached pool: một client chậm chỉ giữ một writer thread, không chặn các session khác
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "chat-writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-batch-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public OutboundQueue register(WebSocketSession session) {
+        return register(session, false, false);
+    }
+
+    // batched = true: client đã xin nhận theo lô (frame mảng JSON)
+    // binary = true: client đã xin ChatMessage dạng nhị phân (ChatMessageBinaryCodec)
+    public OutboundQueue register(WebSocketSession session, boolean batched, boolean binary) {
+        BatchPolicy batch = batched ? batchPolicy : BatchPolicy.NONE;
+        return queues.computeIfAbsent(session.getId(), id ->
+            new OutboundQueue(session, writers, flusher, sendTimeLimitMillis, bufferSizeLimit, overflowPolicy,
+                batch, binary, metrics, eventLog));
+    }
+
+    public void unregister(WebSocketSession session) {
+        OutboundQueue queue = queues.remove(session.getId());
+        if (queue != null) {
+            queue.discard();
+        }
+    }
+
+    // Gửi bất đồng bộ: chỉ enqueue rồi return ngay
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        OutboundQueue queue = queues.get(session.getId());
+        if (queue == null || !queue.enqueue(message)) {
+            metrics.enqueueFailed();
+            return false;
+        }
+        metrics.outbound();
+        return true;
+    }
+
+    // Ngắt session mà không chặn thread gọi
+    public void closeAsync(WebSocketSession session, CloseStatus status) {
+        OutboundQueue queue = queues.get(session.getId());
+        if (queue != null) {
+            queue.closeAsync(status);
+        }
+    }
+
+    // Gửi ChatMessage theo encoding mà session đã chọn khi handshake
+    public boolean send(WebSocketSession session, OutboundFrame frame) {
+        OutboundQueue queue = queues.get(session.getId());
+        WebSocketMessage<?> message = null;
+        if (queue != null) {
+            message = queue.isBinary() ? frame.binary() : null;
+            if (message == null) {
+                message = frame.text();
+            }
+        }
+        if (queue == null || !queue.enqueue(message)) {
+            metrics.enqueueFailed();
+            return false;
+        }
+        metrics.outbound();
+        metrics.outboundBytes(message instanceof TextMessage, message.getPayloadLength());
+        return true;
+    }
+
+    public int getQueueCount() {
+        return queues.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        writers.shutdownNow();
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.demo.outbound;
+
+// Cách xử lý khi hàng đợi gửi của một session bị đầy
+public enum OverflowPolicy {
+    // Bỏ tin nhắn cũ nhất để nhường chỗ cho tin nhắn mới
+    DROP_OLDEST,
+    // Ngắt kết nối client gửi chậm
+    DISCONNECT
+}
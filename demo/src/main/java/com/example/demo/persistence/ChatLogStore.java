@@ -0,0 +1,353 @@
+package com.example.demo.persistence;
+
+import com.example.demo.history.RoomHistory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Chat log bền vững: mỗi phòng một thư mục các segment append-only được map vào bộ nhớ.
+// broadcast chỉ offer vào hàng đợi giới hạn (đầy thì bỏ và đếm), một writer thread ghi theo lô,
+// fsync theo mức Durability, roll segment, áp dụng retention. Chỉ phòng đang có tin mới mới giữ
+// segment mở (file handle + mapping): phòng im lặng quá idle-close-ms, hoặc cũ nhất khi vượt
+// max-open-rooms, bị seal lại. Khởi động lại thì khôi phục segment cuối của từng phòng, nạp lại
+// lịch sử gần đây vào RoomHistory rồi đóng hết, không mở sẵn file nào.
+@Component
+public class ChatLogStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatLogStore.class);
+
+    // Tiền tố thư mục phòng; tên phòng được URL-encode (kể cả dấu chấm) để không thoát khỏi thư mục gốc
+    private static final String ROOM_DIR_PREFIX = "room-";
+    // Thư mục phòng không khôi phục được được đổi tên với tiền tố này để giữ lại dữ liệu cũ cho việc
+    // kiểm tra bằng tay, thay vì để phòng bắt đầu lại từ seq 1 và ghi đè lên segment đầu tiên
+    private static final String QUARANTINE_DIR_PREFIX = "broken-";
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    private static final int MAX_BATCH = 1024;
+    private static final long RETENTION_CHECK_MILLIS = 60_000;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final Durability durability;
+    private final long flushIntervalMillis;
+    private final long retentionMillis;
+    private final long retentionBytesPerRoom;
+    private final long idleCloseMillis;
+    private final int maxOpenRooms;
+
+    private final Map<String, RoomChatLog> rooms = new ConcurrentHashMap<>();
+    // Phòng không khôi phục được mà cũng không đổi tên được thư mục: không ghi tiếp để khỏi đè dữ liệu cũ
+    private final Set<String> unavailableRooms = ConcurrentHashMap.newKeySet();
+
+    // Các phòng đang có segment mở, theo thứ tự ghi gần nhất (cũ nhất ở đầu); chỉ writer thread dùng
+    private final LinkedHashMap<String, RoomChatLog> openLogs = new LinkedHashMap<>(16, 0.75f, true);
+    private final BlockingQueue<PendingRecord> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+
+    public ChatLogStore(@Value("${chat.store.enabled:true}") boolean enabled,
+                        @Value("${chat.store.dir:data/chatlog}") String dir,
+                        @Value("${chat.store.segment-bytes:16777216}") int segmentBytes,
+                        @Value("${chat.store.durability:BATCH}") Durability durability,
+                        @Value("${chat.store.flush-interval-ms:200}") long flushIntervalMillis,
+                        @Value("${chat.store.retention-hours:168}") long retentionHours,
+                        @Value("${chat.store.retention-bytes-per-room:268435456}") long retentionBytesPerRoom,
+                        @Value("${chat.store.queue-capacity:65536}") int queueCapacity,
+                        @Value("${chat.store.idle-close-ms:300000}") long idleCloseMillis,
+                        @Value("${chat.store.max-open-rooms:256}") int maxOpenRooms,
+                        RoomHistory history) {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir);
+        this.segmentBytes = segmentBytes;
+        this.durability = durability;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.retentionBytesPerRoom = retentionBytesPerRoom;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.idleCloseMillis = idleCloseMillis;
+        this.maxOpenRooms = Math.max(1, maxOpenRooms);
+
+        if (enabled) {
+            recover(history);
+        }
+        this.writer = new Thread(this::writeLoop, "chat-store-writer");
+        this.writer.setDaemon(true);
+        if (enabled) {
+            this.writer.start();
+        }
+    }
+
+    // Gọi trên đường broadcast: không chặn, không đụng tới đĩa
+    public void append(String room, long seq, TextMessage frame) {
+        if (!enabled) {
+            return;
+        }
+        if (!queue.offer(new PendingRecord(room, new LogRecord(seq, System.currentTimeMillis(), frame.asBytes())))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Các frame có seq trong (afterSeq, toSeq], tối đa max frame mới nhất; dùng khi replay xa hơn RoomHistory
+    public List<TextMessage> read(String room, long afterSeq, long toSeq, int max) {
+        RoomChatLog roomLog = rooms.get(room);
+        if (roomLog == null || max <= 0 || toSeq <= afterSeq) {
+            return Collections.emptyList();
+        }
+        long from = Math.max(afterSeq, toSeq - max);
+        List<TextMessage> frames = new ArrayList<>();
+        try {
+            roomLog.read(from, record -> {
+                if (record.getSeq() > toSeq) {
+                    return false;
+                }
+                frames.add(new TextMessage(record.getPayload()));
+                return true;
+            });
+        } catch (IOException e) {
+            log.warn("Cannot read chat log of room {}: {}", room, e.getMessage());
+        }
+        return frames;
+    }
+
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>(MAX_BATCH);
+        long lastFlush = System.currentTimeMillis();
+        long lastRetention = lastFlush;
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                long now = System.currentTimeMillis();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (PendingRecord pending : batch) {
+                        write(pending, now);
+                    }
+                    batch.clear();
+                }
+
+                if (durability == Durability.ALWAYS || now - lastFlush >= flushIntervalMillis) {
+                    flushAll(durability != Durability.NONE);
+                    lastFlush = now;
+                }
+                closeIdle(now);
+                if (now - lastRetention >= RETENTION_CHECK_MILLIS) {
+                    applyRetention(now);
+                    lastRetention = now;
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+    private void write(PendingRecord pending, long now) {
+        if (unavailableRooms.contains(pending.room)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            RoomChatLog roomLog = roomLog(pending.room);
+            roomLog.append(pending.record, now);
+            appended.incrementAndGet();
+            // put cũng đưa phòng về cuối thứ tự; vượt giới hạn thì đóng phòng ghi lâu nhất
+            if (openLogs.put(pending.room, roomLog) == null && openLogs.size() > maxOpenRooms) {
+                Iterator<RoomChatLog> eldest = openLogs.values().iterator();
+                close(eldest.next());
+                eldest.remove();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            writeErrors.incrementAndGet();
+            log.warn("Cannot append to chat log of room {}: {}", pending.room, e.getMessage());
+        }
+    }
+
+    // Seal segment của các phòng không có tin mới trong idle-close-ms, từ phòng ghi lâu nhất
+    private void closeIdle(long now) {
+        if (idleCloseMillis <= 0) {
+            return;
+        }
+        Iterator<RoomChatLog> it = openLogs.values().iterator();
+        while (it.hasNext()) {
+            RoomChatLog roomLog = it.next();
+            if (now - roomLog.getLastAppendMillis() < idleCloseMillis) {
+                return;
+            }
+            close(roomLog);
+            it.remove();
+        }
+    }
+
+    private void close(RoomChatLog roomLog) {
+        try {
+            roomLog.closeActive();
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            log.warn("Cannot close chat log of room {}: {}", roomLog.getRoom(), e.getMessage());
+        }
+    }
+
+    private RoomChatLog roomLog(String room) {
+        return rooms.computeIfAbsent(room, r -> {
+            try {
+                return RoomChatLog.create(r, dir.resolve(roomDirName(r)), segmentBytes, INDEX_INTERVAL_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void flushAll(boolean sync) {
+        for (RoomChatLog roomLog : openLogs.values()) {
+            try {
+                roomLog.flush(sync);
+            } catch (IOException e) {
+                writeErrors.incrementAndGet();
+                log.warn("Cannot flush chat log of room {}: {}", roomLog.getRoom(), e.getMessage());
+            }
+        }
+    }
+
+    // Phòng không còn segment nào sau retention thì bỏ khỏi map và xóa luôn thư mục
+    private void applyRetention(long now) {
+        for (RoomChatLog roomLog : rooms.values()) {
+            try {
+                if (roomLog.applyRetention(retentionMillis, retentionBytesPerRoom, now)) {
+                    rooms.remove(roomLog.getRoom(), roomLog);
+                    openLogs.remove(roomLog.getRoom());
+                    roomLog.deleteDirectory();
+                } else if (!roomLog.isOpen()) {
+                    openLogs.remove(roomLog.getRoom());
+                }
+            } catch (IOException e) {
+                log.warn("Cannot apply retention to room {}: {}", roomLog.getRoom(), e.getMessage());
+            }
+        }
+    }
+
+    // Mở lại log của mọi phòng và nạp các tin gần nhất vào RoomHistory, giữ nguyên seq.
+    // Lỗi ở một phòng chỉ làm phòng đó bị cách ly, các phòng khác vẫn được khôi phục
+    private void recover(RoomHistory history) {
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> roomDirs = Files.list(dir)) {
+                for (Path roomDir : (Iterable<Path>) roomDirs::iterator) {
+                    String name = roomDir.getFileName().toString();
+                    if (!Files.isDirectory(roomDir) || !name.startsWith(ROOM_DIR_PREFIX)) {
+                        continue;
+                    }
+                    String room = URLDecoder.decode(name.substring(ROOM_DIR_PREFIX.length()), StandardCharsets.UTF_8);
+                    try {
+                        recoverRoom(room, roomDir, history);
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Cannot recover chat log of room {}: {}", room, e.getMessage());
+                        quarantine(room, roomDir);
+                    }
+                }
+            }
+            log.info("Recovered chat log for {} rooms from {}", rooms.size(), dir.toAbsolutePath());
+        } catch (IOException e) {
+            log.warn("Cannot recover chat log from {}: {}", dir.toAbsolutePath(), e.getMessage());
+        }
+    }
+
+    private void recoverRoom(String room, Path roomDir, RoomHistory history) throws IOException {
+        RoomChatLog roomLog = RoomChatLog.recover(room, roomDir, segmentBytes, INDEX_INTERVAL_BYTES);
+        if (roomLog.isEmpty()) {
+            roomLog.deleteDirectory();
+            return;
+        }
+        long lastSeq = roomLog.lastSeq();
+        Deque<TextMessage> tail = new ArrayDeque<>();
+        int keep = history.getMaxMessagesPerRoom();
+        roomLog.read(Math.max(0, lastSeq - keep), record -> {
+            tail.addLast(new TextMessage(record.getPayload()));
+            return true;
+        });
+        rooms.put(room, roomLog);
+        history.log(room).restore(lastSeq, new ArrayList<>(tail));
+    }
+
+    private void quarantine(String room, Path roomDir) {
+        Path target = dir.resolve(QUARANTINE_DIR_PREFIX + roomDir.getFileName() + "-" + System.currentTimeMillis());
+        try {
+            Files.move(roomDir, target);
+            log.warn("Moved chat log of room {} to {}", room, target.toAbsolutePath());
+        } catch (IOException e) {
+            unavailableRooms.add(room);
+            log.error("Cannot move chat log of room {} aside, not logging the room until restart: {}", room, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RoomChatLog roomLog : openLogs.values()) {
+            try {
+                roomLog.close(durability != Durability.NONE);
+            } catch (IOException e) {
+                log.warn("Cannot close chat log of room {}: {}", roomLog.getRoom(), e.getMessage());
+            }
+        }
+    }
+
+    private static String roomDirName(String room) {
+        return ROOM_DIR_PREFIX + URLEncoder.encode(room, StandardCharsets.UTF_8)
+            .replace(".", "%2E")
+            .replace("*", "%2A");
+    }
+
+    public boolean isEnabled() { return enabled; }
+    public long getAppendedCount() { return appended.get(); }
+    public long getDroppedCount() { return dropped.get(); }
+    public long getWriteErrorCount() { return writeErrors.get(); }
+    public int getQueueDepth() { return queue.size(); }
+
+    private static final class PendingRecord {
+        final String room;
+        final LogRecord record;
+
+        PendingRecord(String room, LogRecord record) {
+            this.room = room;
+            this.record = record;
+        }
+    }
+}
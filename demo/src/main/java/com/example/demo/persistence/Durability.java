@@ -0,0 +1,11 @@
+package com.example.demo.persistence;
+
+// Mức bền vững của chat log trên đĩa
+public enum Durability {
+    // Không gọi fsync, để hệ điều hành tự ghi xuống đĩa (mất được vài giây dữ liệu khi máy sập)
+    NONE,
+    // fsync theo chu kỳ chat.store.flush-interval-ms
+    BATCH,
+    // fsync sau mỗi lô ghi (group commit); broadcast vẫn không phải chờ
+    ALWAYS
+}
@@ -0,0 +1,66 @@
+package com.example.demo.persistence;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+// Một bản ghi trong segment: [length:int][crc:int][seq:long][timestamp:long][payload]
+// CRC tính trên seq + timestamp + payload; bản ghi ghi dở khi sập máy sẽ sai CRC và bị bỏ khi khôi phục
+public class LogRecord {
+
+    static final int HEADER_BYTES = 24;
+
+    private final long seq;
+    private final long timestamp;
+    private final byte[] payload;
+
+    public LogRecord(long seq, long timestamp, byte[] payload) {
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public long getSeq() { return seq; }
+    public long getTimestamp() { return timestamp; }
+    public byte[] getPayload() { return payload; }
+
+    int sizeInBytes() {
+        return HEADER_BYTES + payload.length;
+    }
+
+    void writeTo(ByteBuffer buffer, int position) {
+        buffer.putInt(position, payload.length);
+        buffer.putInt(position + 4, checksum(seq, timestamp, payload));
+        buffer.putLong(position + 8, seq);
+        buffer.putLong(position + 16, timestamp);
+        buffer.put(position + HEADER_BYTES, payload);
+    }
+
+    // Đọc bản ghi tại position; null nếu hết dữ liệu hợp lệ (vùng trống, ghi dở hoặc sai CRC)
+    static LogRecord readFrom(ByteBuffer buffer, int position, int limit) {
+        if (position + HEADER_BYTES > limit) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > limit - position - HEADER_BYTES) {
+            return null;
+        }
+        int crc = buffer.getInt(position + 4);
+        long seq = buffer.getLong(position + 8);
+        long timestamp = buffer.getLong(position + 16);
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_BYTES, payload);
+        if (crc != checksum(seq, timestamp, payload)) {
+            return null;
+        }
+        return new LogRecord(seq, timestamp, payload);
+    }
+
+    private static int checksum(long seq, long timestamp, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putLong(seq).putLong(timestamp).flip();
+        crc.update(header);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
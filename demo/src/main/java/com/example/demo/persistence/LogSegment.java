@@ -0,0 +1,331 @@
+package com.example.demo.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+// Segment đang ghi của một phòng: file <baseSeq>.log được map vào bộ nhớ, kèm index thưa <baseSeq>.idx.
+// Chỉ writer thread của ChatLogStore gọi append/flush/seal; thread khác chỉ đọc tới vị trí đã commit.
+// File giữ nguyên độ dài đã cấp phát trước, kể cả sau khi seal: không truncate/xóa file khi mapping
+// có thể còn sống (Windows từ chối cho tới khi buffer bị GC); dữ liệu kết thúc ở bản ghi hợp lệ cuối,
+// phần sau là byte 0. Segment đã seal được đọc qua FileChannel, không map.
+class LogSegment {
+
+    // Mỗi entry index: [seq:long][position:int]
+    static final int INDEX_ENTRY_BYTES = 12;
+    // Đọc segment đã seal theo từng khúc; bản ghi lớn hơn thì nới khúc cho vừa
+    private static final int READ_CHUNK_BYTES = 64 * 1024;
+
+    private final long baseSeq;
+    private final Path logPath;
+    private final Path indexPath;
+    private final int indexIntervalBytes;
+
+    private final FileChannel channel;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer buffer;
+
+    // Cuối vùng dữ liệu hợp lệ; reader đọc volatile này trước khi đọc buffer
+    private volatile int committed;
+    private volatile long lastSeq;
+
+    // Vùng đã ghi nhưng chưa fsync
+    private int dirtyFrom;
+
+    // Index thưa trong bộ nhớ: reader đọc indexSize trước rồi mới đọc mảng
+    private volatile long[] indexSeqs = new long[64];
+    private volatile int[] indexPositions = new int[64];
+    private volatile int indexSize;
+    private int indexedSize;
+    private int lastIndexedPosition = -1;
+
+    private LogSegment(long baseSeq, Path logPath, Path indexPath, int capacity, int indexIntervalBytes) throws IOException {
+        this.baseSeq = baseSeq;
+        this.logPath = logPath;
+        this.indexPath = indexPath;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        this.lastSeq = baseSeq - 1;
+    }
+
+    static LogSegment create(Path dir, long baseSeq, int capacity, int indexIntervalBytes) throws IOException {
+        return new LogSegment(baseSeq, logFile(dir, baseSeq), indexFile(dir, baseSeq), capacity, indexIntervalBytes);
+    }
+
+    // Mở lại segment cuối sau khi restart: nạp index còn hợp lệ rồi quét tiếp để tìm cuối dữ liệu
+    static LogSegment recover(Path dir, long baseSeq, int capacity, int indexIntervalBytes) throws IOException {
+        LogSegment segment = new LogSegment(baseSeq, logFile(dir, baseSeq), indexFile(dir, baseSeq), capacity, indexIntervalBytes);
+        segment.recoverEnd();
+        return segment;
+    }
+
+    private void recoverEnd() throws IOException {
+        ByteBuffer entries = readIndexFile(indexChannel);
+        int limit = buffer.capacity();
+        int position = 0;
+        long seq = baseSeq - 1;
+        while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+            long entrySeq = entries.getLong();
+            int entryPosition = entries.getInt();
+            LogRecord record = LogRecord.readFrom(buffer, entryPosition, limit);
+            if (record == null || record.getSeq() != entrySeq || entryPosition < position) {
+                break;
+            }
+            addIndexEntry(entrySeq, entryPosition);
+            position = entryPosition;
+        }
+        indexedSize = indexSize;
+        indexChannel.truncate((long) indexSize * INDEX_ENTRY_BYTES);
+
+        // Quét từ entry index cuối cùng tới bản ghi hỏng/trống đầu tiên
+        while (true) {
+            LogRecord record = LogRecord.readFrom(buffer, position, limit);
+            if (record == null || record.getSeq() <= seq) {
+                break;
+            }
+            if (position - lastIndexedPosition >= indexIntervalBytes || lastIndexedPosition < 0) {
+                addIndexEntry(record.getSeq(), position);
+            }
+            seq = record.getSeq();
+            position += record.sizeInBytes();
+        }
+        // Sau bản ghi hợp lệ cuối còn rác (ghi dở, sai CRC): xóa về 0 để bản ghi mới ghi đè lên
+        // không bị nối với phần rác cũ khi đọc lại
+        if (position + Integer.BYTES <= limit && buffer.getInt(position) != 0) {
+            for (int i = position; i < limit; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force(position, limit - position);
+        }
+        lastSeq = seq;
+        committed = position;
+        dirtyFrom = position;
+    }
+
+    // Segment trên đĩa có ít nhất một bản ghi hợp lệ không; đọc qua channel để segment rỗng
+    // có thể xóa ngay mà không bị mapping giữ file
+    static boolean hasRecords(Path dir, long baseSeq) throws IOException {
+        try (FileChannel log = FileChannel.open(logFile(dir, baseSeq), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(LogRecord.HEADER_BYTES);
+            while (header.hasRemaining() && log.read(header, header.position()) > 0) {
+                // đọc đủ header
+            }
+            if (header.hasRemaining()) {
+                return false;
+            }
+            int length = header.getInt(0);
+            if (length <= 0 || length > log.size() - LogRecord.HEADER_BYTES) {
+                return false;
+            }
+            ByteBuffer record = ByteBuffer.allocate(LogRecord.HEADER_BYTES + length);
+            while (record.hasRemaining() && log.read(record, record.position()) > 0) {
+                // đọc đủ bản ghi đầu
+            }
+            return LogRecord.readFrom(record, 0, record.position()) != null;
+        }
+    }
+
+    boolean hasRoomFor(LogRecord record) {
+        return committed + record.sizeInBytes() <= buffer.capacity();
+    }
+
+    boolean isEmpty() {
+        return committed == 0;
+    }
+
+    void append(LogRecord record) {
+        int position = committed;
+        record.writeTo(buffer, position);
+        if (lastIndexedPosition < 0 || position - lastIndexedPosition >= indexIntervalBytes) {
+            addIndexEntry(record.getSeq(), position);
+        }
+        lastSeq = record.getSeq();
+        committed = position + record.sizeInBytes();
+    }
+
+    // fsync phần dữ liệu mới rồi mới ghi các entry index mới, để index không trỏ quá dữ liệu đã bền
+    void flush(boolean sync) throws IOException {
+        int end = committed;
+        if (sync && end > dirtyFrom) {
+            buffer.force(dirtyFrom, end - dirtyFrom);
+        }
+        dirtyFrom = end;
+
+        int size = indexSize;
+        if (size > indexedSize) {
+            ByteBuffer entries = ByteBuffer.allocate((size - indexedSize) * INDEX_ENTRY_BYTES);
+            for (int i = indexedSize; i < size; i++) {
+                entries.putLong(indexSeqs[i]).putInt(indexPositions[i]);
+            }
+            entries.flip();
+            indexChannel.write(entries, (long) indexedSize * INDEX_ENTRY_BYTES);
+            if (sync) {
+                indexChannel.force(false);
+            }
+            indexedSize = size;
+        }
+    }
+
+    // Đóng segment khi chuyển sang segment mới hoặc khi phòng không hoạt động: fsync rồi đóng file.
+    // Không cắt file về kích thước dữ liệu vì mapping vẫn còn cho tới khi buffer bị GC
+    void seal() throws IOException {
+        close(true);
+    }
+
+    // File luôn được đóng, kể cả khi flush lỗi
+    void close(boolean sync) throws IOException {
+        try {
+            flush(sync);
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                indexChannel.close();
+            }
+        }
+    }
+
+    // Đọc các bản ghi có seq > afterSeq theo thứ tự; visitor trả về false để dừng
+    void read(long afterSeq, Predicate<LogRecord> visitor) {
+        int end = committed;
+        int size = indexSize;
+        long[] seqs = indexSeqs;
+        int[] positions = indexPositions;
+        int start = floorPosition(seqs, positions, size, afterSeq + 1);
+        scan(buffer.duplicate(), start, end, afterSeq, visitor);
+    }
+
+    // Đọc segment đã đóng qua FileChannel theo từng khúc (không map, để file xóa được ngay khi
+    // retention tới), dùng file .idx để nhảy tới gần seq cần tìm
+    static void readSealed(Path dir, long baseSeq, long afterSeq, Predicate<LogRecord> visitor) throws IOException {
+        try (FileChannel log = FileChannel.open(logFile(dir, baseSeq), StandardOpenOption.READ)) {
+            long end = log.size();
+            int start = 0;
+            Path index = indexFile(dir, baseSeq);
+            if (Files.exists(index)) {
+                try (FileChannel indexChannel = FileChannel.open(index, StandardOpenOption.READ)) {
+                    ByteBuffer entries = readIndexFile(indexChannel);
+                    int count = entries.remaining() / INDEX_ENTRY_BYTES;
+                    long[] seqs = new long[count];
+                    int[] positions = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        seqs[i] = entries.getLong();
+                        positions[i] = entries.getInt();
+                    }
+                    start = floorPosition(seqs, positions, count, afterSeq + 1);
+                }
+            }
+            readChunks(log, start, end, afterSeq, visitor);
+        }
+    }
+
+    // Đọc từng khúc vào heap buffer rồi quét; bản ghi vắt qua cuối khúc được đọc lại ở khúc sau
+    private static void readChunks(FileChannel log, long position, long end, long afterSeq,
+                                   Predicate<LogRecord> visitor) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(READ_CHUNK_BYTES, Math.max(end - position, 1)));
+        while (position < end) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), end - position));
+            while (chunk.hasRemaining() && log.read(chunk, position + chunk.position()) > 0) {
+                // đọc đầy khúc
+            }
+            int limit = chunk.position();
+            int offset = 0;
+            while (true) {
+                LogRecord record = LogRecord.readFrom(chunk, offset, limit);
+                if (record == null) {
+                    break;
+                }
+                offset += record.sizeInBytes();
+                if (record.getSeq() > afterSeq && !visitor.test(record)) {
+                    return;
+                }
+            }
+            // Bản ghi kế tiếp chưa nằm trọn trong khúc: đọc lại từ đầu nó, nới khúc nếu cần
+            long next = position + offset;
+            if (limit - offset < LogRecord.HEADER_BYTES) {
+                if (offset == 0 || next + LogRecord.HEADER_BYTES > end) {
+                    return;
+                }
+                position = next;
+                continue;
+            }
+            int length = chunk.getInt(offset);
+            if (length <= 0 || offset + LogRecord.HEADER_BYTES + length <= limit
+                    || next + LogRecord.HEADER_BYTES + length > end) {
+                // Vùng trống, sai CRC hoặc bản ghi ghi dở ở cuối file: hết dữ liệu hợp lệ
+                return;
+            }
+            if (offset == 0) {
+                chunk = ByteBuffer.allocate(LogRecord.HEADER_BYTES + length);
+            }
+            position = next;
+        }
+    }
+
+    private static void scan(ByteBuffer data, int position, int end, long afterSeq, Predicate<LogRecord> visitor) {
+        while (position < end) {
+            LogRecord record = LogRecord.readFrom(data, position, end);
+            if (record == null) {
+                return;
+            }
+            position += record.sizeInBytes();
+            if (record.getSeq() > afterSeq && !visitor.test(record)) {
+                return;
+            }
+        }
+    }
+
+    // Vị trí của entry index lớn nhất có seq <= target (0 nếu không có)
+    private static int floorPosition(long[] seqs, int[] positions, int size, long target) {
+        int index = Arrays.binarySearch(seqs, 0, size, target);
+        if (index >= 0) {
+            return positions[index];
+        }
+        int floor = -index - 2;
+        return floor >= 0 ? positions[floor] : 0;
+    }
+
+    private void addIndexEntry(long seq, int position) {
+        int size = indexSize;
+        if (size == indexSeqs.length) {
+            indexSeqs = Arrays.copyOf(indexSeqs, size * 2);
+            indexPositions = Arrays.copyOf(indexPositions, size * 2);
+        }
+        indexSeqs[size] = seq;
+        indexPositions[size] = position;
+        lastIndexedPosition = position;
+        indexSize = size + 1;
+    }
+
+    private static ByteBuffer readIndexFile(FileChannel indexChannel) throws IOException {
+        int length = (int) (indexChannel.size() / INDEX_ENTRY_BYTES * INDEX_ENTRY_BYTES);
+        ByteBuffer entries = ByteBuffer.allocate(length).order(ByteOrder.BIG_ENDIAN);
+        while (entries.hasRemaining() && indexChannel.read(entries, entries.position()) > 0) {
+            // đọc cho đến hết file
+        }
+        entries.flip();
+        return entries;
+    }
+
+    static Path logFile(Path dir, long baseSeq) {
+        return dir.resolve(String.format("%020d.log", baseSeq));
+    }
+
+    static Path indexFile(Path dir, long baseSeq) {
+        return dir.resolve(String.format("%020d.idx", baseSeq));
+    }
+
+    long getBaseSeq() { return baseSeq; }
+    long getLastSeq() { return lastSeq; }
+    int getSize() { return committed; }
+}
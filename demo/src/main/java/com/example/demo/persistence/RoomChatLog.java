@@ -0,0 +1,279 @@
+package com.example.demo.persistence;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Chat log của một phòng: các segment đã đóng (chỉ giữ baseSeq) và tối đa một segment đang ghi.
+// Segment đang ghi chỉ mở khi phòng có tin mới; phòng không hoạt động thì seal lại để không giữ
+// file handle, và khi có tin mới thì mở lại segment cuối nếu còn chỗ thay vì cấp phát file mới.
+// Ghi, roll, đóng và retention chỉ chạy trên writer thread; read có thể gọi từ thread bất kỳ.
+class RoomChatLog {
+
+    // Tên file segment do LogSegment.logFile sinh ra; file .log khác trong thư mục phòng bị bỏ qua
+    private static final Pattern SEGMENT_FILE = Pattern.compile("(\\d{1,20})\\.log");
+
+    private final String room;
+    private final Path dir;
+    private final int segmentBytes;
+    private final int indexIntervalBytes;
+
+    private final ConcurrentSkipListSet<Long> sealed = new ConcurrentSkipListSet<>();
+    private volatile LogSegment active;
+    private volatile long lastSeq;
+    private long lastAppendMillis;
+    private boolean dirty;
+
+    private RoomChatLog(String room, Path dir, int segmentBytes, int indexIntervalBytes) {
+        this.room = room;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+
+    static RoomChatLog create(String room, Path dir, int segmentBytes, int indexIntervalBytes) throws IOException {
+        Files.createDirectories(dir);
+        return new RoomChatLog(room, dir, segmentBytes, indexIntervalBytes);
+    }
+
+    // Khôi phục khi khởi động: segment cuối được quét để xóa phần đuôi hỏng rồi seal luôn, nên sau khi
+    // khôi phục phòng không giữ file nào mở; tin mới của phòng mở lại segment cuối.
+    // Segment cuối rỗng (crash ngay sau khi tạo) thì bị xóa và xét segment trước nó
+    static RoomChatLog recover(String room, Path dir, int segmentBytes, int indexIntervalBytes) throws IOException {
+        RoomChatLog log = new RoomChatLog(room, dir, segmentBytes, indexIntervalBytes);
+        List<Long> bases = log.listSegments();
+        while (!bases.isEmpty()) {
+            long last = bases.remove(bases.size() - 1);
+            Path file = LogSegment.logFile(dir, last);
+            // Kiểm tra rỗng trước khi map, để xóa được file ngay cả trên Windows
+            if (!LogSegment.hasRecords(dir, last)) {
+                log.deleteSegment(last);
+                continue;
+            }
+            FileTime modified = Files.getLastModifiedTime(file);
+            LogSegment segment = LogSegment.recover(dir, last, segmentBytes, indexIntervalBytes);
+            segment.seal();
+            // Giữ thời điểm ghi cuối thật để retention theo tuổi không bị lùi lại sau mỗi lần restart
+            Files.setLastModifiedTime(file, modified);
+            log.sealed.addAll(bases);
+            log.sealed.add(last);
+            log.lastSeq = segment.getLastSeq();
+            break;
+        }
+        return log;
+    }
+
+    void append(LogRecord record, long nowMillis) throws IOException {
+        if (record.getSeq() <= lastSeq) {
+            // Seq phải tăng dần trong phòng; bản ghi cũ (ví dụ sau khi khôi phục) bị bỏ qua
+            return;
+        }
+        LogSegment segment = active;
+        if (segment == null || !segment.hasRoomFor(record)) {
+            segment = roll(record);
+        }
+        segment.append(record);
+        lastSeq = record.getSeq();
+        lastAppendMillis = nowMillis;
+        dirty = true;
+    }
+
+    private LogSegment roll(LogRecord first) throws IOException {
+        LogSegment current = active;
+        closeActive();
+        // Phòng vừa được mở lại sau khi đóng vì không hoạt động: ghi tiếp vào segment cuối nếu còn chỗ.
+        // Base của nó vẫn nằm trong sealed nên reader đang chạy không bỏ sót; phần trùng được read bỏ qua
+        Long last = sealed.isEmpty() ? null : sealed.last();
+        if (current == null && last != null) {
+            LogSegment reopened = LogSegment.recover(dir, last, segmentBytes, indexIntervalBytes);
+            if (reopened.hasRoomFor(first) && reopened.getLastSeq() < first.getSeq()) {
+                active = reopened;
+                return reopened;
+            }
+            reopened.close(false);
+        }
+        int capacity = Math.max(segmentBytes, first.sizeInBytes());
+        LogSegment next = LogSegment.create(dir, first.getSeq(), capacity, indexIntervalBytes);
+        active = next;
+        return next;
+    }
+
+    // Seal segment đang ghi (fsync, đóng file) để nhả file handle; baseSeq được đưa vào sealed
+    // trước khi bỏ active để reader đang chạy không bỏ sót bản ghi nào. Seal lỗi thì segment vẫn
+    // được coi là đã đóng (file luôn được đóng) để tin sau mở segment mới thay vì ghi tiếp vào nó
+    void closeActive() throws IOException {
+        LogSegment segment = active;
+        if (segment == null) {
+            return;
+        }
+        boolean empty = segment.isEmpty();
+        try {
+            if (empty) {
+                segment.close(false);
+            } else {
+                segment.seal();
+            }
+        } finally {
+            if (!empty) {
+                sealed.add(segment.getBaseSeq());
+            }
+            active = null;
+            dirty = false;
+        }
+        if (empty) {
+            // Segment rỗng thì bỏ; xóa không được (mapping còn giữ file) thì recover sẽ xóa sau
+            try {
+                deleteSegment(segment.getBaseSeq());
+            } catch (IOException e) {
+                // bỏ qua
+            }
+        }
+    }
+
+    boolean isOpen() {
+        return active != null;
+    }
+
+    long getLastAppendMillis() {
+        return lastAppendMillis;
+    }
+
+    void flush(boolean sync) throws IOException {
+        LogSegment segment = active;
+        if (dirty && segment != null) {
+            segment.flush(sync);
+            dirty = false;
+        }
+    }
+
+    void close(boolean sync) throws IOException {
+        LogSegment segment = active;
+        if (segment != null) {
+            segment.close(sync);
+        }
+    }
+
+    // Đọc các bản ghi có seq > afterSeq, từ segment chứa afterSeq + 1 trở đi.
+    // Segment đang ghi được lấy trước: nếu nó bị seal trong lúc đọc các segment cũ thì bản ghi của nó
+    // có thể đã được đọc qua sealed, lastRead giúp bỏ qua phần trùng
+    void read(long afterSeq, Predicate<LogRecord> visitor) throws IOException {
+        LogSegment segment = active;
+        boolean[] stopped = new boolean[1];
+        long[] lastRead = {afterSeq};
+        Predicate<LogRecord> tracking = record -> {
+            if (record.getSeq() <= lastRead[0]) {
+                return true;
+            }
+            if (!visitor.test(record)) {
+                stopped[0] = true;
+                return false;
+            }
+            lastRead[0] = record.getSeq();
+            return true;
+        };
+
+        Long floor = sealed.floor(afterSeq + 1);
+        for (Long base : floor != null ? sealed.tailSet(floor) : sealed) {
+            try {
+                LogSegment.readSealed(dir, base, afterSeq, tracking);
+            } catch (IOException e) {
+                // Segment vừa bị retention xóa: bỏ qua
+                continue;
+            }
+            if (stopped[0]) {
+                return;
+            }
+        }
+        if (segment != null) {
+            segment.read(lastRead[0], tracking);
+        }
+    }
+
+    // Xóa các segment đã đóng quá hạn hoặc vượt dung lượng cho phép, bắt đầu từ segment cũ nhất.
+    // Segment đang ghi mà không có tin mới quá maxAge thì được seal trước để cũng bị xét theo tuổi.
+    // Trả về true nếu phòng không còn segment nào
+    boolean applyRetention(long maxAgeMillis, long maxBytes, long nowMillis) throws IOException {
+        if (active != null && maxAgeMillis > 0 && nowMillis - lastAppendMillis > maxAgeMillis) {
+            closeActive();
+        }
+        // Segment đang ghi (kể cả khi được mở lại từ sealed) không bị xóa, chỉ tính vào dung lượng
+        LogSegment current = active;
+        long total = current != null ? current.getSize() : 0;
+        List<Long> bases = new ArrayList<>(sealed);
+        if (current != null) {
+            bases.remove(Long.valueOf(current.getBaseSeq()));
+        }
+        long[] sizes = new long[bases.size()];
+        for (int i = 0; i < bases.size(); i++) {
+            sizes[i] = Files.size(LogSegment.logFile(dir, bases.get(i)));
+            total += sizes[i];
+        }
+        for (int i = 0; i < bases.size(); i++) {
+            long base = bases.get(i);
+            FileTime modified = Files.getLastModifiedTime(LogSegment.logFile(dir, base));
+            boolean expired = maxAgeMillis > 0 && nowMillis - modified.toMillis() > maxAgeMillis;
+            boolean oversized = maxBytes > 0 && total > maxBytes;
+            if (!expired && !oversized) {
+                break;
+            }
+            // Xóa trước rồi mới bỏ khỏi sealed: xóa lỗi thì lần retention sau thử lại
+            deleteSegment(base);
+            sealed.remove(base);
+            total -= sizes[i];
+        }
+        return active == null && sealed.isEmpty();
+    }
+
+    // Seq cuối cùng đã ghi (0 nếu chưa có)
+    long lastSeq() {
+        return Math.max(0, lastSeq);
+    }
+
+    boolean isEmpty() {
+        return active == null && sealed.isEmpty();
+    }
+
+    // Xóa thư mục của phòng khi đã không còn segment; còn file lạ trong thư mục thì giữ nguyên
+    boolean deleteDirectory() {
+        try {
+            return Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteSegment(long base) throws IOException {
+        // Xóa index trước: crash giữa chừng chỉ để lại file .log, vẫn được nhận ra như một segment
+        Files.deleteIfExists(LogSegment.indexFile(dir, base));
+        Files.deleteIfExists(LogSegment.logFile(dir, base));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> SEGMENT_FILE.matcher(path.getFileName().toString()))
+                .filter(Matcher::matches)
+                .forEach(matcher -> {
+                    try {
+                        bases.add(Long.parseLong(matcher.group(1)));
+                    } catch (NumberFormatException e) {
+                        // Số vượt long: không phải segment của log này
+                    }
+                });
+        }
+        bases.sort(null);
+        return bases;
+    }
+
+    String getRoom() {
+        return room;
+    }
+}
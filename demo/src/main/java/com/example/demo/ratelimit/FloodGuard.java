@@ -0,0 +1,185 @@
+package com.example.demo.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lớp chặn flood ở mức kết nối, chạy trước khi parse JSON hay gọi bot.
+// Giới hạn số tin nhắn và số byte theo session và theo IP, cùng kích thước frame tối đa.
+// Chỉ vượt giới hạn của chính session mới tính là vi phạm (đủ max-violations thì ngắt kết nối);
+// vượt giới hạn IP có thể do kết nối khác cùng IP (NAT, phòng máy) nên chỉ bỏ frame.
+// Frame bị bỏ được trả lại các permit đã lấy, không làm hao ngân sách của session.
+@Component
+public class FloodGuard {
+
+    public enum Verdict { ACCEPT, DROP, CLOSE }
+
+    private static final String SESSION_SCOPE = "session";
+    private static final String SESSION_BYTES_SCOPE = "session-bytes";
+    private static final String IP_SCOPE = "ip";
+    private static final String IP_BYTES_SCOPE = "ip-bytes";
+
+    // Trạng thái của một kết nối, tạo một lần khi connect
+    private static final class SessionState {
+        final String ip;
+        final AtomicInteger violations = new AtomicInteger();
+
+        SessionState(String ip) {
+            this.ip = ip;
+        }
+    }
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final RateLimiter limiter = new RateLimiter(5, TimeUnit.MINUTES);
+
+    private final int maxFrameBytes;
+    private final RateLimit sessionMessageRate;
+    private final RateLimit sessionByteRate;
+    private final RateLimit ipMessageRate;
+    private final RateLimit ipByteRate;
+    private final int maxViolations;
+
+    // Bộ đếm lượng tải đã chặn
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong droppedMessageRate = new AtomicLong();
+    private final AtomicLong droppedByteRate = new AtomicLong();
+    private final AtomicLong closedOversize = new AtomicLong();
+    private final AtomicLong closedAbuse = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    public FloodGuard(@Value("${chat.flood.max-frame-bytes:65536}") int maxFrameBytes,
+                      @Value("${chat.flood.session-message-rate:30/10s}") String sessionMessageRate,
+                      @Value("${chat.flood.session-byte-rate:262144/10s}") String sessionByteRate,
+                      @Value("${chat.flood.ip-message-rate:300/10s}") String ipMessageRate,
+                      @Value("${chat.flood.ip-byte-rate:2097152/10s}") String ipByteRate,
+                      @Value("${chat.flood.max-violations:20}") int maxViolations) {
+        this.maxFrameBytes = maxFrameBytes;
+        this.sessionMessageRate = RateLimit.parse(sessionMessageRate);
+        this.sessionByteRate = RateLimit.parse(sessionByteRate);
+        this.ipMessageRate = RateLimit.parse(ipMessageRate);
+        this.ipByteRate = RateLimit.parse(ipByteRate);
+        this.maxViolations = maxViolations;
+    }
+
+    public void register(WebSocketSession session) {
+        // Để container từ chối frame quá lớn trước khi đọc hết vào bộ nhớ
+        session.setTextMessageSizeLimit(maxFrameBytes);
+        session.setBinaryMessageSizeLimit(maxFrameBytes);
+        sessions.put(session.getId(), new SessionState(remoteIp(session)));
+    }
+
+    public void unregister(WebSocketSession session) {
+        sessions.remove(session.getId());
+        limiter.reset(session.getId());
+    }
+
+    // Quyết định có xử lý frame này không; gọi trước mọi xử lý khác
+    public Verdict admit(WebSocketSession session, int payloadBytes) {
+        SessionState state = sessions.get(session.getId());
+        if (state == null) {
+            return Verdict.ACCEPT;
+        }
+
+        if (payloadBytes > maxFrameBytes) {
+            closedOversize.incrementAndGet();
+            droppedBytes.addAndGet(payloadBytes);
+            return Verdict.CLOSE;
+        }
+
+        String id = session.getId();
+        // Giới hạn của session trước: bị chặn ở đây là lỗi của chính session
+        if (!limiter.tryAcquire(SESSION_SCOPE, id, sessionMessageRate)) {
+            return rejectSession(state, payloadBytes, droppedMessageRate);
+        }
+        if (!limiter.tryAcquire(SESSION_BYTES_SCOPE, id, sessionByteRate, payloadBytes)) {
+            limiter.release(SESSION_SCOPE, id, sessionMessageRate, 1);
+            return rejectSession(state, payloadBytes, droppedByteRate);
+        }
+        // Giới hạn chung của IP: chỉ bỏ frame, hoàn lại những gì session đã lấy
+        if (!limiter.tryAcquire(IP_SCOPE, state.ip, ipMessageRate)) {
+            releaseSession(id, payloadBytes);
+            return drop(payloadBytes, droppedMessageRate);
+        }
+        if (!limiter.tryAcquire(IP_BYTES_SCOPE, state.ip, ipByteRate, payloadBytes)) {
+            limiter.release(IP_SCOPE, state.ip, ipMessageRate, 1);
+            releaseSession(id, payloadBytes);
+            return drop(payloadBytes, droppedByteRate);
+        }
+
+        accepted.incrementAndGet();
+        state.violations.set(0);
+        return Verdict.ACCEPT;
+    }
+
+    // Vi phạm giới hạn của session; vi phạm liên tục thì ngắt kết nối
+    private Verdict rejectSession(SessionState state, int payloadBytes, AtomicLong counter) {
+        drop(payloadBytes, counter);
+        if (state.violations.incrementAndGet() >= maxViolations) {
+            closedAbuse.incrementAndGet();
+            return Verdict.CLOSE;
+        }
+        return Verdict.DROP;
+    }
+
+    private Verdict drop(int payloadBytes, AtomicLong counter) {
+        counter.incrementAndGet();
+        droppedBytes.addAndGet(payloadBytes);
+        return Verdict.DROP;
+    }
+
+    private void releaseSession(String id, int payloadBytes) {
+        limiter.release(SESSION_SCOPE, id, sessionMessageRate, 1);
+        limiter.release(SESSION_BYTES_SCOPE, id, sessionByteRate, payloadBytes);
+    }
+
+    // Số byte UTF-8 của frame text, để giới hạn byte tính đúng theo dữ liệu trên dây (tiếng Việt, emoji
+    // nhiều byte hơn số char). Đếm thẳng trên chuỗi: TextMessage nhận từ container chỉ giữ String,
+    // getPayloadLength() phải mã hóa lại cả payload ra mảng byte mới biết độ dài
+    public static int utf8Length(CharSequence text) {
+        int length = text.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // Cặp surrogate: 2 char, 4 byte
+                bytes += 2;
+                i++;
+            } else {
+                // Surrogate lẻ được mã hóa thành '?' (1 byte) nhưng đếm dư không hại gì
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    public CloseStatus closeStatusFor(int payloadBytes) {
+        return payloadBytes > maxFrameBytes ? CloseStatus.TOO_BIG_TO_PROCESS : CloseStatus.POLICY_VIOLATION;
+    }
+
+    private static String remoteIp(WebSocketSession session) {
+        InetSocketAddress address = session.getRemoteAddress();
+        if (address == null) {
+            return "unknown";
+        }
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    public long getAccepted() { return accepted.get(); }
+    public long getDroppedMessageRate() { return droppedMessageRate.get(); }
+    public long getDroppedByteRate() { return droppedByteRate.get(); }
+    public long getClosedOversize() { return closedOversize.get(); }
+    public long getClosedAbuse() { return closedAbuse.get(); }
+    public long getDroppedBytes() { return droppedBytes.get(); }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+// Giới hạn "permits trong window", ví dụ 5/60s.
+// Lưu sẵn dưới dạng GCRA: mỗi permit cách nhau emissionInterval, cho phép burst tối đa bằng permits.
+public final class RateLimit {
+
+    public static final RateLimit UNLIMITED = new RateLimit(0, 0);
+
+    private final int permits;
+    private final long windowNanos;
+    private final long emissionIntervalNanos;
+
+    public RateLimit(int permits, long windowNanos) {
+        this.permits = permits;
+        this.windowNanos = windowNanos;
+        this.emissionIntervalNanos = permits > 0 ? windowNanos / permits : 0;
+    }
+
+    public static RateLimit of(int permits, long window, TimeUnit unit) {
+        return new RateLimit(permits, unit.toNanos(window));
+    }
+
+    // Cú pháp: "5/60s", "100/1m", "20/500ms"; "0" hoặc "unlimited" = không giới hạn
+    public static RateLimit parse(String spec) {
+        String value = spec.trim().toLowerCase();
+        if (value.equals("0") || value.equals("unlimited")) {
+            return UNLIMITED;
+        }
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            throw new IllegalArgumentException("Invalid rate limit: " + spec);
+        }
+        int permits = Integer.parseInt(value.substring(0, slash).trim());
+        String window = value.substring(slash + 1).trim();
+
+        long nanos;
+        if (window.endsWith("ms")) {
+            nanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(window.substring(0, window.length() - 2)));
+        } else if (window.endsWith("s")) {
+            nanos = TimeUnit.SECONDS.toNanos(Long.parseLong(window.substring(0, window.length() - 1)));
+        } else if (window.endsWith("m")) {
+            nanos = TimeUnit.MINUTES.toNanos(Long.parseLong(window.substring(0, window.length() - 1)));
+        } else {
+            throw new IllegalArgumentException("Invalid rate limit window: " + spec);
+        }
+        return permits <= 0 ? UNLIMITED : new RateLimit(permits, nanos);
+    }
+
+    public boolean isUnlimited() { return permits <= 0; }
+    public int getPermits() { return permits; }
+    public long getWindowNanos() { return windowNanos; }
+    long getEmissionIntervalNanos() { return emissionIntervalNanos; }
+
+    @Override
+    public String toString() {
+        return isUnlimited() ? "unlimited" : permits + "/" + TimeUnit.NANOSECONDS.toMillis(windowNanos) + "ms";
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Chọn giới hạn theo role và phòng: role được ưu tiên (ví dụ giáo viên không giới hạn),
+// sau đó đến phòng, cuối cùng là giới hạn mặc định
+public class RateLimitPolicy {
+
+    public static final String GLOBAL_SCOPE = "*";
+
+    private final RateLimit defaultLimit;
+    private final Map<String, RateLimit> roomLimits;
+    private final Map<String, RateLimit> roleLimits;
+
+    public RateLimitPolicy(RateLimit defaultLimit, Map<String, RateLimit> roomLimits, Map<String, RateLimit> roleLimits) {
+        this.defaultLimit = defaultLimit;
+        this.roomLimits = Map.copyOf(roomLimits);
+        this.roleLimits = Map.copyOf(roleLimits);
+    }
+
+    // Cú pháp: mặc định "5/60s", theo phòng/role "study:10/60s,random:3/60s"
+    public static RateLimitPolicy parse(String defaultSpec, String roomSpec, String roleSpec) {
+        return new RateLimitPolicy(RateLimit.parse(defaultSpec), parseMap(roomSpec, false), parseMap(roleSpec, true));
+    }
+
+    private static Map<String, RateLimit> parseMap(String spec, boolean upperCaseKeys) {
+        Map<String, RateLimit> result = new HashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return result;
+        }
+        for (String entry : spec.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid rate limit entry: " + entry);
+            }
+            String key = entry.substring(0, colon).trim();
+            result.put(upperCaseKeys ? key.toUpperCase() : key, RateLimit.parse(entry.substring(colon + 1)));
+        }
+        return result;
+    }
+
+    public RateLimit limitFor(String room, String role) {
+        RateLimit limit = role != null ? roleLimits.get(role) : null;
+        if (limit != null) {
+            return limit;
+        }
+        limit = room != null ? roomLimits.get(room) : null;
+        return limit != null ? limit : defaultLimit;
+    }
+
+    // Phòng có giới hạn riêng thì đếm riêng, còn lại dùng chung một bộ đếm cho mọi phòng
+    public String scopeFor(String room) {
+        return room != null && roomLimits.containsKey(room) ? room : GLOBAL_SCOPE;
+    }
+
+    public RateLimit getDefaultLimit() {
+        return defaultLimit;
+    }
+}
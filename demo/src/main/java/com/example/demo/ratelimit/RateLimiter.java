@@ -0,0 +1,172 @@
+package com.example.demo.ratelimit;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Rate limiter lock-free theo GCRA: mỗi key chỉ có một long (theoretical arrival time) cập nhật bằng CAS.
+// Kiểm tra O(1), không cấp phát khi key đã tồn tại; key không hoạt động được dọn định kỳ.
+public class RateLimiter {
+
+    // Bucket của một key: thời điểm (nano) mà bucket sẽ rỗng trở lại
+    private static final class Bucket {
+        final AtomicLong tat;
+
+        Bucket(long now) {
+            this.tat = new AtomicLong(now);
+        }
+    }
+
+    // scope (ví dụ phòng) -> key (ví dụ user) -> bucket; hai tầng để không phải nối chuỗi mỗi lần check
+    private final Map<String, Map<String, Bucket>> scopes = new ConcurrentHashMap<>();
+
+    private final long idleNanos;
+    private final AtomicLong nextSweep;
+    private final Consumer<String> onKeyEvicted;
+
+    public RateLimiter(long idleTimeout, TimeUnit unit) {
+        this(idleTimeout, unit, key -> { });
+    }
+
+    // onKeyEvicted được gọi khi một lần dọn bỏ bucket cuối cùng của key (không còn ở scope nào),
+    // để lớp gọi bỏ trạng thái riêng gắn với key cùng lúc với limiter
+    public RateLimiter(long idleTimeout, TimeUnit unit, Consumer<String> onKeyEvicted) {
+        this.idleNanos = unit.toNanos(idleTimeout);
+        this.nextSweep = new AtomicLong(System.nanoTime() + idleNanos);
+        this.onKeyEvicted = onKeyEvicted;
+    }
+
+    // Trả về true nếu được phép, false nếu vượt giới hạn
+    public boolean tryAcquire(String scope, String key, RateLimit limit) {
+        return tryAcquire(scope, key, limit, 1);
+    }
+
+    // Lấy nhiều permit cùng lúc (ví dụ tính theo byte)
+    public boolean tryAcquire(String scope, String key, RateLimit limit, int permits) {
+        // Không giới hạn thì khỏi đọc đồng hồ
+        if (limit.isUnlimited()) {
+            return true;
+        }
+        return tryAcquire(scope, key, limit, permits, System.nanoTime());
+    }
+
+    // Như trên nhưng với thời điểm (nano) cho trước, để test không phụ thuộc đồng hồ thật
+    boolean tryAcquire(String scope, String key, RateLimit limit, int permits, long now) {
+        if (limit.isUnlimited()) {
+            return true;
+        }
+
+        maybeSweep(now);
+
+        Map<String, Bucket> buckets = scopes.get(scope);
+        if (buckets == null) {
+            buckets = scopes.computeIfAbsent(scope, s -> new ConcurrentHashMap<>());
+        }
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(now));
+        }
+
+        long increment = limit.getEmissionIntervalNanos() * permits;
+        while (true) {
+            long tat = bucket.tat.get();
+            long next = (tat - now > 0 ? tat : now) + increment;
+            // Vượt quá một window tính từ bây giờ nghĩa là đã dùng hết burst
+            if (next - now > limit.getWindowNanos()) {
+                return false;
+            }
+            if (bucket.tat.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    // Trả lại permit đã lấy bằng tryAcquire (ví dụ khi một giới hạn khác chặn cùng frame đó),
+    // không lùi quá thời điểm hiện tại để không cộng dư burst
+    public void release(String scope, String key, RateLimit limit, int permits) {
+        release(scope, key, limit, permits, System.nanoTime());
+    }
+
+    void release(String scope, String key, RateLimit limit, int permits, long now) {
+        if (limit.isUnlimited()) {
+            return;
+        }
+        Map<String, Bucket> buckets = scopes.get(scope);
+        Bucket bucket = buckets != null ? buckets.get(key) : null;
+        if (bucket == null) {
+            return;
+        }
+        long decrement = limit.getEmissionIntervalNanos() * permits;
+        while (true) {
+            long tat = bucket.tat.get();
+            long next = tat - decrement;
+            if (next - now < 0) {
+                next = now;
+            }
+            if (next - tat >= 0 || bucket.tat.compareAndSet(tat, next)) {
+                return;
+            }
+        }
+    }
+
+    // Xóa trạng thái của key trong mọi scope
+    public void reset(String key) {
+        for (Map<String, Bucket> buckets : scopes.values()) {
+            buckets.remove(key);
+        }
+    }
+
+    // Chỉ một thread dọn mỗi chu kỳ, các thread khác đi tiếp
+    private void maybeSweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleNanos)) {
+            return;
+        }
+        evictIdle(now);
+    }
+
+    // Bucket đã rỗng lâu hơn idleNanos thì bỏ, key quay lại sẽ được tạo bucket mới
+    public void evictIdle(long now) {
+        Set<String> evicted = new HashSet<>();
+        for (Map.Entry<String, Map<String, Bucket>> scope : scopes.entrySet()) {
+            Map<String, Bucket> buckets = scope.getValue();
+            buckets.entrySet().removeIf(entry -> {
+                if (now - entry.getValue().tat.get() > idleNanos) {
+                    evicted.add(entry.getKey());
+                    return true;
+                }
+                return false;
+            });
+            if (buckets.isEmpty()) {
+                scopes.remove(scope.getKey(), buckets);
+            }
+        }
+        for (String key : evicted) {
+            if (!contains(key)) {
+                onKeyEvicted.accept(key);
+            }
+        }
+    }
+
+    // Key còn bucket ở scope nào không
+    private boolean contains(String key) {
+        for (Map<String, Bucket> buckets : scopes.values()) {
+            if (buckets.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Map<String, Bucket> buckets : scopes.values()) {
+            total += buckets.size();
+        }
+        return total;
+    }
+}
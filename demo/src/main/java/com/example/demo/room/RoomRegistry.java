@@ -0,0 +1,163 @@
+package com.example.demo.room;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Quản lý toàn bộ thành viên phòng chat.
+// Ghi (join/leave) đi qua một lock nên phòng và index session -> phòng luôn khớp nhau;
+// đọc (broadcast) chỉ lấy snapshot đã publish, không lock.
+// Một session có thể ở nhiều phòng cùng lúc qua một kết nối.
+@Component
+public class RoomRegistry {
+
+    // Kết quả của join
+    public enum JoinResult { JOINED, ALREADY_MEMBER, LIMIT_REACHED }
+
+    // Phòng -> snapshot thành viên hiện tại
+    private final Map<String, RoomSnapshot> rooms = new ConcurrentHashMap<>();
+
+    // Index session -> danh sách phòng bất biến, theo thứ tự join (phòng cuối là phòng mặc định)
+    private final Map<WebSocketSession, List<String>> sessionRooms = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+
+    // Giới hạn số phòng mỗi session để bộ nhớ không tăng vô hạn
+    private final int maxRoomsPerSession;
+
+    public RoomRegistry(@Value("${chat.rooms.max-per-session:20}") int maxRoomsPerSession) {
+        this.maxRoomsPerSession = maxRoomsPerSession;
+    }
+
+    // Thêm session vào phòng, giữ nguyên các phòng khác
+    public JoinResult join(WebSocketSession session, String roomName) {
+        synchronized (writeLock) {
+            List<String> current = sessionRooms.getOrDefault(session, List.of());
+            if (current.contains(roomName)) {
+                return JoinResult.ALREADY_MEMBER;
+            }
+            if (current.size() >= maxRoomsPerSession) {
+                return JoinResult.LIMIT_REACHED;
+            }
+            sessionRooms.put(session, append(current, roomName));
+            addMember(roomName, session);
+            return JoinResult.JOINED;
+        }
+    }
+
+    // Session rời một phòng, trả về false nếu không phải thành viên
+    public boolean leave(WebSocketSession session, String roomName) {
+        synchronized (writeLock) {
+            List<String> current = sessionRooms.get(session);
+            if (current == null || !current.contains(roomName)) {
+                return false;
+            }
+            List<String> next = without(current, roomName);
+            if (next.isEmpty()) {
+                sessionRooms.remove(session);
+            } else {
+                sessionRooms.put(session, next);
+            }
+            removeMember(roomName, session);
+            return true;
+        }
+    }
+
+    // Session rời tất cả phòng (khi đóng kết nối), trả về các phòng đã rời
+    public List<String> leaveAll(WebSocketSession session) {
+        synchronized (writeLock) {
+            List<String> current = sessionRooms.remove(session);
+            if (current == null) {
+                return List.of();
+            }
+            for (String roomName : current) {
+                removeMember(roomName, session);
+            }
+            return current;
+        }
+    }
+
+    // Xóa session khỏi một phòng cụ thể (ví dụ khi gửi thất bại)
+    public boolean remove(WebSocketSession session, String roomName) {
+        return leave(session, roomName);
+    }
+
+    // Gọi trong writeLock
+    private void addMember(String roomName, WebSocketSession session) {
+        RoomSnapshot current = rooms.getOrDefault(roomName,
+            new RoomSnapshot(roomName, RoomSnapshot.NO_MEMBERS));
+        RoomSnapshot next = current.with(session);
+        if (next != current) {
+            rooms.put(roomName, next);
+        }
+    }
+
+    // Gọi trong writeLock; xóa phòng khi không còn ai
+    private void removeMember(String roomName, WebSocketSession session) {
+        RoomSnapshot current = rooms.get(roomName);
+        if (current == null) {
+            return;
+        }
+        RoomSnapshot next = current.without(session);
+        if (next.isEmpty()) {
+            rooms.remove(roomName);
+        } else if (next != current) {
+            rooms.put(roomName, next);
+        }
+    }
+
+    private static List<String> append(List<String> list, String roomName) {
+        List<String> next = new ArrayList<>(list.size() + 1);
+        next.addAll(list);
+        next.add(roomName);
+        return List.copyOf(next);
+    }
+
+    private static List<String> without(List<String> list, String roomName) {
+        List<String> next = new ArrayList<>(list);
+        next.remove(roomName);
+        return List.copyOf(next);
+    }
+
+    // Danh sách thành viên để broadcast, không bao giờ null
+    public WebSocketSession[] members(String roomName) {
+        RoomSnapshot snapshot = rooms.get(roomName);
+        return snapshot != null ? snapshot.getMembers() : RoomSnapshot.NO_MEMBERS;
+    }
+
+    // Các phòng session đang tham gia, theo thứ tự join
+    public List<String> roomsOf(WebSocketSession session) {
+        return sessionRooms.getOrDefault(session, List.of());
+    }
+
+    // Phòng join gần nhất, dùng khi tin nhắn không ghi rõ phòng
+    public String defaultRoomOf(WebSocketSession session) {
+        List<String> joined = sessionRooms.get(session);
+        return joined == null || joined.isEmpty() ? null : joined.get(joined.size() - 1);
+    }
+
+    public boolean isMember(WebSocketSession session, String roomName) {
+        return roomName != null && roomsOf(session).contains(roomName);
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    // Kích thước hiện tại của từng phòng (dùng cho metrics)
+    public int[] roomSizes() {
+        return rooms.values().stream().mapToInt(RoomSnapshot::size).toArray();
+    }
+
+    public int sessionCount() {
+        return sessionRooms.size();
+    }
+
+    public int getMaxRoomsPerSession() {
+        return maxRoomsPerSession;
+    }
+}
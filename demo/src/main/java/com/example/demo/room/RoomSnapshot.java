@@ -0,0 +1,47 @@
+package com.example.demo.room;
+
+import org.springframework.web.socket.WebSocketSession;
+
+// Snapshot bất biến của một phòng: broadcaster đọc trực tiếp, không cần lock.
+// Mảng members không được phép sửa sau khi publish.
+public final class RoomSnapshot {
+
+    static final WebSocketSession[] NO_MEMBERS = new WebSocketSession[0];
+
+    private final String name;
+    private final WebSocketSession[] members;
+
+    RoomSnapshot(String name, WebSocketSession[] members) {
+        this.name = name;
+        this.members = members;
+    }
+
+    public String getName() { return name; }
+    public WebSocketSession[] getMembers() { return members; }
+    public int size() { return members.length; }
+    public boolean isEmpty() { return members.length == 0; }
+
+    RoomSnapshot with(WebSocketSession session) {
+        for (WebSocketSession member : members) {
+            if (member == session) {
+                return this;
+            }
+        }
+        WebSocketSession[] next = new WebSocketSession[members.length + 1];
+        System.arraycopy(members, 0, next, 0, members.length);
+        next[members.length] = session;
+        return new RoomSnapshot(name, next);
+    }
+
+    RoomSnapshot without(WebSocketSession session) {
+        for (int i = 0; i < members.length; i++) {
+            if (members[i] == session) {
+                WebSocketSession[] next = new WebSocketSession[members.length - 1];
+                System.arraycopy(members, 0, next, 0, i);
+                System.arraycopy(members, i + 1, next, i, members.length - i - 1);
+                return new RoomSnapshot(name, next);
+            }
+        }
+        return this;
+    }
+}
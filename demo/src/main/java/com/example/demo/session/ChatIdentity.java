@@ -0,0 +1,62 @@
+package com.example.demo.session;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.Collection;
+
+// Danh tính của một session, xác định một lần lúc handshake từ Principal và authority của Spring Security
+// rồi giữ trong attribute của session; bot đọc lại bằng một lần get thay vì đoán role từ nickname client gửi
+public final class ChatIdentity {
+
+    public static final String ATTRIBUTE = "chat.identity";
+
+    public static final ChatIdentity ANONYMOUS = new ChatIdentity(null, ChatRole.USER);
+
+    // null nếu chưa đăng nhập
+    private final String username;
+    private final ChatRole role;
+
+    ChatIdentity(String username, ChatRole role) {
+        this.username = username;
+        this.role = role;
+    }
+
+    // Session không qua handshake interceptor (benchmark, test) coi như chưa đăng nhập
+    public static ChatIdentity of(WebSocketSession session) {
+        Object identity = session != null ? session.getAttributes().get(ATTRIBUTE) : null;
+        return identity instanceof ChatIdentity chatIdentity ? chatIdentity : ANONYMOUS;
+    }
+
+    static ChatIdentity fromAuthorities(String username, Collection<? extends GrantedAuthority> authorities) {
+        ChatRole role = ChatRole.STUDENT;
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            if ("ROLE_ADMIN".equals(name)) {
+                role = ChatRole.ADMIN;
+            } else if ("ROLE_TEACHER".equals(name) && role != ChatRole.ADMIN) {
+                role = ChatRole.TEACHER;
+            }
+        }
+        return new ChatIdentity(username, role);
+    }
+
+    public boolean isAuthenticated() {
+        return username != null;
+    }
+
+    public String getUsername() { return username; }
+    public ChatRole getRole() { return role; }
+
+    public boolean isAdmin() {
+        return role == ChatRole.ADMIN;
+    }
+
+    public boolean isModerator() {
+        return role.isModerator();
+    }
+
+    @Override
+    public String toString() {
+        return "ChatIdentity{" + (username != null ? username : "anonymous") + " " + role + "}";
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.session;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Dựng ChatIdentity từ UserDetailsService của SecurityConfig.
+// Danh tính theo username được cache: chỉ tài khoản tồn tại mới vào cache, để nickname tự đặt
+// của khách không làm cache phình ra
+@Component
+public class ChatIdentityResolver {
+
+    private final UserDetailsService userDetailsService;
+    private final Map<String, ChatIdentity> byUsername = new ConcurrentHashMap<>();
+
+    public ChatIdentityResolver(UserDetailsService userDetailsService) {
+        this.userDetailsService = userDetailsService;
+    }
+
+    // Lúc handshake: Authentication đã có sẵn authority thì dùng luôn, không tra lại
+    public ChatIdentity fromPrincipal(Principal principal) {
+        if (principal == null) {
+            return ChatIdentity.ANONYMOUS;
+        }
+        if (principal instanceof Authentication authentication && authentication.isAuthenticated()) {
+            ChatIdentity identity = ChatIdentity.fromAuthorities(authentication.getName(), authentication.getAuthorities());
+            byUsername.putIfAbsent(identity.getUsername(), identity);
+            return identity;
+        }
+        ChatIdentity identity = forUsername(principal.getName());
+        return identity != null ? identity : ChatIdentity.ANONYMOUS;
+    }
+
+    // Danh tính của một tài khoản theo tên (vd. đối tượng của /mute), null nếu không có tài khoản này
+    public ChatIdentity forUsername(String username) {
+        ChatIdentity cached = byUsername.get(username);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            UserDetails user = userDetailsService.loadUserByUsername(username);
+            ChatIdentity identity = ChatIdentity.fromAuthorities(user.getUsername(), user.getAuthorities());
+            byUsername.put(username, identity);
+            return identity;
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Role của một nickname: tài khoản không tồn tại coi như khách
+    public ChatRole roleOf(String username) {
+        ChatIdentity identity = forUsername(username);
+        return identity != null ? identity.getRole() : ChatRole.USER;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demo.session;
+
+// Vai trò trong chat, suy ra từ authority của tài khoản Spring Security (ROLE_ADMIN, ROLE_TEACHER, ROLE_USER).
+// Tên enum trùng khóa của chat.spam.role-limits
+public enum ChatRole {
+    ADMIN,
+    TEACHER,
+    // Tài khoản sinh viên (chỉ có ROLE_USER)
+    STUDENT,
+    // Chưa đăng nhập
+    USER;
+
+    public boolean isModerator() {
+        return this == ADMIN || this == TEACHER;
+    }
+}
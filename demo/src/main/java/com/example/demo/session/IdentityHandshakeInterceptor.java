@@ -0,0 +1,32 @@
+package com.example.demo.session;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import java.util.Map;
+
+// Lấy Principal của request handshake (đăng nhập form, Spring Security) một lần và gắn ChatIdentity
+// vào attribute của session; /chat vẫn cho phép khách nên không từ chối handshake nào
+@Component
+public class IdentityHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final ChatIdentityResolver resolver;
+
+    public IdentityHandshakeInterceptor(ChatIdentityResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        attributes.put(ChatIdentity.ATTRIBUTE, resolver.fromPrincipal(request.getPrincipal()));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
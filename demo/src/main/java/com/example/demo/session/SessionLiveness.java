@@ -0,0 +1,108 @@
+package com.example.demo.session;
+
+import com.example.demo.logging.ChatEventLog;
+import com.example.demo.outbound.OutboundQueueManager;
+import com.example.demo.timer.TimerWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Phát hiện kết nối chết từ phía server: mỗi session có một lần kiểm tra trên timer wheel chung.
+// Frame nhận vào (kể cả pong) chỉ ghi lại thời điểm; khi kiểm tra, session im lặng quá
+// interval thì được gửi ping WebSocket, im lặng quá idle-timeout thì bị ngắt để fan-out
+// không còn gửi vào socket half-open.
+@Component
+public class SessionLiveness {
+
+    // Trạng thái của một kết nối, tạo một lần khi connect
+    private static final class Liveness {
+        final WebSocketSession session;
+        volatile long lastActivityNanos = System.nanoTime();
+        volatile TimerWheel.Timeout check;
+
+        Liveness(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    private final Map<String, Liveness> sessions = new ConcurrentHashMap<>();
+    private final TimerWheel timer;
+    private final OutboundQueueManager outboundQueues;
+    private final ChatEventLog eventLog;
+
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+
+    private final AtomicLong pingsSent = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public SessionLiveness(@Value("${chat.heartbeat.interval-ms:25000}") long pingIntervalMillis,
+                           @Value("${chat.heartbeat.idle-timeout-ms:70000}") long idleTimeoutMillis,
+                           TimerWheel timer, OutboundQueueManager outboundQueues, ChatEventLog eventLog) {
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(idleTimeoutMillis, pingIntervalMillis));
+        this.timer = timer;
+        this.outboundQueues = outboundQueues;
+        this.eventLog = eventLog;
+    }
+
+    public void register(WebSocketSession session) {
+        Liveness liveness = new Liveness(session);
+        sessions.put(session.getId(), liveness);
+        scheduleCheck(liveness, pingIntervalNanos);
+    }
+
+    public void unregister(WebSocketSession session) {
+        Liveness liveness = sessions.remove(session.getId());
+        if (liveness != null && liveness.check != null) {
+            liveness.check.cancel();
+        }
+    }
+
+    // Gọi cho mọi frame nhận được: một lần lookup và một lần ghi volatile
+    public void touch(WebSocketSession session) {
+        Liveness liveness = sessions.get(session.getId());
+        if (liveness != null) {
+            liveness.lastActivityNanos = System.nanoTime();
+        }
+    }
+
+    // Chạy trên thread của timer wheel: chỉ enqueue ping hoặc yêu cầu đóng, không chặn
+    private void check(Liveness liveness) {
+        if (sessions.get(liveness.session.getId()) != liveness) {
+            return;
+        }
+        long idle = System.nanoTime() - liveness.lastActivityNanos;
+        if (idle >= idleTimeoutNanos) {
+            evicted.incrementAndGet();
+            eventLog.idleEvicted(liveness.session, TimeUnit.NANOSECONDS.toMillis(idle));
+            // SESSION_NOT_RELIABLE: vẫn được giữ chỗ để resume nếu client thật ra còn sống
+            outboundQueues.closeAsync(liveness.session, CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        }
+        if (idle >= pingIntervalNanos) {
+            // Trình duyệt tự trả lời ping WebSocket bằng pong, không cần code phía client
+            if (outboundQueues.send(liveness.session, new PingMessage())) {
+                pingsSent.incrementAndGet();
+            }
+            scheduleCheck(liveness, Math.min(pingIntervalNanos, idleTimeoutNanos - idle));
+        } else {
+            // Có hoạt động gần đây: kiểm tra lại đúng lúc session có thể đã im lặng đủ lâu
+            scheduleCheck(liveness, pingIntervalNanos - idle);
+        }
+    }
+
+    private void scheduleCheck(Liveness liveness, long delayNanos) {
+        liveness.check = timer.schedule(() -> check(liveness), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getSessionCount() { return sessions.size(); }
+    public long getPingsSent() { return pingsSent.get(); }
+    public long getEvictedCount() { return evicted.get(); }
+}
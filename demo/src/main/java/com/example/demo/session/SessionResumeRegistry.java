@@ -0,0 +1,122 @@
+package com.example.demo.session;
+
+import com.example.demo.timer.TimerWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Giữ trạng thái (nickname, phòng) của session vừa rớt mạng trong một khoảng ân hạn,
+// để client kết nối lại bằng resume token lấy lại mọi thứ trong một lần handshake.
+// Thông báo rời phòng chỉ được gửi khi hết ân hạn mà client không quay lại.
+@Component
+public class SessionResumeRegistry {
+
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final int maxParked;
+
+    // Thứ tự chèn = thứ tự park, dùng để bỏ session cũ nhất khi vượt giới hạn
+    private final Map<String, ParkedSession> parked = new LinkedHashMap<>();
+
+    // Hết hạn dùng timer wheel chung; onExpire chỉ enqueue thông báo nên không chặn bánh xe
+    private final TimerWheel timer;
+
+    public SessionResumeRegistry(@Value("${chat.resume.ttl-seconds:120}") long ttlSeconds,
+                                 @Value("${chat.resume.max-parked:10000}") int maxParked,
+                                 TimerWheel timer) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxParked = maxParked;
+        this.timer = timer;
+    }
+
+    // Token ngẫu nhiên 128 bit, dạng base64url
+    public String issueToken() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // Lưu trạng thái của session đã đóng; onExpire chạy nếu hết hạn mà không resume
+    public void park(String token, String nickname, List<String> rooms, Runnable onExpire) {
+        ParkedSession session = new ParkedSession(token, nickname, List.copyOf(rooms), onExpire);
+        ParkedSession evicted = null;
+        synchronized (parked) {
+            ParkedSession previous = parked.put(token, session);
+            if (previous != null) {
+                previous.cancel();
+            }
+            if (parked.size() > maxParked) {
+                Iterator<ParkedSession> oldest = parked.values().iterator();
+                evicted = oldest.next();
+                oldest.remove();
+            }
+            session.expiry = timer.schedule(() -> expire(session), ttlMillis, TimeUnit.MILLISECONDS);
+        }
+        if (evicted != null) {
+            evicted.cancel();
+            evicted.onExpire.run();
+        }
+    }
+
+    // Lấy lại trạng thái (chỉ dùng được một lần); null nếu token không tồn tại hoặc đã hết hạn
+    public ParkedSession resume(String token) {
+        if (token == null) {
+            return null;
+        }
+        ParkedSession session;
+        synchronized (parked) {
+            session = parked.remove(token);
+        }
+        if (session != null) {
+            session.cancel();
+        }
+        return session;
+    }
+
+    private void expire(ParkedSession session) {
+        synchronized (parked) {
+            if (!parked.remove(session.token, session)) {
+                return;
+            }
+        }
+        session.onExpire.run();
+    }
+
+    public int getParkedCount() {
+        synchronized (parked) {
+            return parked.size();
+        }
+    }
+
+    public static class ParkedSession {
+        private final String token;
+        private final String nickname;
+        private final List<String> rooms;
+        private final Runnable onExpire;
+        private TimerWheel.Timeout expiry;
+
+        ParkedSession(String token, String nickname, List<String> rooms, Runnable onExpire) {
+            this.token = token;
+            this.nickname = nickname;
+            this.rooms = rooms;
+            this.onExpire = onExpire;
+        }
+
+        void cancel() {
+            TimerWheel.Timeout timeout = expiry;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        public String getToken() { return token; }
+        public String getNickname() { return nickname; }
+        public List<String> getRooms() { return rooms; }
+    }
+}
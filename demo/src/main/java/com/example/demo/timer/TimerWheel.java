@@ -0,0 +1,213 @@
+package com.example.demo.timer;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Timer wheel phân tầng dùng chung cho mọi timeout (heartbeat, hết hạn resume, hết hạn mute...).
+// Tầng 0 có wheel-size ô, mỗi ô một tick; mỗi tầng trên có 64 ô, mỗi ô bằng cả vòng của tầng dưới.
+// Với tick 100ms, 512 ô: tầng 0 phủ 51 giây, tầng 1 ~55 phút, tầng 2 ~2,4 ngày, tầng 3 ~155 ngày.
+// Timeout xa nằm ở tầng trên và được đổ dần xuống khi tầng dưới quay hết vòng, nên mute nhiều ngày
+// không bị duyệt lại mỗi vòng như hashed wheel một tầng.
+// schedule/cancel là O(1) và không khóa; một thread duy nhất quay bánh xe mỗi tick và chạy
+// các task đến hạn. Độ chính xác bằng một tick, đủ cho timeout cỡ giây.
+// Task chạy trên thread của bánh xe nên phải ngắn và không được chặn (chỉ enqueue, đặt cờ...).
+@Component
+public class TimerWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    // Handle để hủy một timeout đã đặt
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile boolean cancelled;
+
+        Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        // Hủy lười: entry được bỏ khỏi bánh xe khi thread quay tới ô của nó
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final int LEVELS = 4;
+    private static final int UPPER_LEVEL_BITS = 6;
+
+    private final long tickNanos;
+    private final LongSupplier clock;
+    private final long startNanos;
+
+    // Số bit chỉ số ô và số bit dịch của từng tầng: ô của timeout ở tầng L = (deadlineTick >> shift[L]) & mask[L]
+    private final int[] bits = new int[LEVELS];
+    private final int[] shift = new int[LEVELS];
+
+    // Chỉ thread của bánh xe đụng tới các ô; timeout mới đi qua hàng đợi không khóa
+    private final Queue<Timeout>[][] levels;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private long tick;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public TimerWheel(@Value("${chat.timer.tick-ms:100}") long tickMillis,
+                      @Value("${chat.timer.wheel-size:512}") int wheelSize) {
+        this(tickMillis, wheelSize, System::nanoTime, true);
+    }
+
+    // Cho test: đồng hồ giả và không chạy worker thread, bánh xe chỉ quay khi gọi advance()
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickMillis, int wheelSize, LongSupplier clock, boolean startWorker) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        // Làm tròn lên lũy thừa của 2 để lấy ô bằng phép AND
+        int size = Integer.highestOneBit(Math.max(2, wheelSize));
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.levels = new Queue[LEVELS][];
+        for (int level = 0; level < LEVELS; level++) {
+            bits[level] = level == 0 ? Integer.numberOfTrailingZeros(size) : UPPER_LEVEL_BITS;
+            shift[level] = level == 0 ? 0 : shift[level - 1] + bits[level - 1];
+            levels[level] = new Queue[1 << bits[level]];
+            for (int i = 0; i < levels[level].length; i++) {
+                levels[level][i] = new ArrayDeque<>();
+            }
+        }
+        this.worker = new Thread(this::run, "chat-timer-wheel");
+        this.worker.setDaemon(true);
+        if (startWorker) {
+            this.worker.start();
+        }
+    }
+
+    // Chạy task sau delay (làm tròn lên theo tick); gọi được từ bất kỳ thread nào.
+    // Delay cực lớn (ví dụ mute không thời hạn) được giữ ở mức tối đa thay vì tràn số thành đã quá hạn
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long delayNanos = unit.toNanos(Math.max(0, delay));
+        long now = clock.getAsLong() - startNanos;
+        long limit = Long.MAX_VALUE - tickNanos;
+        long elapsed = delayNanos > limit - now ? limit : now + delayNanos;
+        Timeout timeout = new Timeout(task, (elapsed + tickNanos - 1) / tickNanos);
+        scheduled.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    // Số timeout đang chờ (kể cả đã hủy nhưng chưa được dọn)
+    public int getScheduledCount() {
+        return scheduled.get();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleepNanos = deadline - (clock.getAsLong() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
+    // Quay một tick: nhận timeout mới, đổ tầng trên xuống nếu tầng dưới vừa hết vòng, chạy các task đến hạn
+    void advance() {
+        tick++;
+        transferPending();
+        // Tầng dưới vừa quay hết vòng: đổ ô kế tiếp của tầng trên xuống
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << shift[level]) - 1)) != 0) {
+                break;
+            }
+            cascade(levels[level][slot(level, tick)]);
+        }
+        expire(levels[0][slot(0, tick)]);
+    }
+
+    private int slot(int level, long deadlineTick) {
+        return (int) ((deadlineTick >> shift[level]) & ((1 << bits[level]) - 1));
+    }
+
+    // Đưa timeout mới vào ô tương ứng; timeout đã quá hạn vào ô hiện tại để chạy ngay tick này
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                scheduled.decrementAndGet();
+                continue;
+            }
+            place(timeout);
+        }
+    }
+
+    // Tầng thấp nhất mà khoảng cách tới deadline vừa một vòng. Ở tầng L >= 1 khoảng cách luôn >= một ô,
+    // nên ô đích nằm sau ô đang đổ và được đổ đúng lúc; quá tầm tầng trên cùng thì đỗ ở ô xa nhất
+    // rồi được xếp lại khi đổ tới
+    private void place(Timeout timeout) {
+        long deadline = Math.max(timeout.deadlineTick, tick);
+        long delta = deadline - tick;
+        for (int level = 0; level < LEVELS; level++) {
+            long span = 1L << (shift[level] + bits[level]);
+            if (delta < span) {
+                levels[level][slot(level, deadline)].add(timeout);
+                return;
+            }
+        }
+        int top = LEVELS - 1;
+        levels[top][slot(top, tick + (1L << (shift[top] + bits[top])) - 1)].add(timeout);
+    }
+
+    private void cascade(Queue<Timeout> bucket) {
+        Timeout timeout;
+        while ((timeout = bucket.poll()) != null) {
+            if (timeout.cancelled) {
+                scheduled.decrementAndGet();
+            } else {
+                place(timeout);
+            }
+        }
+    }
+
+    // Mọi timeout trong ô tầng 0 đều đến hạn ở tick này
+    private void expire(Queue<Timeout> bucket) {
+        Timeout timeout;
+        while ((timeout = bucket.poll()) != null) {
+            scheduled.decrementAndGet();
+            if (timeout.cancelled) {
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                log.warn("Timer task failed", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.bot;
+
+import com.example.demo.ChatMessage;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeywordMatcherTest {
+
+    @Test
+    void findsOverlappingKeywords() {
+        KeywordMatcher<String> matcher = matcher("he", "she", "his", "hers");
+
+        assertEquals(List.of("1:she", "2:he", "2:hers"), matches(matcher, "ushers"));
+    }
+
+    @Test
+    void reportsKeywordsThatAreSuffixesOfOthers() {
+        KeywordMatcher<String> matcher = matcher("a", "aa", "aaa");
+
+        assertEquals(List.of("0:a", "0:aa", "0:aaa", "1:a", "1:aa", "2:a"), sorted(matches(matcher, "aaa")));
+    }
+
+    @Test
+    void followsFailureLinksAfterPartialMatch() {
+        KeywordMatcher<String> matcher = matcher("abcd", "bcx", "c");
+
+        assertEquals(List.of("2:c", "1:bcx"), matches(matcher, "abcx"));
+        assertEquals(List.of("2:c", "5:c", "3:abcd"), matches(matcher, "abcabcd"));
+    }
+
+    @Test
+    void matchesVietnameseText() {
+        KeywordMatcher<String> matcher = matcher("xin chào", "chào", "cảm ơn", "đẹp");
+
+        assertEquals(List.of("0:xin chào", "4:chào", "14:cảm ơn"), matches(matcher, "xin chào bạn, cảm ơn nhé"));
+        // Dấu khác nhau là ký tự khác nhau
+        assertTrue(matches(matcher, "xin chao, cam on, dep").isEmpty());
+        assertEquals(List.of("4:đẹp"), matches(matcher, "trờiđẹp"));
+    }
+
+    @Test
+    void matchesCaseInsensitivelyOnLowercasedText() {
+        KeywordMatcher<String> matcher = matcher("xin chào", "đẹp", "quiz");
+        // Automaton so khớp chính xác; BotManager đưa vào văn bản đã lowercase qua ParsedMessage
+        assertTrue(matches(matcher, "XIN CHÀO").isEmpty());
+
+        ParsedMessage parsed = ParsedMessage.parse(new ChatMessage("alice", "XIN CHÀO, Trời ĐẸP, chơi QuIz", "general"));
+
+        assertEquals(List.of("0:xin chào", "15:đẹp", "25:quiz"), matches(matcher, parsed.getLowerText()));
+    }
+
+    @Test
+    void deliversEveryValueOfAKeyword() {
+        Map<String, List<String>> keywords = new LinkedHashMap<>();
+        keywords.put("hello", List.of("bot-a", "bot-b"));
+        keywords.put("", List.of("ignored"));
+        keywords.put("bye", List.of());
+        KeywordMatcher<String> matcher = KeywordMatcher.build(keywords);
+
+        List<String> values = new ArrayList<>();
+        matcher.match("hello bye", (start, keyword, value) -> values.add(keyword + "=" + value));
+
+        assertEquals(List.of("hello=bot-a", "hello=bot-b"), values);
+    }
+
+    @Test
+    void emptyMatcherMatchesNothing() {
+        KeywordMatcher<String> matcher = KeywordMatcher.empty();
+
+        assertTrue(matcher.isEmpty());
+        assertTrue(matches(matcher, "anything").isEmpty());
+        assertTrue(KeywordMatcher.<String>build(Map.of()).isEmpty());
+    }
+
+    private static KeywordMatcher<String> matcher(String... keywords) {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        for (String keyword : keywords) {
+            map.put(keyword, List.of(keyword));
+        }
+        return KeywordMatcher.build(map);
+    }
+
+    // "start:keyword" theo thứ tự automaton báo (theo vị trí kết thúc)
+    private static List<String> matches(KeywordMatcher<String> matcher, String text) {
+        List<String> found = new ArrayList<>();
+        matcher.match(text, (start, keyword, value) -> found.add(start + ":" + keyword));
+        return found;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        List<String> copy = new ArrayList<>(list);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChatMessageBinaryCodecTest {
+
+    private final ChatMessageBinaryCodec codec = new ChatMessageBinaryCodec();
+
+    @Test
+    void roundTripsMessageWithSeq() {
+        assertEquals("alice|hello|general|0", roundTrip(message("alice", "hello", "general", 0L)));
+        assertEquals("alice|hello|general|127", roundTrip(message("alice", "hello", "general", 127L)));
+        assertEquals("alice|hello|general|300", roundTrip(message("alice", "hello", "general", 300L)));
+        assertEquals("alice|hello|general|" + (Long.MAX_VALUE - 1),
+            roundTrip(message("alice", "hello", "general", Long.MAX_VALUE - 1)));
+    }
+
+    @Test
+    void roundTripsNullAndEmptyFields() {
+        assertEquals("null|hello|null|null", roundTrip(message(null, "hello", null, null)));
+        assertEquals("|||null", roundTrip(message("", "", "", null)));
+        // Tin nhắn rỗng khác null: chỉ message null mới bị coi là frame hỏng
+        assertNull(codec.decode(ByteBuffer.wrap(codec.encode(message("alice", null, "general", 1L)))));
+    }
+
+    @Test
+    void roundTripsMultiByteUtf8() {
+        String text = "Xin chào, trời đẹp quá! 🎉 日本語";
+        byte[] encoded = codec.encode(message("Khách-Đạt", text, "phòng-chung", 5L));
+
+        assertEquals("Khách-Đạt|" + text + "|phòng-chung|5", describe(codec.decode(ByteBuffer.wrap(encoded))));
+        // Độ dài trong frame là số byte UTF-8, không phải số ký tự
+        int nicknameBytes = "Khách-Đạt".getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(nicknameBytes + 1, encoded[2]);
+    }
+
+    @Test
+    void decodesFromSliceOfLargerBuffer() {
+        byte[] encoded = codec.encode(message("alice", "hello", "general", 9L));
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 10);
+        buffer.position(4);
+        buffer.put(encoded);
+        buffer.position(4).limit(4 + encoded.length);
+
+        assertEquals("alice|hello|general|9", describe(codec.decode(buffer)));
+        // decode không làm dịch vị trí của buffer gọi vào
+        assertEquals(4, buffer.position());
+        assertEquals("alice|hello|general|9", describe(codec.decode(ByteBuffer.allocateDirect(encoded.length)
+            .put(encoded).flip())));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        byte[] encoded = codec.encode(message("alice", "hello", "general", 300L));
+        // Mọi tiền tố ngắn hơn frame đầy đủ đều thiếu ít nhất một byte của room
+        for (int length = 0; length < encoded.length; length++) {
+            assertNull(codec.decode(ByteBuffer.wrap(Arrays.copyOf(encoded, length))), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsUnknownFrameType() {
+        byte[] encoded = codec.encode(message("alice", "hello", "general", null));
+        encoded[0] = 0x02;
+
+        assertNull(codec.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    void rejectsOversizedAndNegativeVarints() {
+        // Độ dài chuỗi lớn hơn phần còn lại của frame
+        assertNull(codec.decode(frame(0x01, 0x00, 0x7F, 'a', 'b')));
+        // Varint quá 10 byte
+        assertNull(codec.decode(frame(0x01, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01)));
+        // Độ dài 2^64 - 1 (âm khi đọc thành long)
+        assertNull(codec.decode(frame(0x01, 0x00, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01, 'a')));
+        // Độ dài 2^64 - 2^32 + 4: âm khi đọc thành long nhưng ép sang int lại thành 3
+        assertNull(codec.decode(frame(0x01, 0x00, 0x84, 0x80, 0x80, 0x80, 0xF0, 0xFF, 0xFF, 0xFF, 0xFF, 0x01,
+            'a', 'b', 'c', 0x01, 0x01)));
+        // Seq âm khi đọc thành long: coi như không có seq
+        assertEquals("a|b|c|null", describe(codec.decode(frame(0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF,
+            0xFF, 0x01, 0x02, 'a', 0x02, 'b', 0x02, 'c'))));
+    }
+
+    private String roundTrip(ChatMessage message) {
+        return describe(codec.decode(ByteBuffer.wrap(codec.encode(message))));
+    }
+
+    private static ChatMessage message(String nickname, String text, String room, Long seq) {
+        ChatMessage message = new ChatMessage(nickname, text, room);
+        message.setSeq(seq);
+        return message;
+    }
+
+    // "nickname|message|room|seq" để so sánh cả bốn field một lần
+    private static String describe(ChatMessage message) {
+        if (message == null) {
+            return null;
+        }
+        return message.getNickname() + "|" + message.getMessage() + "|" + message.getRoom() + "|" + message.getSeq();
+    }
+
+    private static ByteBuffer frame(int... bytes) {
+        ByteBuffer frame = ByteBuffer.allocate(bytes.length);
+        for (int b : bytes) {
+            frame.put((byte) b);
+        }
+        return frame.flip();
+    }
+}
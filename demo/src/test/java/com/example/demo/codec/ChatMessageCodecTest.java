@@ -0,0 +1,84 @@
+package com.example.demo.codec;
+
+import com.example.demo.ChatMessage;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ChatMessageCodecTest {
+
+    private final ChatMessageCodec codec = new ChatMessageCodec();
+
+    @Test
+    void roundTripsMessageWithSeq() throws IOException {
+        assertEquals("alice|hello|general|42", roundTrip(message("alice", "hello", "general", 42L)));
+        assertEquals("alice|hello|general|null", roundTrip(message("alice", "hello", "general", null)));
+        assertEquals("null|hello|null|null", roundTrip(message(null, "hello", null, null)));
+    }
+
+    @Test
+    void roundTripsTextThatNeedsEscaping() throws IOException {
+        for (String text : List.of("say \"hi\"", "C:\\temp\\", "line 1\nline 2\ttab\r", "nul \u0000 bell \u0007",
+                "{\"nickname\":\"admin\"}", "</script>", "Xin chào 🎉 日本語")) {
+            assertEquals("bob|" + text + "|general|1", roundTrip(message("bob", text, "general", 1L)), text);
+        }
+    }
+
+    @Test
+    void encodesUtf8AndOmitsNullSeq() throws IOException {
+        byte[] encoded = codec.encode(message("Đạt", "chào \"bạn\"", "general", null));
+
+        assertEquals("{\"nickname\":\"Đạt\",\"message\":\"chào \\\"bạn\\\"\",\"room\":\"general\"}",
+            new String(encoded, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesFieldsInAnyOrderAndSkipsUnknownFields() {
+        assertEquals("alice|hi|tech|7", describe(codec.decode(
+            "  {\"seq\":7,\"extra\":{\"a\":[1,2]},\"room\":\"tech\",\"message\":\"hi\",\"nickname\":\"alice\",\"n\":[]}")));
+        // seq không phải số nguyên thì bỏ qua
+        assertEquals("alice|hi|null|null", describe(codec.decode("{\"nickname\":\"alice\",\"message\":\"hi\",\"seq\":\"7\"}")));
+        // Giá trị vô hướng khác chuỗi được đọc dưới dạng chuỗi
+        assertEquals("null|12|null|null", describe(codec.decode("{\"message\":12}")));
+    }
+
+    @Test
+    void treatsNonJsonInputAsPlainText() {
+        for (String payload : List.of("", "   ", "hello", "/join tech", "[{\"message\":\"hi\"}]", "\"hi\"",
+                "{not json", "{\"message\":\"hi\"", "{}",
+                "{\"nickname\":\"alice\"}", "{\"message\":null}", "{\"message\":{\"text\":\"hi\"}}",
+                "{\"message\":\"hi\",\"room\":[\"a\"]}")) {
+            assertNull(codec.decode(payload), payload);
+        }
+    }
+
+    @Test
+    void encodesSessionFrame() throws IOException {
+        byte[] encoded = codec.encodeSession("token", true, "alice", List.of("general", "tech"), "epoch");
+
+        assertEquals("{\"type\":\"session\",\"resumeToken\":\"token\",\"resumed\":true,\"nickname\":\"alice\","
+            + "\"rooms\":[\"general\",\"tech\"],\"epoch\":\"epoch\"}", new String(encoded, StandardCharsets.UTF_8));
+    }
+
+    private String roundTrip(ChatMessage message) throws IOException {
+        return describe(codec.decode(new String(codec.encode(message), StandardCharsets.UTF_8)));
+    }
+
+    private static ChatMessage message(String nickname, String text, String room, Long seq) {
+        ChatMessage message = new ChatMessage(nickname, text, room);
+        message.setSeq(seq);
+        return message;
+    }
+
+    // "nickname|message|room|seq" để so sánh cả bốn field một lần
+    private static String describe(ChatMessage message) {
+        if (message == null) {
+            return null;
+        }
+        return message.getNickname() + "|" + message.getMessage() + "|" + message.getRoom() + "|" + message.getSeq();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.moderation;
+
+import com.example.demo.cluster.LoopbackRoomBus;
+import com.example.demo.persistence.Durability;
+import com.example.demo.timer.TimerWheel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModerationJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restartRestoresModerationStateAndOpenReports() throws Exception {
+        Node node = new Node(dir);
+        node.moderation.muteUser("alice", 60, "spam", "mod");
+        node.moderation.banUser("bob", "abuse", "mod");
+        node.moderation.muteUser("carol", 60, "spam", "mod");
+        node.moderation.unmuteUser("carol");
+        node.reports.submit("dave", "bob", "abuse", "general");
+        node.reports.submit("dave", "alice", "spam", "general");
+        node.reports.resolve(1);
+        node.awaitAppended(7);
+        node.shutdown();
+
+        Node restarted = new Node(dir);
+        assertTrue(restarted.moderation.isMuted("alice"));
+        assertTrue(restarted.moderation.isBanned("bob"));
+        assertFalse(restarted.moderation.isMuted("carol"));
+        assertEquals(List.of(2L), ids(restarted.reports.page(0, 10)));
+        assertEquals(3, restarted.reports.submit("erin", "bob", "again", "general").getId());
+        restarted.shutdown();
+    }
+
+    @Test
+    void crashBetweenSnapshotMoveAndJournalTruncateReplaysIdempotently() throws Exception {
+        Node node = new Node(dir);
+        node.moderation.muteUser("alice", 60, "spam", "mod");
+        node.moderation.unmuteUser("alice");
+        node.moderation.banUser("bob", "abuse", "mod");
+        node.reports.submit("dave", "bob", "abuse", "general");
+        node.reports.submit("dave", "alice", "spam", "general");
+        node.reports.resolve(1);
+        node.awaitAppended(6);
+        // Journal trước khi bị cắt; shutdown ghi snapshot.bin chứa đúng các thay đổi đó
+        Path saved = dir.resolve("journal.saved");
+        Files.copy(dir.resolve("journal.log"), saved);
+        node.shutdown();
+        assertEquals(0, Files.size(dir.resolve("journal.log")));
+
+        // Sập sau Files.move nhưng trước truncate: cả snapshot lẫn journal cũ cùng được phát lại
+        Files.move(saved, dir.resolve("journal.log"), StandardCopyOption.REPLACE_EXISTING);
+        Node restarted = new Node(dir);
+
+        assertFalse(restarted.moderation.isMuted("alice"));
+        assertTrue(restarted.moderation.isBanned("bob"));
+        assertEquals(List.of(2L), ids(restarted.reports.page(0, 10)));
+        assertEquals(1, restarted.reports.getOpenCountFor("alice"));
+        assertEquals(0, restarted.reports.getOpenCountFor("bob"));
+        assertEquals(3, restarted.reports.submit("erin", "bob", "again", "general").getId());
+        restarted.shutdown();
+    }
+
+    @Test
+    void journalChangesAfterSnapshotWinOverSnapshot() throws Exception {
+        Node first = new Node(dir);
+        first.moderation.muteUser("alice", 60, "spam", "mod");
+        first.reports.submit("dave", "alice", "spam", "general");
+        first.awaitAppended(2);
+        first.shutdown();
+
+        // Lần chạy thứ hai sập hẳn (không compact): snapshot cũ + journal mới
+        Node second = new Node(dir);
+        second.moderation.unmuteUser("alice");
+        second.moderation.banUser("alice", "abuse", "mod");
+        second.moderation.unbanUser("alice");
+        second.moderation.muteUser("alice", 30, "again", "mod");
+        second.reports.resolve(1);
+        second.awaitAppended(5);
+        Path snapshot = Files.copy(dir.resolve("snapshot.bin"), dir.resolve("snapshot.saved"));
+        Path journal = Files.copy(dir.resolve("journal.log"), dir.resolve("journal.saved"));
+        second.shutdown();
+        Files.move(snapshot, dir.resolve("snapshot.bin"), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(journal, dir.resolve("journal.log"), StandardCopyOption.REPLACE_EXISTING);
+
+        Node restarted = new Node(dir);
+
+        assertTrue(restarted.moderation.isMuted("alice"));
+        assertEquals("again", restarted.moderation.getEntry("alice").getReason());
+        assertEquals(0, restarted.reports.getOpenCount());
+        assertEquals(2, restarted.reports.submit("erin", "alice", "again", "general").getId());
+        restarted.shutdown();
+    }
+
+    @Test
+    void tornJournalTailIsDroppedAndAppendsContinueAfterIt() throws Exception {
+        Node node = new Node(dir);
+        node.reports.submit("dave", "bob", "one", "general");
+        node.reports.submit("dave", "bob", "two", "general");
+        node.reports.submit("dave", "bob", "three", "general");
+        node.awaitAppended(3);
+        Path saved = Files.copy(dir.resolve("journal.log"), dir.resolve("journal.saved"));
+        node.shutdown();
+
+        // Sập giữa lúc ghi báo cáo thứ ba: mất vài byte cuối, không có snapshot
+        Files.delete(dir.resolve("snapshot.bin"));
+        Files.move(saved, dir.resolve("journal.log"), StandardCopyOption.REPLACE_EXISTING);
+        long torn = Files.size(dir.resolve("journal.log")) - 5;
+        truncate(dir.resolve("journal.log"), torn);
+
+        Node recovered = new Node(dir);
+        assertEquals(List.of(1L, 2L), ids(recovered.reports.page(0, 10)));
+        assertTrue(Files.size(dir.resolve("journal.log")) < torn);
+
+        // Bản ghi mới nối ngay sau bản ghi hợp lệ cuối nên lần khởi động sau vẫn đọc được
+        recovered.reports.submit("erin", "bob", "four", "general");
+        recovered.awaitAppended(1);
+        saved = Files.copy(dir.resolve("journal.log"), dir.resolve("journal.saved"));
+        recovered.shutdown();
+        Files.delete(dir.resolve("snapshot.bin"));
+        Files.move(saved, dir.resolve("journal.log"), StandardCopyOption.REPLACE_EXISTING);
+
+        Node restarted = new Node(dir);
+        assertEquals(List.of(1L, 2L, 3L), ids(restarted.reports.page(0, 10)));
+        assertEquals("four", restarted.reports.page(2, 10).get(0).getReason());
+        restarted.shutdown();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static List<Long> ids(List<ModerationReport> reports) {
+        List<Long> ids = new ArrayList<>();
+        for (ModerationReport report : reports) {
+            ids.add(report.getId());
+        }
+        return ids;
+    }
+
+    // Một node với journal thật trên thư mục tạm; snapshot-every lớn để chỉ shutdown mới compact
+    private static final class Node {
+        final LoopbackRoomBus bus = new LoopbackRoomBus();
+        final TimerWheel timer = new TimerWheel(10, 64);
+        final ModerationJournal journal;
+        final ModerationService moderation;
+        final ReportQueue reports;
+
+        Node(Path dir) {
+            journal = new ModerationJournal(true, dir.toString(), 10_000, Durability.ALWAYS, 10);
+            moderation = new ModerationService(bus, timer, journal);
+            reports = new ReportQueue(journal);
+        }
+
+        void awaitAppended(long count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (journal.getAppendedCount() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, journal.getAppendedCount());
+        }
+
+        void shutdown() {
+            journal.shutdown();
+            timer.shutdown();
+            bus.shutdown();
+        }
+    }
+}
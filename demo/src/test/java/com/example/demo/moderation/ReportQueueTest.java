@@ -0,0 +1,100 @@
+package com.example.demo.moderation;
+
+import com.example.demo.persistence.Durability;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportQueueTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesOpenReportsOldestFirst() {
+        ReportQueue queue = queue();
+        for (int i = 0; i < 7; i++) {
+            queue.submit("reporter", i % 2 == 0 ? "bob" : "carol", "reason " + i, "general");
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), ids(queue.page(0, 3)));
+        assertEquals(List.of(4L, 5L, 6L), ids(queue.page(3, 3)));
+        assertEquals(List.of(7L), ids(queue.page(6, 3)));
+        assertTrue(queue.page(7, 3).isEmpty());
+        assertEquals(7, queue.getOpenCount());
+    }
+
+    @Test
+    void cursorSurvivesResolveOfCurrentAndEarlierReports() {
+        ReportQueue queue = queue();
+        for (int i = 0; i < 6; i++) {
+            queue.submit("reporter", "bob", "reason " + i, "general");
+        }
+        List<ModerationReport> first = queue.page(0, 2);
+        assertEquals(List.of(1L, 2L), ids(first));
+
+        // Moderator xử lý chính các báo cáo vừa xem và một báo cáo ở trang sau
+        queue.resolve(1);
+        queue.resolve(2);
+        queue.resolve(4);
+
+        long cursor = first.get(first.size() - 1).getId();
+        assertEquals(List.of(3L, 5L), ids(queue.page(cursor, 2)));
+        assertEquals(List.of(6L), ids(queue.page(5, 2)));
+        assertEquals(List.of(3L, 5L, 6L), ids(queue.page(0, 10)));
+        assertEquals(3, queue.getOpenCount());
+    }
+
+    @Test
+    void pagesReportsAboutOneUser() {
+        ReportQueue queue = queue();
+        queue.submit("a", "bob", "1", "general");
+        queue.submit("a", "carol", "2", "general");
+        queue.submit("a", "bob", "3", "general");
+        queue.submit("a", "bob", "4", "general");
+        queue.submit("a", "carol", "5", "general");
+        queue.submit("a", "bob", "6", "general");
+
+        assertEquals(List.of(1L, 3L), ids(queue.pageFor("bob", 0, 2)));
+        queue.resolve(3);
+        assertEquals(List.of(4L, 6L), ids(queue.pageFor("bob", 1, 2)));
+        assertEquals(List.of(2L, 5L), ids(queue.pageFor("carol", 0, 10)));
+        assertEquals(3, queue.getOpenCountFor("bob"));
+
+        queue.resolve(2);
+        queue.resolve(5);
+        assertTrue(queue.pageFor("carol", 0, 10).isEmpty());
+        assertEquals(0, queue.getOpenCountFor("carol"));
+        assertTrue(queue.pageFor("nobody", 0, 10).isEmpty());
+    }
+
+    @Test
+    void resolveUnknownOrResolvedReportReturnsNull() {
+        ReportQueue queue = queue();
+        queue.submit("a", "bob", "1", "general");
+
+        assertEquals(1, queue.resolve(1).getId());
+        assertNull(queue.resolve(1));
+        assertNull(queue.resolve(42));
+        assertEquals(0, queue.getOpenCount());
+    }
+
+    // Journal tắt: ReportQueue chỉ giữ trạng thái trong bộ nhớ
+    private ReportQueue queue() {
+        return new ReportQueue(new ModerationJournal(false, dir.toString(), 10_000, Durability.NONE, 10));
+    }
+
+    private static List<Long> ids(List<ModerationReport> reports) {
+        List<Long> ids = new ArrayList<>();
+        for (ModerationReport report : reports) {
+            ids.add(report.getId());
+        }
+        return ids;
+    }
+}
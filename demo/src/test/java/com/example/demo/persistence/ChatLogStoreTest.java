@@ -0,0 +1,156 @@
+package com.example.demo.persistence;
+
+import com.example.demo.history.RoomHistory;
+import com.example.demo.history.RoomLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.socket.TextMessage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatLogStoreTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restartRestoresHistoryAndSeq() throws Exception {
+        ChatLogStore store = store(history());
+        appendFrames(store, "general", 1, 5);
+        store.shutdown();
+
+        RoomHistory history = history();
+        ChatLogStore restarted = store(history);
+
+        RoomLog log = history.log("general");
+        assertEquals(5, log.lastSeq());
+        assertEquals(payloads(1, 5), payloads(log.since(0, 10)));
+        assertEquals(payloads(3, 4), payloads(restarted.read("general", 2, 4, 10)));
+        restarted.shutdown();
+    }
+
+    @Test
+    void restartAfterTornWriteKeepsCompleteFrames() throws Exception {
+        ChatLogStore store = store(history());
+        appendFrames(store, "general", 1, 5);
+        store.shutdown();
+
+        // Shutdown chỉ đóng segment đang ghi chứ không seal: file vẫn dài bằng dung lượng đã map
+        Path segment = LogSegment.logFile(dir.resolve("room-general"), 1);
+        assertEquals(SEGMENT_BYTES, Files.size(segment));
+        long fourRecords = 4L * new LogRecord(1, 0, frame(1).asBytes()).sizeInBytes();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(fourRecords + 10);
+        }
+
+        RoomHistory history = history();
+        ChatLogStore restarted = store(history);
+
+        assertEquals(4, history.log("general").lastSeq());
+        assertEquals(payloads(1, 4), payloads(history.log("general").since(0, 10)));
+        // Segment được map lại đủ dung lượng chứ không cắt về dữ liệu hợp lệ
+        assertEquals(SEGMENT_BYTES, Files.size(segment));
+        restarted.shutdown();
+    }
+
+    @Test
+    void roomThatFailsRecoveryIsQuarantinedWithoutAffectingOthers() throws Exception {
+        ChatLogStore store = store(history());
+        appendFrames(store, "general", 1, 3);
+        store.append("random", 1, frame(1));
+        store.append("random", 2, frame(2));
+        appendFrames(store, "general", 4, 5);
+        store.shutdown();
+
+        // Index của "random" không mở được, "general" có thêm một file .log lạ
+        Path broken = dir.resolve("room-random");
+        Files.delete(LogSegment.indexFile(broken, 1));
+        Files.createDirectory(LogSegment.indexFile(broken, 1));
+        Files.writeString(dir.resolve("room-general").resolve("notes.log"), "not a segment");
+
+        RoomHistory history = history();
+        ChatLogStore restarted = store(history);
+
+        assertEquals(5, history.log("general").lastSeq());
+        assertEquals(0, history.log("random").lastSeq());
+        assertFalse(Files.exists(broken));
+        List<Path> quarantined = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(dir)) {
+            dirs.filter(path -> path.getFileName().toString().startsWith("broken-room-random-")).forEach(quarantined::add);
+        }
+        assertEquals(1, quarantined.size());
+        assertTrue(Files.exists(LogSegment.logFile(quarantined.get(0), 1)));
+
+        // Phòng bị cách ly ghi lại từ đầu vào thư mục mới, dữ liệu cũ không bị đè
+        restarted.append("random", 1, frame(7));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (restarted.getAppendedCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(frame(7).getPayload()), payloads(restarted.read("random", 0, 1, 10)));
+        restarted.shutdown();
+    }
+
+    @Test
+    void recoveryRemovesEmptyRoomDirectories() throws Exception {
+        Files.createDirectories(dir.resolve("room-empty"));
+
+        RoomHistory history = history();
+        ChatLogStore store = store(history);
+
+        assertFalse(Files.exists(dir.resolve("room-empty")));
+        assertEquals(0, history.getRoomCount());
+        store.shutdown();
+    }
+
+    private ChatLogStore store(RoomHistory history) {
+        return new ChatLogStore(true, dir.toString(), SEGMENT_BYTES, Durability.BATCH, 10, 168, 0, 1024, 0, 16, history);
+    }
+
+    private static RoomHistory history() {
+        return new RoomHistory(100, 1 << 20, 1 << 24, 50);
+    }
+
+    private static void appendFrames(ChatLogStore store, String room, long from, long to) throws InterruptedException {
+        for (long seq = from; seq <= to; seq++) {
+            store.append(room, seq, frame(seq));
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (store.getAppendedCount() < to - from + 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(store.getAppendedCount() >= to - from + 1);
+    }
+
+    private static TextMessage frame(long seq) {
+        return new TextMessage(String.format("{\"seq\":%06d}", seq));
+    }
+
+    private static List<String> payloads(long from, long to) {
+        List<String> payloads = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            payloads.add(frame(seq).getPayload());
+        }
+        return payloads;
+    }
+
+    private static List<String> payloads(List<TextMessage> frames) {
+        List<String> payloads = new ArrayList<>();
+        for (TextMessage frame : frames) {
+            payloads.add(frame.getPayload());
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.demo.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogSegmentTest {
+
+    private static final int CAPACITY = 64 * 1024;
+    // Index dày để recover phải dùng và kiểm tra nhiều entry
+    private static final int INDEX_INTERVAL = 64;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversEveryRecordAfterCleanClose() throws IOException {
+        writeSegment(1, 20);
+
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        assertEquals(20, segment.getLastSeq());
+        assertEquals(20 * recordSize(1), segment.getSize());
+        assertEquals(seqs(1, 20), readSeqs(segment, 0));
+        segment.close(false);
+    }
+
+    @Test
+    void cutsTornTailAtLastCompleteRecord() throws IOException {
+        writeSegment(1, 10);
+        // Sập máy giữa lúc ghi bản ghi thứ 10: chỉ còn nửa đầu của nó
+        truncate(LogSegment.logFile(dir, 1), 9 * recordSize(1) + recordSize(1) / 2);
+
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        assertEquals(9, segment.getLastSeq());
+        assertEquals(9 * recordSize(1), segment.getSize());
+        assertEquals(seqs(1, 9), readSeqs(segment, 0));
+
+        // Ghi tiếp ngay sau bản ghi hợp lệ cuối cùng, đè lên phần ghi dở
+        segment.append(record(10));
+        assertEquals(seqs(8, 10), readSeqs(segment, 7));
+        segment.close(false);
+    }
+
+    @Test
+    void stopsAtRecordWithBadChecksum() throws IOException {
+        writeSegment(1, 10);
+        // Hỏng một byte payload của bản ghi seq 10 (sau entry index cuối): CRC sai nên bị cắt khỏi đuôi
+        int position = 9 * recordSize(1) + LogRecord.HEADER_BYTES;
+        try (FileChannel channel = FileChannel.open(LogSegment.logFile(dir, 1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), position);
+        }
+
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        assertEquals(9, segment.getLastSeq());
+        assertEquals(9 * recordSize(1), segment.getSize());
+        assertEquals(seqs(1, 9), readSeqs(segment, 0));
+        segment.close(false);
+    }
+
+    @Test
+    void rebuildsMissingIndexByScanning() throws IOException {
+        writeSegment(1, 30);
+        Files.delete(LogSegment.indexFile(dir, 1));
+
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        assertEquals(30, segment.getLastSeq());
+        assertEquals(seqs(21, 30), readSeqs(segment, 20));
+        segment.close(true);
+        // Index dựng lại được ghi xuống đĩa khi flush
+        assertTrue(Files.size(LogSegment.indexFile(dir, 1)) >= LogSegment.INDEX_ENTRY_BYTES);
+    }
+
+    @Test
+    void ignoresIndexEntriesPointingPastValidData() throws IOException {
+        writeSegment(1, 30);
+        // Cắt log còn 12 bản ghi nhưng giữ nguyên index cũ: các entry trỏ quá dữ liệu phải bị bỏ
+        truncate(LogSegment.logFile(dir, 1), 12 * recordSize(1));
+        long indexBytes = Files.size(LogSegment.indexFile(dir, 1));
+
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        assertEquals(12, segment.getLastSeq());
+        assertEquals(seqs(11, 12), readSeqs(segment, 10));
+        assertTrue(Files.size(LogSegment.indexFile(dir, 1)) < indexBytes);
+        segment.close(false);
+    }
+
+    @Test
+    void emptySegmentRecoversAsEmpty() throws IOException {
+        LogSegment.create(dir, 5, CAPACITY, INDEX_INTERVAL).close(false);
+
+        LogSegment segment = LogSegment.recover(dir, 5, CAPACITY, INDEX_INTERVAL);
+
+        assertTrue(segment.isEmpty());
+        assertEquals(4, segment.getLastSeq());
+        segment.close(false);
+    }
+
+    @Test
+    void sealedSegmentKeepsLengthAndIsReadableFromIndex() throws IOException {
+        LogSegment segment = LogSegment.create(dir, 1, CAPACITY, INDEX_INTERVAL);
+        for (long seq = 1; seq <= 25; seq++) {
+            segment.append(record(seq));
+        }
+        segment.seal();
+
+        // Không cắt file đang map: phần sau bản ghi cuối vẫn là byte 0
+        assertEquals(CAPACITY, Files.size(LogSegment.logFile(dir, 1)));
+        List<Long> seqs = new ArrayList<>();
+        LogSegment.readSealed(dir, 1, 17, record -> seqs.add(record.getSeq()));
+        assertEquals(seqs(18, 25), seqs);
+    }
+
+    @Test
+    void readsSealedRecordsAcrossChunksAndLargerThanAChunk() throws IOException {
+        LogSegment segment = LogSegment.create(dir, 1, 4 * CAPACITY, INDEX_INTERVAL);
+        // Bản ghi 1000 byte vắt qua ranh giới khúc đọc 64KB, bản ghi 100 lớn hơn cả một khúc
+        for (long seq = 1; seq <= 100; seq++) {
+            segment.append(new LogRecord(seq, 0, new byte[seq == 100 ? 2 * CAPACITY : 1_000]));
+        }
+        segment.append(new LogRecord(101, 0, new byte[10]));
+        segment.seal();
+
+        List<Long> seqs = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        LogSegment.readSealed(dir, 1, 0, record -> {
+            seqs.add(record.getSeq());
+            lengths.add(record.getPayload().length);
+            return true;
+        });
+
+        assertEquals(seqs(1, 101), seqs);
+        assertEquals(List.of(1_000, 2 * CAPACITY, 10), lengths.subList(98, 101));
+    }
+
+    @Test
+    void visitorCanStopReading() throws IOException {
+        writeSegment(1, 10);
+        LogSegment segment = LogSegment.recover(dir, 1, CAPACITY, INDEX_INTERVAL);
+
+        List<Long> seqs = new ArrayList<>();
+        segment.read(2, record -> {
+            seqs.add(record.getSeq());
+            return seqs.size() < 3;
+        });
+
+        assertEquals(seqs(3, 5), seqs);
+        assertFalse(segment.isEmpty());
+        segment.close(false);
+    }
+
+    // Ghi rồi đóng như lúc tắt máy bình thường: file vẫn giữ kích thước đã map, phần sau dữ liệu là 0
+    private void writeSegment(long baseSeq, int count) throws IOException {
+        LogSegment segment = LogSegment.create(dir, baseSeq, CAPACITY, INDEX_INTERVAL);
+        for (long seq = baseSeq; seq < baseSeq + count; seq++) {
+            segment.append(record(seq));
+        }
+        segment.close(true);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static LogRecord record(long seq) {
+        return new LogRecord(seq, 1_000 + seq, payload(seq));
+    }
+
+    // Payload cùng độ dài cho mọi seq để tính được vị trí từng bản ghi
+    private static byte[] payload(long seq) {
+        return String.format("{\"seq\":%06d}", seq).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int recordSize(long seq) {
+        return LogRecord.HEADER_BYTES + payload(seq).length;
+    }
+
+    private static List<Long> readSeqs(LogSegment segment, long afterSeq) {
+        List<Long> seqs = new ArrayList<>();
+        segment.read(afterSeq, record -> seqs.add(record.getSeq()));
+        return seqs;
+    }
+
+    private static List<Long> seqs(long from, long to) {
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            seqs.add(seq);
+        }
+        return seqs;
+    }
+}
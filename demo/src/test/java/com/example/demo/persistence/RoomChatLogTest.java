@@ -0,0 +1,223 @@
+package com.example.demo.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoomChatLogTest {
+
+    // Mỗi bản ghi 38 byte nên một segment 256 byte chứa 6 bản ghi: segment bắt đầu ở seq 1, 7, 13, 19...
+    private static final int SEGMENT_BYTES = 256;
+    private static final int INDEX_INTERVAL = 64;
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path root;
+
+    @Test
+    void rollsSegmentsAndReadsAcrossThem() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 20, 0);
+
+        assertEquals(List.of(1L, 7L, 13L, 19L), segmentBases(dir));
+        assertEquals(seqs(10, 20), readSeqs(log, 9));
+        assertEquals(20, log.lastSeq());
+        log.close(false);
+    }
+
+    @Test
+    void ignoresSeqsNotAfterLastSeq() throws IOException {
+        RoomChatLog log = RoomChatLog.create("general", root.resolve("room-general"), SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 5, 0);
+        log.append(record(3), 0);
+        log.append(record(5), 0);
+
+        assertEquals(seqs(1, 5), readSeqs(log, 0));
+        log.close(false);
+    }
+
+    @Test
+    void recoversAfterCrashMidRecord() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 20, 0);
+        // Sập máy: segment đang ghi (seq 19, 20) không được seal, bản ghi 20 chỉ ghi được một nửa
+        log.close(false);
+        truncate(LogSegment.logFile(dir, 19), recordSize() + recordSize() / 2);
+
+        RoomChatLog recovered = RoomChatLog.recover("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+
+        assertEquals(19, recovered.lastSeq());
+        assertFalse(recovered.isOpen());
+        assertEquals(seqs(1, 19), readSeqs(recovered, 0));
+        // Tin mới ghi tiếp vào segment cuối còn chỗ, đè lên phần ghi dở
+        recovered.append(record(20), 0);
+        assertTrue(recovered.isOpen());
+        assertEquals(List.of(1L, 7L, 13L, 19L), segmentBases(dir));
+        assertEquals(seqs(18, 20), readSeqs(recovered, 17));
+        recovered.close(false);
+    }
+
+    @Test
+    void dropsEmptyTrailingSegmentOnRecovery() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 6, 0);
+        log.closeActive();
+        // Sập máy ngay sau khi tạo segment mới, trước khi ghi được bản ghi nào
+        LogSegment.create(dir, 7, SEGMENT_BYTES, INDEX_INTERVAL).close(false);
+
+        RoomChatLog recovered = RoomChatLog.recover("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+
+        assertEquals(6, recovered.lastSeq());
+        assertEquals(List.of(1L), segmentBases(dir));
+        assertFalse(Files.exists(LogSegment.indexFile(dir, 7)));
+        assertEquals(seqs(1, 6), readSeqs(recovered, 0));
+    }
+
+    @Test
+    void recoveryKeepsLastModifiedTimeOfLastSegment() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 3, 0);
+        log.close(false);
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 10 * HOUR);
+        Files.setLastModifiedTime(LogSegment.logFile(dir, 1), old);
+
+        RoomChatLog.recover("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+
+        assertEquals(old.toMillis(), Files.getLastModifiedTime(LogSegment.logFile(dir, 1)).toMillis());
+    }
+
+    @Test
+    void closeActiveSealsAndKeepsRecordsReadable() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 4, 0);
+
+        log.closeActive();
+
+        assertFalse(log.isOpen());
+        assertEquals(SEGMENT_BYTES, Files.size(LogSegment.logFile(dir, 1)));
+        assertEquals(seqs(1, 4), readSeqs(log, 0));
+
+        // Phòng hoạt động lại: mở lại segment cuối thay vì cấp phát file mới
+        log.append(record(5), 0);
+        assertTrue(log.isOpen());
+        assertEquals(List.of(1L), segmentBases(dir));
+        assertEquals(seqs(3, 5), readSeqs(log, 2));
+        log.closeActive();
+        assertEquals(seqs(1, 5), readSeqs(log, 0));
+        log.close(false);
+    }
+
+    @Test
+    void retentionDeletesExpiredSegmentsOldestFirst() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        long now = System.currentTimeMillis();
+        appendRange(log, 1, 20, now);
+        Files.setLastModifiedTime(LogSegment.logFile(dir, 1), FileTime.fromMillis(now - 3 * HOUR));
+        Files.setLastModifiedTime(LogSegment.logFile(dir, 7), FileTime.fromMillis(now - 2 * HOUR));
+
+        assertFalse(log.applyRetention(HOUR, 0, now));
+
+        assertEquals(List.of(13L, 19L), segmentBases(dir));
+        assertFalse(Files.exists(LogSegment.indexFile(dir, 1)));
+        assertEquals(seqs(13, 20), readSeqs(log, 0));
+        log.close(false);
+    }
+
+    @Test
+    void retentionDeletesOldestSegmentsOverByteLimit() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        appendRange(log, 1, 24, 0);
+        log.closeActive();
+
+        // 4 segment đầy; dung lượng tính theo kích thước file đã cấp phát, giới hạn vừa đủ 2 segment
+        assertFalse(log.applyRetention(0, 2L * SEGMENT_BYTES, 0));
+
+        assertEquals(List.of(13L, 19L), segmentBases(dir));
+        assertEquals(seqs(13, 24), readSeqs(log, 0));
+    }
+
+    @Test
+    void idleRoomIsSealedExpiredAndRemoved() throws IOException {
+        Path dir = root.resolve("room-general");
+        RoomChatLog log = RoomChatLog.create("general", dir, SEGMENT_BYTES, INDEX_INTERVAL);
+        long now = System.currentTimeMillis();
+        appendRange(log, 1, 3, now);
+
+        // Chưa quá hạn: segment đang ghi vẫn mở
+        assertFalse(log.applyRetention(HOUR, 0, now + HOUR / 2));
+        assertTrue(log.isOpen());
+
+        // Không có tin mới quá maxAge: segment bị seal rồi xóa theo tuổi, phòng rỗng
+        assertTrue(log.applyRetention(HOUR, 0, now + 2 * HOUR));
+        assertFalse(log.isOpen());
+        assertTrue(log.isEmpty());
+        assertEquals(3, log.lastSeq());
+        assertTrue(log.deleteDirectory());
+        assertFalse(Files.exists(dir));
+    }
+
+    private static void appendRange(RoomChatLog log, long from, long to, long nowMillis) throws IOException {
+        for (long seq = from; seq <= to; seq++) {
+            log.append(record(seq), nowMillis);
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static List<Long> segmentBases(Path dir) throws IOException {
+        List<Long> bases = new ArrayList<>();
+        try (var files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(".log"))
+                .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length() - 4))));
+        }
+        bases.sort(null);
+        return bases;
+    }
+
+    private static LogRecord record(long seq) {
+        return new LogRecord(seq, 1_000 + seq, String.format("{\"seq\":%06d}", seq).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int recordSize() {
+        return record(1).sizeInBytes();
+    }
+
+    private static List<Long> readSeqs(RoomChatLog log, long afterSeq) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        log.read(afterSeq, record -> seqs.add(record.getSeq()));
+        return seqs;
+    }
+
+    private static List<Long> seqs(long from, long to) {
+        List<Long> seqs = new ArrayList<>();
+        for (long seq = from; seq <= to; seq++) {
+            seqs.add(seq);
+        }
+        return seqs;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.demo.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FloodGuardTest {
+
+    @Test
+    void countsUtf8BytesNotChars() {
+        assertEquals(0, FloodGuard.utf8Length(""));
+        assertEquals(5, FloodGuard.utf8Length("hello"));
+        // "à" 2 byte, "ạ" 3 byte, emoji là cặp surrogate 4 byte
+        assertEquals(2, FloodGuard.utf8Length("à"));
+        assertEquals(3, FloodGuard.utf8Length("ạ"));
+        assertEquals(4, FloodGuard.utf8Length("🎉"));
+        for (String text : List.of("Xin chào, trời đẹp quá!", "Khách-Đạt 🎉🎉 日本語", "{\"message\":\"cảm ơn\"}",
+                "\u007F\u0080߿ࠀ￿")) {
+            assertEquals(text.getBytes(StandardCharsets.UTF_8).length, FloodGuard.utf8Length(text), text);
+        }
+    }
+
+    @Test
+    void countsLoneSurrogatesAsThreeBytes() {
+        // Không bao giờ đếm thiếu so với bản mã hóa thật (Java thay surrogate lẻ bằng '?')
+        assertEquals(3, FloodGuard.utf8Length("\uD83C"));
+        assertEquals(4, FloodGuard.utf8Length("\uDF89a"));
+        assertEquals(7, FloodGuard.utf8Length("\uD83C🎉"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.demo.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Neo theo nanoTime thật để lần dọn bucket tự động không chạy sai lúc
+    private final long start = System.nanoTime();
+    private final RateLimiter limiter = new RateLimiter(1, TimeUnit.MINUTES);
+
+    @Test
+    void allowsBurstUpToPermitsThenRejects() {
+        RateLimit limit = RateLimit.of(5, 1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(acquire("general", "alice", limit, 1, start), "permit " + i);
+        }
+        assertFalse(acquire("general", "alice", limit, 1, start));
+        assertFalse(acquire("general", "alice", limit, 1, start + 199 * MILLI));
+    }
+
+    @Test
+    void refillsOnePermitPerEmissionInterval() {
+        RateLimit limit = RateLimit.of(5, 1, TimeUnit.SECONDS);
+        for (int i = 0; i < 5; i++) {
+            acquire("general", "alice", limit, 1, start);
+        }
+
+        // 5/1s: mỗi 200ms hồi một permit
+        assertTrue(acquire("general", "alice", limit, 1, start + 200 * MILLI));
+        assertFalse(acquire("general", "alice", limit, 1, start + 200 * MILLI));
+        assertTrue(acquire("general", "alice", limit, 1, start + 400 * MILLI));
+
+        // Nghỉ đủ một window thì có lại cả burst, không hơn
+        long later = start + 2 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(acquire("general", "alice", limit, 1, later), "permit " + i);
+        }
+        assertFalse(acquire("general", "alice", limit, 1, later));
+    }
+
+    @Test
+    void sustainedRateAtEmissionIntervalIsNeverRejected() {
+        RateLimit limit = RateLimit.of(10, 1, TimeUnit.SECONDS);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(acquire("general", "alice", limit, 1, start + i * 100 * MILLI), "request " + i);
+        }
+    }
+
+    @Test
+    void countsMultiplePermitsAtOnce() {
+        RateLimit bytes = RateLimit.of(1_000, 1, TimeUnit.SECONDS);
+
+        assertTrue(acquire("general", "alice", bytes, 600, start));
+        assertFalse(acquire("general", "alice", bytes, 600, start));
+        assertTrue(acquire("general", "alice", bytes, 400, start));
+        // Một yêu cầu lớn hơn cả burst không bao giờ qua
+        assertFalse(acquire("general", "bob", bytes, 1_001, start));
+    }
+
+    @Test
+    void keysAndScopesHaveSeparateBuckets() {
+        RateLimit limit = RateLimit.of(1, 1, TimeUnit.SECONDS);
+
+        assertTrue(acquire("general", "alice", limit, 1, start));
+        assertFalse(acquire("general", "alice", limit, 1, start));
+        assertTrue(acquire("general", "bob", limit, 1, start));
+        assertTrue(acquire("random", "alice", limit, 1, start));
+        assertEquals(3, limiter.size());
+
+        limiter.reset("alice");
+        assertTrue(acquire("general", "alice", limit, 1, start));
+    }
+
+    @Test
+    void unlimitedAndZeroLimitsAlwaysAllowWithoutState() {
+        for (RateLimit limit : new RateLimit[] {RateLimit.UNLIMITED, RateLimit.parse("0"),
+                RateLimit.parse("unlimited"), RateLimit.parse("0/1s"), new RateLimit(0, SECOND)}) {
+            assertTrue(limit.isUnlimited(), limit.toString());
+            for (int i = 0; i < 100; i++) {
+                assertTrue(acquire("general", "alice", limit, 1_000, start));
+            }
+        }
+        assertTrue(limiter.tryAcquire("general", "alice", RateLimit.UNLIMITED));
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void releaseRefundsPermitsButNotBeyondBurst() {
+        RateLimit limit = RateLimit.of(2, 1, TimeUnit.SECONDS);
+        assertTrue(acquire("general", "alice", limit, 2, start));
+        assertFalse(acquire("general", "alice", limit, 1, start));
+
+        limiter.release("general", "alice", limit, 1, start);
+        assertTrue(acquire("general", "alice", limit, 1, start));
+
+        // Trả nhiều hơn đã lấy cũng chỉ về mức bucket rỗng: burst vẫn là 2
+        limiter.release("general", "alice", limit, 10, start);
+        assertTrue(acquire("general", "alice", limit, 2, start));
+        assertFalse(acquire("general", "alice", limit, 1, start));
+
+        // Key chưa có bucket: không làm gì
+        limiter.release("general", "nobody", limit, 1, start);
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    void evictsBucketsIdleLongerThanTimeout() {
+        RateLimit limit = RateLimit.of(5, 1, TimeUnit.SECONDS);
+        acquire("general", "alice", limit, 1, start);
+        acquire("general", "bob", limit, 1, start + 30 * SECOND);
+
+        limiter.evictIdle(start + 61 * SECOND);
+
+        assertEquals(1, limiter.size());
+        limiter.evictIdle(start + 91 * SECOND);
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void notifiesOnceKeyHasNoBucketLeftInAnyScope() {
+        List<String> evicted = new ArrayList<>();
+        RateLimiter tracking = new RateLimiter(1, TimeUnit.MINUTES, evicted::add);
+        RateLimit limit = RateLimit.of(5, 1, TimeUnit.SECONDS);
+        tracking.tryAcquire("general", "alice", limit, 1, start);
+        tracking.tryAcquire("random", "alice", limit, 1, start + 30 * SECOND);
+        tracking.tryAcquire("general", "bob", limit, 1, start);
+
+        // alice vẫn còn bucket ở phòng random nên chưa hết hạn
+        tracking.evictIdle(start + 61 * SECOND);
+        assertEquals(List.of("bob"), evicted);
+
+        tracking.evictIdle(start + 91 * SECOND);
+        assertEquals(List.of("bob", "alice"), evicted);
+        assertEquals(0, tracking.size());
+    }
+
+    @Test
+    void parsesRateLimitSpecs() {
+        assertEquals(5, RateLimit.parse("5/60s").getPermits());
+        assertEquals(60 * SECOND, RateLimit.parse("5/60s").getWindowNanos());
+        assertEquals(500 * MILLI, RateLimit.parse(" 20/500ms ").getWindowNanos());
+        assertEquals(60 * SECOND, RateLimit.parse("100/1M").getWindowNanos());
+        assertEquals(200 * MILLI, RateLimit.parse("5/1s").getEmissionIntervalNanos());
+        assertThrows(IllegalArgumentException.class, () -> RateLimit.parse("5"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimit.parse("5/1h"));
+    }
+
+    private boolean acquire(String scope, String key, RateLimit limit, int permits, long now) {
+        return limiter.tryAcquire(scope, key, limit, permits, now);
+    }
+}
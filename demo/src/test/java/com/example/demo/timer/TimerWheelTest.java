@@ -0,0 +1,129 @@
+package com.example.demo.timer;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    // Tick 1ms, 512 ô: tầng 0 phủ 512 tick, tầng 1 phủ 32768, tầng 2 phủ 2^21, tầng 3 phủ 2^27
+    private static final int WHEEL_SIZE = 512;
+
+    @Test
+    void firesEachTimeoutOnceAtItsDeadlineAcrossLevelBoundaries() {
+        ManualWheel wheel = new ManualWheel(WHEEL_SIZE);
+        long[] delays = {0, 1, 511, 512, 513, 32_767, 32_768, 32_769, 100_000};
+        List<List<Long>> fired = new ArrayList<>();
+        for (long delay : delays) {
+            fired.add(wheel.schedule(delay));
+        }
+
+        wheel.advanceTo(100_001);
+
+        for (int i = 0; i < delays.length; i++) {
+            // Delay 0 chạy ở tick kế tiếp, lần quay đầu tiên
+            long expected = Math.max(1, delays[i]);
+            assertEquals(List.of(expected), fired.get(i), "delay " + delays[i]);
+        }
+        assertEquals(0, wheel.timer.getScheduledCount());
+    }
+
+    @Test
+    void firesOnTimeWhenScheduledMidRotation() {
+        ManualWheel wheel = new ManualWheel(WHEEL_SIZE);
+        wheel.advanceTo(300);
+        long[] delays = {211, 212, 511, 512, 32_467, 32_468, 32_767, 32_768};
+        List<List<Long>> fired = new ArrayList<>();
+        for (long delay : delays) {
+            fired.add(wheel.schedule(delay));
+        }
+
+        wheel.advanceTo(300 + 32_769);
+
+        for (int i = 0; i < delays.length; i++) {
+            assertEquals(List.of(300 + delays[i]), fired.get(i), "delay " + delays[i]);
+        }
+    }
+
+    @Test
+    void reparksTimeoutsBeyondTopLevel() {
+        // Bánh xe nhỏ để vượt tầm tầng trên cùng (4 * 64^3 = 2^20 tick) mà test vẫn nhanh
+        ManualWheel wheel = new ManualWheel(4);
+        long top = 1L << 20;
+        long[] delays = {top - 1, top, top + 1, 3 * top + 12_345};
+        List<List<Long>> fired = new ArrayList<>();
+        for (long delay : delays) {
+            fired.add(wheel.schedule(delay));
+        }
+
+        wheel.advanceTo(3 * top + 20_000);
+
+        for (int i = 0; i < delays.length; i++) {
+            assertEquals(List.of(delays[i]), fired.get(i), "delay " + delays[i]);
+        }
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        ManualWheel wheel = new ManualWheel(WHEEL_SIZE);
+        List<Long> beforeTransfer = new ArrayList<>();
+        wheel.timer.schedule(() -> beforeTransfer.add(wheel.tick), 10, TimeUnit.MILLISECONDS).cancel();
+        List<Long> kept = wheel.schedule(40_000);
+        List<Long> upperLevel = new ArrayList<>();
+        TimerWheel.Timeout timeout = wheel.timer.schedule(() -> upperLevel.add(wheel.tick), 40_000, TimeUnit.MILLISECONDS);
+
+        wheel.advanceTo(1_000);
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+        wheel.advanceTo(50_000);
+
+        assertTrue(beforeTransfer.isEmpty());
+        assertTrue(upperLevel.isEmpty());
+        assertEquals(List.of(40_000L), kept);
+        assertEquals(0, wheel.timer.getScheduledCount());
+    }
+
+    @Test
+    void hugeDelaySaturatesInsteadOfFiringImmediately() {
+        ManualWheel wheel = new ManualWheel(WHEEL_SIZE);
+        List<Long> fired = new ArrayList<>();
+        wheel.timer.schedule(() -> fired.add(wheel.tick), Long.MAX_VALUE, TimeUnit.DAYS);
+
+        wheel.advanceTo(1 << 16);
+
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.timer.getScheduledCount());
+    }
+
+    // Bánh xe không có worker thread, đồng hồ giả đi cùng nhịp với advance()
+    private static final class ManualWheel {
+        private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private long nanos;
+        final TimerWheel timer;
+        long tick;
+
+        ManualWheel(int wheelSize) {
+            timer = new TimerWheel(1, wheelSize, () -> nanos, false);
+        }
+
+        // Đặt timeout sau delay tick; danh sách trả về ghi lại các tick mà task đã chạy
+        List<Long> schedule(long delayTicks) {
+            List<Long> fired = new ArrayList<>();
+            timer.schedule(() -> fired.add(tick), delayTicks, TimeUnit.MILLISECONDS);
+            return fired;
+        }
+
+        void advanceTo(long target) {
+            while (tick < target) {
+                tick++;
+                nanos = tick * TICK_NANOS;
+                timer.advance();
+            }
+        }
+    }
+}